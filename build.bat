@@ -5,5 +5,12 @@ set OUT=%ROOT%out
 rmdir /s /q "%OUT%" 2>nul
 mkdir "%OUT%"
 dir /s /b "%ROOT%src\*.java" > "%ROOT%.sources"
-javac -encoding UTF-8 -d "%OUT%" @%ROOT%.sources
+rem Vector API для рейда: без модуля в JDK собирается только скалярный расчет
+set VECTOR=
+java --list-modules 2>nul | findstr /b "jdk.incubator.vector" >nul && set VECTOR=--add-modules jdk.incubator.vector
+if "%VECTOR%"=="" (
+  findstr /v "RaidVectorKernel.java" "%ROOT%.sources" > "%ROOT%.sources.tmp"
+  move /y "%ROOT%.sources.tmp" "%ROOT%.sources" >nul
+)
+javac -encoding UTF-8 %VECTOR% -d "%OUT%" @%ROOT%.sources
 echo Build OK. Run run.bat
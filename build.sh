@@ -5,5 +5,13 @@ OUT="$ROOT/out"
 rm -rf "$OUT"
 mkdir -p "$OUT"
 find "$ROOT/src" -name "*.java" > "$ROOT/.sources"
-javac -encoding UTF-8 -d "$OUT" @"$ROOT/.sources"
+# Vector API для рейда: без модуля в JDK собирается только скалярный расчет
+VECTOR=""
+if java --list-modules 2>/dev/null | grep '^jdk.incubator.vector' >/dev/null; then
+  VECTOR="--add-modules jdk.incubator.vector"
+else
+  grep -v 'RaidVectorKernel.java$' "$ROOT/.sources" > "$ROOT/.sources.tmp"
+  mv "$ROOT/.sources.tmp" "$ROOT/.sources"
+fi
+javac -encoding UTF-8 $VECTOR -d "$OUT" @"$ROOT/.sources"
 echo "Build OK. Run ./run.sh"
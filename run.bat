@@ -1,3 +1,5 @@
 @echo off
 set ROOT=%~dp0
-java -cp "%ROOT%out" com.example.dungeon.Main
+set VECTOR=
+java --list-modules 2>nul | findstr /b "jdk.incubator.vector" >nul && set VECTOR=--add-modules jdk.incubator.vector
+java %VECTOR% -cp "%ROOT%out" com.example.dungeon.Main
@@ -1,4 +1,8 @@
 #!/usr/bin/env bash
 set -euo pipefail
 ROOT="$(cd "$(dirname "$0")" && pwd)"
-java -cp "$ROOT/out" com.example.dungeon.Main
+VECTOR=""
+if java --list-modules 2>/dev/null | grep '^jdk.incubator.vector' >/dev/null; then
+  VECTOR="--add-modules jdk.incubator.vector"
+fi
+java $VECTOR -cp "$ROOT/out" com.example.dungeon.Main
@@ -1,9 +1,28 @@
 package com.example.dungeon;
 
+import com.example.dungeon.core.BotSwarm;
 import com.example.dungeon.core.Game;
+import com.example.dungeon.core.GameServer;
+import com.example.dungeon.core.LoadTest;
+
+import java.io.IOException;
+import java.util.Arrays;
 
 public class Main {
-    public static void main(String[] args) {
-        new Game().run();
+    public static void main(String[] args) throws IOException {
+        String mode = args.length > 0 ? args[0] : "";
+        switch (mode) {
+            // bots <количество> <секунд> - нагрузка ботами без интерактивной игры
+            case "bots" -> BotSwarm.run(System.out,
+                    args.length > 1 ? Integer.parseInt(args[1]) : 10_000,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 10);
+            // server [порт] [--private] - сетевая игра, по умолчанию общий мир
+            case "server" -> new GameServer(
+                    args.length > 1 && !args[1].startsWith("--") ? Integer.parseInt(args[1]) : GameServer.DEFAULT_PORT,
+                    !Arrays.asList(args).contains("--private")).run();
+            // loadtest --clients=.. --rate=.. --target=inproc|host:port ...
+            case "loadtest" -> LoadTest.main(Arrays.copyOfRange(args, 1, args.length));
+            default -> new Game().run();
+        }
     }
 }
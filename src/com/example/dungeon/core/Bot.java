@@ -0,0 +1,111 @@
+package com.example.dungeon.core;
+
+import com.example.dungeon.model.*;
+
+import java.io.PrintStream;
+import java.util.*;
+
+// бот-игрок: смотрит на состояние своей сессии и выбирает следующую команду.
+// играет только через обычные команды Game, поэтому нагрузка такая же, как от людей:
+// save/load настоящие, в свое сохранение в хранилище, которое ему выдал рой
+final class Bot {
+    private static final int LOW_HP = 8;
+    private static final int SAVE_EVERY = 25;   // save каждые N ходов
+    private static final int LOAD_EVERY = 100;  // load каждые N ходов
+
+    private final Game game;
+    private final String saveName;
+    private final SplittableRandom rnd;
+    // сколько раз бот заходил в комнату - предпочитает новые
+    private final Map<Room, Integer> visits = new IdentityHashMap<>();
+    private long steps;
+
+    long commands;
+    long decisionNanos;
+    long fights;
+    long itemsTaken;
+
+    Bot(Game game, PrintStream out, long seed) {
+        this.game = game;
+        this.saveName = "bot-" + seed;
+        this.rnd = new SplittableRandom(seed);
+        GameState state = game.getState();
+        state.setOut(out);
+        // боту хватает короткой истории
+        state.enableHistory(4);
+    }
+
+    // один ход: решение + выполнение команды. false - игра бота окончена (exit, смерть),
+    // команды ему больше не отправляются и не считаются
+    boolean step() {
+        if (isFinished()) return false;
+        long started = System.nanoTime();
+        String command = decide();
+        decisionNanos += System.nanoTime() - started;
+        game.execute(command);
+        commands++;
+        steps++;
+        return true;
+    }
+
+    boolean isFinished() {
+        return game.getState().isFinished();
+    }
+
+    private String decide() {
+        GameState state = game.getState();
+        Player player = state.getPlayer();
+        Room room = state.getCurrent();
+        visits.merge(room, 1, Integer::sum);
+
+        if (steps > 0 && steps % LOAD_EVERY == 0) return "load " + saveName;
+        if (steps % SAVE_EVERY == 0) return "save " + saveName;
+
+        for (Item item : player.getInventory()) {
+            if (item instanceof Weapon) return "use " + item.getName();
+            if (item instanceof Potion && player.getHp() < LOW_HP) return "use " + item.getName();
+        }
+
+        // бот вступает в бой, только если уверен в победе, поэтому всегда атакует
+        if (state.getCombat() != null) return "attack";
+
+        Monster monster = room.getMonster();
+        if (monster != null && wins(player, monster)) {
+            fights++;
+            return "fight";
+        }
+
+        List<Item> items = room.getItems();
+        if (!items.isEmpty()) {
+            itemsTaken++;
+            return "take " + items.getFirst().getName();
+        }
+
+        // запертая дверь и подходящий ключ в инвентаре
+        for (Door door : state.getDoors().lockedExits(room)) {
+            for (Item item : player.getInventory()) {
+                if (item instanceof Key key && key.opens(door)) return "use " + item.getName();
+            }
+        }
+
+        Map<String, Room> exits = room.getNeighbors();
+        if (exits.isEmpty()) return "load " + saveName; // тупик
+        String best = null;
+        int bestVisits = Integer.MAX_VALUE;
+        for (Map.Entry<String, Room> e : exits.entrySet()) {
+            int v = visits.getOrDefault(e.getValue(), 0) * 4 + rnd.nextInt(4);
+            if (v < bestVisits) {
+                bestVisits = v;
+                best = e.getKey();
+            }
+        }
+        return "move " + best;
+    }
+
+    // бой детерминированный, поэтому исход можно посчитать заранее
+    static boolean wins(Player player, Monster monster) {
+        int attack = Math.max(1, player.getAttack());
+        int rounds = (monster.getHp() + attack - 1) / attack;
+        return player.getHp() - (rounds - 1) * monster.getLevel() > 0;
+    }
+}
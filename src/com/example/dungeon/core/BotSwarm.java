@@ -0,0 +1,102 @@
+package com.example.dungeon.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// рой ботов для генерации нагрузки: боты делятся между потоками по числу ядер,
+// каждый поток по кругу делает ход каждым своим ботом. сохранения и счет ботов пишутся
+// во временный каталог, который удаляется после прогона
+public final class BotSwarm {
+    private BotSwarm() {
+    }
+
+    public static void run(PrintStream out, int botCount, int seconds) {
+        SaveLoad.Storage storage;
+        try {
+            storage = SaveLoad.Storage.temporary("bots");
+        } catch (IOException e) {
+            out.println("Не удалось создать временный каталог: " + e.getMessage());
+            return;
+        }
+        try {
+            run(out, botCount, seconds, storage);
+        } finally {
+            try {
+                storage.deleteTemporary();
+            } catch (IOException e) {
+                out.println("Временный каталог не удален: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void run(PrintStream out, int botCount, int seconds, SaveLoad.Storage storage) {
+        int threads = Math.min(botCount, Runtime.getRuntime().availableProcessors());
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = rt.totalMemory() - rt.freeMemory();
+
+        // у каждого потока свой вывод-заглушка, чтобы боты не толкались на одном PrintStream
+        List<List<Bot>> groups = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            groups.add(new ArrayList<>());
+        }
+        List<PrintStream> sinks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            sinks.add(new PrintStream(OutputStream.nullOutputStream()));
+        }
+        for (int i = 0; i < botCount; i++) {
+            Game game = new Game();
+            game.getState().getPlayer().setName(Game.generateRandomName());
+            game.setStorage(storage);
+            groups.get(i % threads).add(new Bot(game, sinks.get(i % threads), i));
+        }
+        long heapAfter = rt.totalMemory() - rt.freeMemory();
+        out.printf("Создано ботов: %d (~%d байт на бота), потоков: %d, прогон %d с...%n",
+                botCount, Math.max(0, heapAfter - heapBefore) / botCount, threads, seconds);
+
+        long started = System.nanoTime();
+        long deadline = started + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> workers = new ArrayList<>();
+        for (List<Bot> group : groups) {
+            workers.add(Thread.ofPlatform().name("bots").start(() -> {
+                boolean playing = true;
+                while (playing && System.nanoTime() < deadline) {
+                    playing = false;
+                    for (Bot bot : group) {
+                        if (bot.step()) playing = true;
+                    }
+                }
+            }));
+        }
+        for (Thread w : workers) {
+            try {
+                w.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        double elapsed = (System.nanoTime() - started) / 1e9;
+
+        long commands = 0, decisionNanos = 0, fights = 0, taken = 0;
+        int finished = 0;
+        for (List<Bot> group : groups) {
+            for (Bot bot : group) {
+                if (bot.isFinished()) finished++;
+                commands += bot.commands;
+                decisionNanos += bot.decisionNanos;
+                fights += bot.fights;
+                taken += bot.itemsTaken;
+            }
+        }
+        out.println("=== Итоги роя ботов ===");
+        out.printf("Команд: %d за %.1f с (%.0f команд/с)%n", commands, elapsed, commands / elapsed);
+        out.printf("Решение бота: %.0f нс на ход в среднем%n", commands == 0 ? 0.0 : (double) decisionNanos / commands);
+        out.printf("Боев: %d, взято предметов: %d%n", fights, taken);
+        if (finished > 0) out.printf("Закончили игру до конца прогона: %d из %d%n", finished, botCount);
+    }
+}
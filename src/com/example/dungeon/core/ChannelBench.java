@@ -0,0 +1,99 @@
+package com.example.dungeon.core;
+
+import com.example.dungeon.model.Room;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// каналы комнат под нагрузкой: в каждой из ROOMS комнат по subscribers читателей (виртуальные потоки),
+// сообщения публикуются в одну. канал комнаты против рассылки всем сессиям с проверкой комнаты;
+// потом часть читателей медленные, и видно, как каждая политика очереди с ними справляется
+final class ChannelBench {
+    private static final int ROOMS = 10;
+    private static final int QUEUE = 64;
+    private static final int SLOW_PERCENT = 5;
+
+    private ChannelBench() {
+    }
+
+    static void run(PrintStream out, int subscribers, int messages) throws InterruptedException {
+        out.printf("Каналы: %d комнат по %d подписчиков (всего %d сессий), %d сообщений в одну комнату, очередь %d%n",
+                ROOMS, subscribers, ROOMS * subscribers, messages, QUEUE);
+        out.printf("%-34s %12s %14s %14s %10s%n", "способ", "публикация,мс", "сообщений/с", "доставок/с", "потеряно");
+        // сравнение способов - пачками не больше очереди, между пачками читатели все разбирают:
+        // так меряется только рассылка, без потерь. сначала прогрев на четверти сообщений
+        fanOut(RoomChannels.Overflow.DROP_OLDEST, subscribers, Math.max(1, messages / 4), true, 0, true);
+        fanOut(RoomChannels.Overflow.DROP_OLDEST, subscribers, Math.max(1, messages / 4), false, 0, true);
+        fanOut(RoomChannels.Overflow.DROP_OLDEST, subscribers, messages, true, 0, true).print(out, "канал комнаты");
+        fanOut(RoomChannels.Overflow.DROP_OLDEST, subscribers, messages, false, 0, true).print(out, "всем сессиям, фильтр по комнате");
+        // дальше сплошным потоком: читатели отстают, очереди переполняются
+        int slowMessages = Math.min(messages, 1000);
+        out.printf("Сплошной поток, %d%% читателей медленные (1 сообщение в мс), %d сообщений:%n", SLOW_PERCENT, slowMessages);
+        for (RoomChannels.Overflow policy : RoomChannels.Overflow.values()) {
+            fanOut(policy, subscribers, slowMessages, true, SLOW_PERCENT, false)
+                    .print(out, policy.name().toLowerCase(Locale.ROOT).replace('_', '-'));
+        }
+    }
+
+    private record Result(long publishNanos, long totalNanos, int messages, long deliveries, long dropped) {
+        void print(PrintStream out, String title) {
+            out.printf("%-34s %12.1f %14.0f %14.0f %10d%n", title, publishNanos / 1e6,
+                    messages * 1e9 / totalNanos, deliveries * 1e9 / totalNanos, dropped);
+        }
+    }
+
+    private static Result fanOut(RoomChannels.Overflow policy, int subscribers, int messages, boolean scoped,
+                                 int slowPercent, boolean bursts) throws InterruptedException {
+        RoomChannels channels = new RoomChannels(QUEUE, policy);
+        List<Room> rooms = new ArrayList<>();
+        for (int i = 0; i < ROOMS; i++) rooms.add(new Room("Зал " + i, "Тестовая комната"));
+        List<RoomChannels.Inbox> all = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        for (Room room : rooms) {
+            for (int s = 0; s < subscribers; s++) {
+                RoomChannels.Inbox inbox = channels.open(room);
+                all.add(inbox);
+                boolean slow = s * 100 < subscribers * slowPercent;
+                readers.add(Thread.ofVirtual().start(() -> read(inbox, slow)));
+            }
+        }
+        Room target = rooms.getFirst();
+        long started = System.nanoTime();
+        long published = 0;
+        for (int m = 0; m < messages; ) {
+            int end = bursts ? Math.min(messages, m + QUEUE) : messages;
+            long t = System.nanoTime();
+            for (; m < end; m++) {
+                String message = "Игрок " + m + " говорит";
+                if (scoped) {
+                    channels.publish(target, null, message);
+                } else {
+                    for (RoomChannels.Inbox inbox : all) {
+                        if (inbox.room() == target) inbox.offer(message);
+                    }
+                }
+            }
+            published += System.nanoTime() - t;
+            if (bursts) {
+                long expected = (long) m * subscribers;
+                while (channels.delivered() < expected) Thread.sleep(1);
+            }
+        }
+        for (RoomChannels.Inbox inbox : all) channels.close(inbox);
+        for (Thread t : readers) t.join();
+        long total = System.nanoTime() - started;
+        return new Result(published, total, messages, channels.delivered(), channels.dropped());
+    }
+
+    private static void read(RoomChannels.Inbox inbox, boolean slow) {
+        try {
+            while (inbox.take() != null) {
+                if (slow) Thread.sleep(1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
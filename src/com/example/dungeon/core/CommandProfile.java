@@ -0,0 +1,94 @@
+package com.example.dungeon.core;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// сколько памяти выделяет каждая команда: счетчик выделений потока до и после execute.
+// общий на процесс, поэтому складываются консоль, боты и сетевые сессии.
+// на виртуальных потоках JDK 21 счетчика нет - там считаются только вызовы и время
+final class CommandProfile {
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+    private static final Map<String, Stats> STATS = new ConcurrentHashMap<>();
+
+    private CommandProfile() {
+    }
+
+    private static final class Stats {
+        final LongAdder calls = new LongAdder();
+        final LongAdder measured = new LongAdder(); // вызовы с известным числом байт
+        final LongAdder bytes = new LongAdder();
+        final LongAccumulator maxBytes = new LongAccumulator(Math::max, 0);
+        final LongAdder nanos = new LongAdder();
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean mx
+                && mx.isThreadAllocatedMemorySupported()) {
+            mx.setThreadAllocatedMemoryEnabled(true);
+            return mx;
+        }
+        return null;
+    }
+
+    // -1 - для этого потока счетчика нет
+    static long allocated() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    static void record(String command, long allocatedBefore, long nanos) {
+        Stats s = STATS.computeIfAbsent(command, k -> new Stats());
+        s.calls.increment();
+        s.nanos.add(nanos);
+        if (allocatedBefore >= 0) {
+            long bytes = allocated() - allocatedBefore;
+            s.measured.increment();
+            s.bytes.add(bytes);
+            s.maxBytes.accumulate(bytes);
+        }
+    }
+
+    // всего команд с запуска (или с последнего reset)
+    static long totalCalls() {
+        long sum = 0;
+        for (Stats s : STATS.values()) sum += s.calls.sum();
+        return sum;
+    }
+
+    static void reset() {
+        STATS.clear();
+    }
+
+    static void print(PrintStream out) {
+        if (STATS.isEmpty()) {
+            out.println("Команд еще не было.");
+            return;
+        }
+        List<Map.Entry<String, Stats>> rows = new ArrayList<>(STATS.entrySet());
+        rows.sort((x, y) -> Long.compare(y.getValue().bytes.sum(), x.getValue().bytes.sum()));
+        long total = 0;
+        for (Map.Entry<String, Stats> e : rows) total += e.getValue().bytes.sum();
+
+        out.println("=== Выделение памяти по командам ===");
+        out.printf("%-16s %9s %12s %6s %12s %12s %10s%n",
+                "команда", "вызовов", "всего КБ", "доля", "байт/вызов", "макс байт", "мкс/вызов");
+        for (Map.Entry<String, Stats> e : rows) {
+            Stats s = e.getValue();
+            long calls = s.calls.sum();
+            long measured = s.measured.sum();
+            long bytes = s.bytes.sum();
+            out.printf("%-16s %9d %12s %5s%% %12s %12s %10.1f%n", e.getKey(), calls,
+                    measured == 0 ? "н/д" : String.valueOf(bytes / 1024),
+                    total == 0 ? "0" : String.valueOf(bytes * 100 / total),
+                    measured == 0 ? "н/д" : String.valueOf(bytes / measured),
+                    measured == 0 ? "н/д" : String.valueOf(s.maxBytes.get()),
+                    s.nanos.sum() / 1000.0 / calls);
+        }
+        if (THREADS == null) out.println("Счетчик выделений потока не поддерживается этой JVM.");
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.dungeon.core;
+
+import com.example.dungeon.model.Item;
+import com.example.dungeon.model.Monster;
+import com.example.dungeon.model.Potion;
+import com.example.dungeon.model.Room;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+// описания комнат под потоком look/move: готовые байты из кэша против сборки текста и
+// кодирования на каждый вывод. на каждые WRITE_ONE_IN описаний одно изменение комнаты
+final class DescribeBench {
+    private static final int WRITE_ONE_IN = 20;
+    private static final String[] DIRECTIONS = {"north", "south", "east", "west"};
+    private static final long SEED = 7;
+
+    // комната, которая собирает описание каждый раз, как до кэша
+    private static final class UncachedRoom extends Room {
+        UncachedRoom(String name, String description) {
+            super(name, description);
+        }
+
+        @Override
+        public String describe() {
+            return render();
+        }
+
+        @Override
+        public void printDescription(PrintStream out) {
+            out.println(render());
+        }
+    }
+
+    private DescribeBench() {
+    }
+
+    static void run(PrintStream out, int rooms, int ops) {
+        out.printf("%d комнат, %d описаний, изменение на каждые %d%n", rooms, ops, WRITE_ONE_IN);
+        out.printf("%-14s %10s %14s %12s%n", "описание", "нс/оп", "описаний/с", "байт/оп");
+        PrintStream sink = new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8);
+        Room[] plain = world(rooms, false);
+        Room[] cached = world(rooms, true);
+        walk(plain, sink, ops / 4); // прогрев
+        walk(cached, sink, ops / 4);
+        walk(plain, sink, ops).print(out, "сборка");
+        walk(cached, sink, ops).print(out, "кэш");
+    }
+
+    private record Result(long nanos, long bytes, int ops) {
+        void print(PrintStream out, String title) {
+            out.printf("%-14s %10.0f %14.0f %12s%n", title, (double) nanos / ops, ops * 1e9 / nanos,
+                    bytes < 0 ? "-" : String.valueOf(bytes / ops));
+        }
+    }
+
+    private static Room[] world(int count, boolean cached) {
+        SplittableRandom rnd = new SplittableRandom(SEED);
+        Room[] rooms = new Room[count];
+        for (int i = 0; i < count; i++) {
+            String name = WorldGenerator.roomName(i);
+            String description = WorldGenerator.description(i, 100);
+            rooms[i] = cached ? new Room(name, description) : new UncachedRoom(name, description);
+            for (int k = rnd.nextInt(4); k > 0; k--) rooms[i].addItem(new Potion("Зелье " + rnd.nextInt(1000), 3));
+            if (rnd.nextInt(3) == 0) rooms[i].setMonster(new Monster("Гоблин", 1 + rnd.nextInt(5), 10));
+        }
+        for (int i = 0; i < count; i++) {
+            for (String dir : DIRECTIONS) {
+                if (rnd.nextInt(2) == 0) rooms[i].getNeighbors().put(dir, rooms[rnd.nextInt(count)]);
+            }
+        }
+        return rooms;
+    }
+
+    // переход в соседнюю комнату и ее описание; иногда предмет переносится в другую комнату
+    private static Result walk(Room[] rooms, PrintStream sink, int ops) {
+        SplittableRandom rnd = new SplittableRandom(SEED);
+        Room current = rooms[0];
+        long allocated = CommandProfile.allocated();
+        long started = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            if (rnd.nextInt(WRITE_ONE_IN) == 0 && !current.getItems().isEmpty()) {
+                Item item = current.takeItem(current.getItems().get(0).getName());
+                if (item != null) rooms[rnd.nextInt(rooms.length)].addItem(item);
+            }
+            Room next = current.getNeighbors().get(DIRECTIONS[rnd.nextInt(DIRECTIONS.length)]);
+            current = next != null ? next : rooms[rnd.nextInt(rooms.length)];
+            current.printDescription(sink);
+        }
+        long nanos = System.nanoTime() - started;
+        long bytes = allocated < 0 ? -1 : CommandProfile.allocated() - allocated;
+        return new Result(nanos, bytes, ops);
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.dungeon.core;
+
+// управление живым процессом через JMX: com.example.dungeon:type=Dungeon в платформенном
+// MBeanServer. JConsole и VisualVM подключаются к локальному процессу без флагов запуска.
+// атрибуты только читают счетчики, операции над сессией идут между ее командами
+public interface DungeonMXBean {
+    int getSessionCount();
+
+    int getHibernatedSessionCount();
+
+    // по всем мирам живых сессий; общий мир считается один раз. кэш на несколько секунд
+    long getRoomCount();
+
+    long getMonsterCount();
+
+    long getItemCount();
+
+    long getCommandCount();
+
+    // с прошлого замера, но не короче секунды
+    double getCommandsPerSecond();
+
+    long getSaveCount();
+
+    long getLoadCount();
+
+    double getAverageSaveMillis();
+
+    double getMaxSaveMillis();
+
+    double getAverageLoadMillis();
+
+    double getMaxLoadMillis();
+
+    int getLeaderboardSize();
+
+    // результаты в очереди фоновой записи scores.csv
+    long getPendingScores();
+
+    // "номер: игрок, комната, счет" по каждой сессии
+    String[] getSessions();
+
+    // сохранение auto-<номер> для каждой бодрствующей сессии; спящие и так на диске
+    String saveAllSessions();
+
+    // дождаться записи очереди результатов на диск; сколько строк ждало
+    long flushScores();
+
+    // усыпить сессии, молчащие дольше idleSeconds; сколько усыплено
+    int evictIdleSessions(int idleSeconds);
+
+    String dumpSession(long id);
+}
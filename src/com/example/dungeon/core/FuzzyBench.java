@@ -0,0 +1,94 @@
+package com.example.dungeon.core;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+// нечеткий поиск по каталогу из count случайных имен: BK-дерево против перебора всех имен
+final class FuzzyBench {
+    private static final String[] ADJECTIVES = {"Золотой", "Ржавый", "Древний", "Малый", "Тяжелый", "Лунный",
+            "Кривой", "Светлый", "Темный", "Огненный", "Ледяной", "Гнилой"};
+    private static final String[] NOUNS = {"ключ", "клинок", "амулет", "щит", "свиток", "посох", "кинжал",
+            "шлем", "перстень", "фонарь", "молот", "топор"};
+    private static final String LETTERS = "абвгдеёжзийклмнопрстуфхцчшщъыьэюя";
+    private static final int QUERIES = 2_000;
+
+    private FuzzyBench() {
+    }
+
+    static void run(PrintStream out, int count, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        Set<String> names = new HashSet<>();
+        while (names.size() < count) {
+            names.add(ADJECTIVES[rnd.nextInt(ADJECTIVES.length)] + " " + NOUNS[rnd.nextInt(NOUNS.length)]
+                    + " " + rnd.nextInt(count));
+        }
+        List<String> catalog = new ArrayList<>(names);
+
+        long started = System.nanoTime();
+        FuzzyIndex index = new FuzzyIndex();
+        catalog.forEach(index::add);
+        long buildMs = (System.nanoTime() - started) / 1_000_000;
+
+        // запросы - имена каталога с одной-двумя опечатками
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < QUERIES; i++) {
+            queries.add(typo(catalog.get(rnd.nextInt(catalog.size())), 1 + rnd.nextInt(2), rnd));
+        }
+
+        // прогрев
+        for (int i = 0; i < 200; i++) {
+            index.search(queries.get(i), FuzzyIndex.tolerance(queries.get(i)));
+            scan(catalog, queries.get(i));
+        }
+
+        long hits = 0;
+        started = System.nanoTime();
+        for (String q : queries) hits += index.search(q, FuzzyIndex.tolerance(q)).size();
+        double treeUs = (System.nanoTime() - started) / 1000.0 / queries.size();
+
+        int scanned = Math.min(queries.size(), 200); // перебор на большом каталоге долгий
+        long scanHits = 0;
+        long treeHitsSame = 0;
+        started = System.nanoTime();
+        for (int i = 0; i < scanned; i++) scanHits += scan(catalog, queries.get(i));
+        double scanUs = (System.nanoTime() - started) / 1000.0 / scanned;
+        for (int i = 0; i < scanned; i++) {
+            treeHitsSame += index.search(queries.get(i), FuzzyIndex.tolerance(queries.get(i))).size();
+        }
+
+        out.printf("Каталог: %d имен, дерево построено за %d мс%n", index.size(), buildMs);
+        out.printf("  BK-дерево: %8.1f мкс/запрос, найдено в среднем %.1f%n", treeUs, (double) hits / queries.size());
+        out.printf("  перебор:   %8.1f мкс/запрос (x%.0f)%n", scanUs, scanUs / treeUs);
+        out.println(scanHits == treeHitsSame ? "Результаты совпадают с перебором"
+                : "РАСХОЖДЕНИЕ: перебор нашел " + scanHits + ", дерево " + treeHitsSame);
+    }
+
+    private static int scan(List<String> catalog, String query) {
+        int tolerance = FuzzyIndex.tolerance(query);
+        int found = 0;
+        for (String name : catalog) {
+            if (FuzzyIndex.distance(query.toLowerCase(), name.toLowerCase()) <= tolerance) found++;
+        }
+        return found;
+    }
+
+    private static String typo(String name, int edits, SplittableRandom rnd) {
+        StringBuilder sb = new StringBuilder(name.toLowerCase());
+        for (int e = 0; e < edits; e++) {
+            int pos = rnd.nextInt(sb.length());
+            char c = LETTERS.charAt(rnd.nextInt(LETTERS.length()));
+            switch (rnd.nextInt(3)) {
+                case 0 -> sb.setCharAt(pos, c);
+                case 1 -> sb.insert(pos, c);
+                default -> {
+                    if (sb.length() > 1) sb.deleteCharAt(pos);
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
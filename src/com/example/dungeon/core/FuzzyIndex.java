@@ -0,0 +1,214 @@
+package com.example.dungeon.core;
+
+import java.util.*;
+
+// нечеткий поиск имен: BK-дерево по расстоянию Левенштейна без учета регистра.
+// запрос с допуском k обходит только ветки с расстоянием до узла в [d-k, d+k],
+// поэтому на каталоге в 100 тыс. имен сравнивается лишь малая часть. само расстояние
+// считается бит-параллельно (Myers): слово до 64 символов - одно слово long на символ текста.
+// имена считаются со счетчиком: одно имя у многих предметов, удаление лишь уменьшает счетчик,
+// узел с нулем остается в дереве, но в ответы не попадает
+final class FuzzyIndex {
+    private static final int MAX_PATTERN = 64;
+    // служебные символы Unicode, в именах их не бывает
+    private static final char NO_OWNER = '\uFFFF';
+    private static final char SHARED = '\uFFFE';
+
+    record Match(String name, int distance) {
+    }
+
+    private static final class Node {
+        final String key;
+        final String name; // как было написано при первом добавлении
+        int count;
+        int[] distances = new int[0];
+        Node[] children = new Node[0];
+
+        Node(String key, String name) {
+            this.key = key;
+            this.name = name;
+        }
+
+        Node child(int d) {
+            for (int i = 0; i < distances.length; i++) {
+                if (distances[i] == d) return children[i];
+            }
+            return null;
+        }
+
+        void addChild(int d, Node n) {
+            distances = Arrays.copyOf(distances, distances.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            distances[distances.length - 1] = d;
+            children[children.length - 1] = n;
+        }
+    }
+
+    private Node root;
+    private int size;
+
+    // допуск по длине запроса: короткое слово с двумя опечатками - уже другое слово
+    static int tolerance(String query) {
+        return query.length() <= 4 ? 1 : 2;
+    }
+
+    void add(String name) {
+        String key = normalize(name);
+        if (root == null) {
+            root = new Node(key, name);
+            root.count = 1;
+            size++;
+            return;
+        }
+        Pattern p = new Pattern(key); // расстояние симметрично: одна маска на весь спуск
+        Node n = root;
+        while (true) {
+            int d = p.distance(n.key);
+            if (d == 0) {
+                if (n.count++ == 0) size++;
+                return;
+            }
+            Node next = n.child(d);
+            if (next == null) {
+                Node leaf = new Node(key, name);
+                leaf.count = 1;
+                n.addChild(d, leaf);
+                size++;
+                return;
+            }
+            n = next;
+        }
+    }
+
+    void remove(String name) {
+        Pattern p = new Pattern(normalize(name));
+        Node n = root;
+        while (n != null) {
+            int d = p.distance(n.key);
+            if (d == 0) {
+                if (n.count > 0 && --n.count == 0) size--;
+                return;
+            }
+            n = n.child(d);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    // все имена не дальше maxDistance, ближние первыми
+    List<Match> search(String query, int maxDistance) {
+        List<Match> found = new ArrayList<>();
+        if (root == null) return found;
+        Pattern p = new Pattern(normalize(query));
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node n = stack.pop();
+            int d = p.distance(n.key);
+            if (d <= maxDistance && n.count > 0) found.add(new Match(n.name, d));
+            for (int i = 0; i < n.distances.length; i++) {
+                if (Math.abs(n.distances[i] - d) <= maxDistance) stack.push(n.children[i]);
+            }
+        }
+        found.sort(Comparator.comparingInt(Match::distance).thenComparing(Match::name));
+        return found;
+    }
+
+    static int distance(String a, String b) {
+        return new Pattern(a).distance(b);
+    }
+
+    private static String normalize(String s) {
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    // маски позиций символов шаблона; для длинных шаблонов - обычная таблица в две строки
+    private static final class Pattern {
+        private final String text;
+        private final char[] chars;
+        private final long[] masks;
+        // маска по младшему байту символа; при совпадении младших байтов у разных символов - поиск в chars
+        private final long[] byLow = new long[256];
+        private final char[] ownerByLow = new char[256];
+
+        Pattern(String text) {
+            this.text = text;
+            if (text.length() > MAX_PATTERN) {
+                chars = null;
+                masks = null;
+                return;
+            }
+            char[] distinct = new char[text.length()];
+            long[] m = new long[text.length()];
+            int n = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                int j = 0;
+                while (j < n && distinct[j] != c) j++;
+                if (j == n) distinct[n++] = c;
+                m[j] |= 1L << i;
+            }
+            chars = Arrays.copyOf(distinct, n);
+            masks = Arrays.copyOf(m, n);
+            Arrays.fill(ownerByLow, NO_OWNER);
+            for (int i = 0; i < n; i++) {
+                int low = chars[i] & 0xFF;
+                ownerByLow[low] = ownerByLow[low] == NO_OWNER ? chars[i] : SHARED;
+                byLow[low] = masks[i];
+            }
+        }
+
+        private long mask(char c) {
+            char owner = ownerByLow[c & 0xFF];
+            if (owner == c) return byLow[c & 0xFF];
+            if (owner != SHARED) return 0;
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] == c) return masks[i];
+            }
+            return 0;
+        }
+
+        int distance(String other) {
+            int m = text.length();
+            if (m == 0) return other.length();
+            if (chars == null) return table(text, other);
+            long pv = -1;
+            long mv = 0;
+            long last = 1L << (m - 1);
+            int score = m;
+            for (int i = 0; i < other.length(); i++) {
+                long eq = mask(other.charAt(i));
+                long xv = eq | mv;
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+                if ((ph & last) != 0) score++;
+                if ((mh & last) != 0) score--;
+                ph = (ph << 1) | 1;
+                mh <<= 1;
+                pv = mh | ~(xv | ph);
+                mv = ph & xv;
+            }
+            return score;
+        }
+
+        private static int table(String a, String b) {
+            int[] prev = new int[b.length() + 1];
+            int[] cur = new int[b.length() + 1];
+            for (int j = 0; j <= b.length(); j++) prev[j] = j;
+            for (int i = 1; i <= a.length(); i++) {
+                cur[0] = i;
+                for (int j = 1; j <= b.length(); j++) {
+                    int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                    cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                }
+                int[] t = prev;
+                prev = cur;
+                cur = t;
+            }
+            return prev[b.length()];
+        }
+    }
+}
@@ -2,17 +2,53 @@ package com.example.dungeon.core;
 
 import com.example.dungeon.model.*;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.*;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 
 public class Game {
+    static final String START_ROOM = "Площадь";
+    static final String TREASURY_LOCK = "treasury";
+    private static final int UNDO_TURNS = 50;
+    // команды работы с историей сами снимок перед ходом не делают
+    private static final Set<String> HISTORY_COMMANDS = Set.of("undo", "quicksave", "quickload");
+    private static final int MACRO_DEPTH = 8;
+    // вложенность не ограничивает размах: a = b;b;b..., b = c;c;c... - поэтому отдельно
+    // предел команд и раскрытий макросов на строку и длины тела макроса
+    private static final int MAX_LINE_COMMANDS = 1000;
+    private static final int MAX_MACRO_BODY = 1000;
+    // пределы для сетевых сессий без прав оператора: рейд и генерация идут в потоке сервера
+    private static final int REMOTE_RAID_HEROES = 1_000;
+    private static final int REMOTE_RAID_MONSTERS = 20_000;
+    private static final int REMOTE_GENERATE_ROOMS = 100_000;
+    // стандартный мир один на процесс, сессии видят его через свой OverlayWorld
+    private static final WorldTemplate STANDARD = new WorldTemplate(createWorld(), createDoors());
+
     private final GameState state = new GameState();
     private final Map<String, Command> commands = new LinkedHashMap<>();
+    private final Map<String, String> macros = new LinkedHashMap<>(); // макросы сессии: имя -> строка команд
+    private final SharedWorld shared; // null - одиночная игра со своим миром
+    private final ReentrantLock lock = new ReentrantLock(); // команды сессии и операции JMX - по очереди
+    // бенчмарки и обслуживание на весь процесс; сетевым клиентам - только по разрешению сервера
+    private boolean operator = true;
+    private SaveLoad.Storage storage = SaveLoad.Storage.DEFAULT; // сохранения и таблица результатов
+    // пространство имен сохранений сессии: сетевые клиенты не видят и не перезаписывают чужие
+    private String savePrefix = "";
+    // нечеткий поиск для опечаток; строятся при первой ошибке, дальше меняются по ходу игры
+    private FuzzyIndex commandIndex;
+    private FuzzyIndex itemIndex; // имена предметов мира и инвентаря
+    private Map<String, Room> itemIndexWorld; // мир, по которому построен itemIndex
+    private WorldAnalyzer analysis; // связность мира; после отката ходов пересчитывается
+    private QuestProgress quests = new QuestProgress(QuestBook.standard());
+    private RoomChannels.Inbox inbox; // null - сообщения комнаты сессии никто не читает (боты, одиночная игра)
+    private String visited; // комната, о которой квесты уже знают
+    private Map<String, Room> totalsWorld; // мир, по которому посчитаны пороги all
+    private int[] totals; // комнаты, двери, монстры, предметы
 
     static {
         WorldInfo.touch("Game");
@@ -20,12 +56,108 @@ public class Game {
 
 
     public Game() {
+        this.shared = null;
         registerCommands();
+        state.enableHistory(UNDO_TURNS);
         bootstrapWorld();
     }
 
+    // сессия в общем мире: комнаты общие, игрок и счет свои
+    Game(SharedWorld shared, String playerName) {
+        this.shared = shared;
+        registerCommands();
+        state.setPlayer(new Player(playerName, 20, 5));
+        state.setWorld(shared.getWorld());
+        state.setDoors(shared.getDoors());
+        state.setCurrent(shared.getStart());
+    }
+
+    public GameState getState() {
+        return state;
+    }
+
+    boolean isOperator() {
+        return operator;
+    }
+
+    void setOperator(boolean operator) {
+        this.operator = operator;
+    }
+
+    SaveLoad.Storage getStorage() {
+        return storage;
+    }
+
+    void setStorage(SaveLoad.Storage storage) {
+        this.storage = storage;
+    }
+
+    String getSavePrefix() {
+        return savePrefix;
+    }
+
+    void setSavePrefix(String savePrefix) {
+        this.savePrefix = savePrefix;
+    }
+
+    // макросы переживают усыпление сессии отдельно от сохранения
+    Map<String, String> getMacros() {
+        return macros;
+    }
+
+    // прогресс квестов переживает усыпление сессии, как макросы
+    QuestProgress getQuests() {
+        return quests;
+    }
+
+    // после пробуждения текущая комната квестам уже известна
+    void setQuests(QuestProgress quests) {
+        this.quests = quests;
+        Room current = state.getCurrent();
+        visited = current == null ? null : current.getName();
+    }
+
+    // подписка на канал текущей комнаты общего мира; читает ее GameServer
+    RoomChannels.Inbox openInbox() {
+        inbox = shared.channels().open(state.getCurrent());
+        announce(state.getCurrent(), state.getPlayer().getName() + " входит в игру");
+        return inbox;
+    }
+
+    void closeInbox() {
+        if (inbox == null) return;
+        announce(state.getCurrent(), state.getPlayer().getName() + " покидает игру");
+        shared.channels().close(inbox);
+        inbox = null;
+    }
+
+    // остальным в комнате общего мира; говорят и те, кто сам не слушает (боты)
+    private int announce(Room room, String message) {
+        return shared == null || room == null ? 0 : shared.channels().publish(room, inbox, message);
+    }
+
+    // действие над состоянием сессии не посреди ее команды (см. GameMonitor)
+    <T> T locked(Supplier<T> action) {
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // то же без ожидания: null, если сессия как раз выполняет команду
+    <T> T tryLocked(Supplier<T> action) {
+        if (!lock.tryLock()) return null;
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
     // метод для генерации случайных имен
-    private String generateRandomName() {
+    static String generateRandomName() {
         String[] prefixes = {"Храбрый", "Мудрый", "Сильный", "Ловкий", "Великий", "Славный", "Быстрый", "Отважный"};
         String[] suffixes = {"воин", "маг", "лучник", "разведчик", "странник", "защитник", "искатель", "охотник"};
 
@@ -37,12 +169,12 @@ public class Game {
     }
 
     private void registerCommands() {
-        commands.put("help", (ctx, a) -> System.out.println("Команды: " + String.join(", ", commands.keySet())));
+        commands.put("help", (ctx, a) -> ctx.getOut().println("Команды: " + String.join(", ", commands.keySet())));
 
         commands.put("name", (ctx, a) -> {
             if (a.isEmpty()) {
-                System.out.println("Текущее имя: " + ctx.getPlayer().getName());
-                System.out.println("Для смены имени используйте: name <новое_имя>");
+                ctx.getOut().println("Текущее имя: " + ctx.getPlayer().getName());
+                ctx.getOut().println("Для смены имени используйте: name <новое_имя>");
                 return;
             }
 
@@ -56,17 +188,30 @@ public class Game {
 
             String oldName = ctx.getPlayer().getName();
             ctx.getPlayer().setName(newName);
-            System.out.println("Имя изменено: " + oldName + " → " + newName);
+            ctx.getOut().println("Имя изменено: " + oldName + " → " + newName);
             ctx.addScore(5); // Небольшой бонус за смену имени
         });
 
+        // say <текст> - реплика всем в комнате общего мира
+        commands.put("say", (ctx, a) -> {
+            if (shared == null) {
+                throw new InvalidCommandException("Вы здесь одни: say работает в общем мире (server)");
+            }
+            if (a.isEmpty()) {
+                throw new InvalidCommandException("Что сказать? say <текст>");
+            }
+            String text = String.join(" ", a);
+            int heard = announce(ctx.getCurrent(), ctx.getPlayer().getName() + ": " + text);
+            ctx.getOut().println("Вы: " + text + (heard == 0 ? " (никто не слышит)" : ""));
+        });
+
 // команда whoami - информация об игроке
         commands.put("whoami", (ctx, a) -> {
             Player player = ctx.getPlayer();
-            System.out.println("Вы: " + player.getName());
-            System.out.println("HP: " + player.getHp() + ", Атака: " + player.getAttack());
-            System.out.println("Счет: " + ctx.getScore());
-            System.out.println("Предметов в инвентаре: " + player.getInventory().size());
+            ctx.getOut().println("Вы: " + player.getName());
+            ctx.getOut().println("HP: " + player.getHp() + ", Атака: " + player.getAttack());
+            ctx.getOut().println("Счет: " + ctx.getScore());
+            ctx.getOut().println("Предметов в инвентаре: " + player.getInventory().size());
         });
 
         commands.put("gc-stats", (ctx, a) -> {
@@ -76,21 +221,296 @@ public class Game {
             long free = rt.freeMemory() / 1024 / 1024;     // Свободная память
             long used = total - free;                      // Используемая память
 
-            System.out.println("=== Статистика памяти ===");
-            System.out.println("Использовано: " + used + " MB");
-            System.out.println("Свободно: " + free + " MB");
-            System.out.println("Всего в JVM: " + total + " MB");
-            System.out.println("Максимум JVM: " + max + " MB");
-            System.out.println("Использование: " + (used * 100 / total) + "%");
+            ctx.getOut().println("=== Статистика памяти ===");
+            ctx.getOut().println("Использовано: " + used + " MB");
+            ctx.getOut().println("Свободно: " + free + " MB");
+            ctx.getOut().println("Всего в JVM: " + total + " MB");
+            ctx.getOut().println("Максимум JVM: " + max + " MB");
+            ctx.getOut().println("Использование: " + (used * 100 / total) + "%");
+        });
+
+        // macro - список, macro <имя> - удалить, macro <имя> <команды через ;> - задать
+        commands.put("macro", (ctx, a) -> {
+            if (a.isEmpty()) {
+                if (macros.isEmpty()) {
+                    ctx.getOut().println("Макросов нет. Использование: macro <имя> <команда; команда; ...>");
+                }
+                macros.forEach((name, body) -> ctx.getOut().println(name + " = " + body));
+                return;
+            }
+            String name = a.getFirst().toLowerCase(Locale.ROOT);
+            if (a.size() == 1) {
+                if (macros.remove(name) == null) throw new InvalidCommandException("Нет макроса: " + name);
+                if (commandIndex != null) commandIndex.remove(name);
+                ctx.getOut().println("Макрос удален: " + name);
+                return;
+            }
+            if (commands.containsKey(name)) {
+                throw new InvalidCommandException("Имя занято командой: " + name);
+            }
+            String body = String.join(" ", a.subList(1, a.size()));
+            if (body.length() > MAX_MACRO_BODY) {
+                throw new InvalidCommandException("Тело макроса длиннее " + MAX_MACRO_BODY + " символов");
+            }
+            if (macros.put(name, body) == null && commandIndex != null) commandIndex.add(name);
+            ctx.getOut().println("Макрос " + name + " = " + body);
+        });
+
+        // мир в отображаемом файле вместо кучи; save в нем - сброс страниц на диск
+        commands.put("mapped", (ctx, a) -> {
+            String usage = "Использование: mapped create <имя> [комнат [seed]] | open <имя> | flush | bench <комнат>";
+            try {
+                switch (a.isEmpty() ? "" : a.getFirst()) {
+                    case "create" -> {
+                        requireOperator();
+                        requirePrivateWorld();
+                        Path file = SaveLoad.mappedFile(a.get(1));
+                        long started = System.nanoTime();
+                        MappedWorld world;
+                        if (a.size() > 2) {
+                            int rooms = Integer.parseInt(a.get(2));
+                            if (rooms < 1) throw new NumberFormatException();
+                            long seed = a.size() > 3 ? Long.parseLong(a.get(3)) : System.nanoTime();
+                            world = WorldGenerator.generateMapped(file, rooms, seed);
+                        } else {
+                            // без числа комнат в файл переносится текущий мир вместе с игроком
+                            world = MappedWorld.copyOf(file, ctx.getWorld(), ctx.getDoors());
+                            world.save(ctx);
+                        }
+                        world.flush();
+                        attachMapped(ctx, world);
+                        ctx.getOut().printf("Мир из %d комнат записан в %s за %d мс%n", world.size(),
+                                file.toAbsolutePath(), (System.nanoTime() - started) / 1_000_000);
+                        ctx.getCurrent().printDescription(ctx.getOut());
+                    }
+                    case "open" -> {
+                        requireOperator();
+                        requirePrivateWorld();
+                        MappedWorld world = MappedWorld.open(SaveLoad.mappedFile(a.get(1)));
+                        attachMapped(ctx, world);
+                        ctx.getOut().println("Открыт мир из " + world.size() + " комнат: " + world.file().toAbsolutePath());
+                        ctx.getCurrent().printDescription(ctx.getOut());
+                    }
+                    case "flush" -> {
+                        if (!(ctx.getWorld() instanceof MappedWorld world)) {
+                            throw new InvalidCommandException("Текущий мир хранится в куче, а не в файле");
+                        }
+                        world.save(ctx);
+                        ctx.getOut().println("Изменения сброшены на диск: " + world.file().toAbsolutePath());
+                    }
+                    case "bench" -> {
+                        requireOperator();
+                        int rooms = Integer.parseInt(a.get(1));
+                        if (rooms < 1) throw new NumberFormatException();
+                        MappedBench.run(ctx.getOut(), rooms);
+                    }
+                    default -> throw new InvalidCommandException(usage);
+                }
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                throw new InvalidCommandException(usage);
+            } catch (IOException e) {
+                throw new InvalidCommandException("Ошибка файла мира: " + e.getMessage());
+            }
+        });
+
+        commands.put("pipeline-bench", (ctx, a) -> {
+            requireOperator();
+            try {
+                int count = a.isEmpty() ? 20_000 : Integer.parseInt(a.get(0));
+                int batch = a.size() < 2 ? 8 : Integer.parseInt(a.get(1));
+                if (count < 1 || batch < 1) throw new NumberFormatException();
+                PipelineBench.run(ctx.getOut(), count, batch);
+            } catch (NumberFormatException e) {
+                throw new InvalidCommandException("Использование: pipeline-bench [команд] [в_пачке]");
+            } catch (IOException e) {
+                throw new InvalidCommandException("Сбой соединения: " + e.getMessage());
+            }
+        });
+
+        commands.put("describe-bench", (ctx, a) -> {
+            requireOperator();
+            try {
+                int rooms = a.isEmpty() ? 10_000 : Integer.parseInt(a.getFirst());
+                int ops = a.size() < 2 ? 1_000_000 : Integer.parseInt(a.get(1));
+                if (rooms < 1 || ops < 1) throw new NumberFormatException();
+                DescribeBench.run(ctx.getOut(), rooms, ops);
+            } catch (NumberFormatException e) {
+                throw new InvalidCommandException("Использование: describe-bench [комнат] [описаний]");
+            }
+        });
+
+        commands.put("fuzzy-bench", (ctx, a) -> {
+            requireOperator();
+            try {
+                int count = a.isEmpty() ? 100_000 : Integer.parseInt(a.getFirst());
+                if (count < 1) throw new NumberFormatException();
+                FuzzyBench.run(ctx.getOut(), count, 1);
+            } catch (NumberFormatException e) {
+                throw new InvalidCommandException("Использование: fuzzy-bench [имен]");
+            }
+        });
+
+        // quests - выполненные и текущие, quests all - и проваленные
+        commands.put("quests", (ctx, a) -> {
+            QuestBook book = quests.book();
+            boolean all = !a.isEmpty() && "all".equals(a.getFirst());
+            ctx.getOut().println("=== Квесты: выполнено " + quests.doneCount() + " из " + book.ruleCount() + " ===");
+            for (int r = 0; r < book.ruleCount(); r++) {
+                QuestBook.Rule rule = book.rule(r);
+                boolean failed = quests.isFailed(r) && !quests.isDone(r);
+                if (failed && !all) continue;
+                ctx.getOut().println((quests.isDone(r) ? "✓ " : failed ? "✗ " : "  ") + rule.title()
+                        + " (+" + rule.reward() + "): " + quests.describe(r, this::questTotal));
+            }
+        });
+
+        commands.put("quest-bench", (ctx, a) -> {
+            requireOperator();
+            try {
+                int rules = a.isEmpty() ? 2000 : Integer.parseInt(a.getFirst());
+                int events = a.size() < 2 ? 20_000 : Integer.parseInt(a.get(1));
+                if (rules < 1 || events < 3) throw new NumberFormatException();
+                QuestBench.run(ctx.getOut(), rules, events);
+            } catch (NumberFormatException e) {
+                throw new InvalidCommandException("Использование: quest-bench [правил] [событий]");
+            }
+        });
+
+        commands.put("chat-bench", (ctx, a) -> {
+            requireOperator();
+            try {
+                int subscribers = a.isEmpty() ? 1000 : Integer.parseInt(a.getFirst());
+                int messages = a.size() < 2 ? 2000 : Integer.parseInt(a.get(1));
+                if (subscribers < 1 || messages < 1) throw new NumberFormatException();
+                ChannelBench.run(ctx.getOut(), subscribers, messages);
+            } catch (NumberFormatException e) {
+                throw new InvalidCommandException("Использование: chat-bench [подписчиков на комнату] [сообщений]");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         });
 
-        commands.put("look", (ctx, a) -> System.out.println(ctx.getCurrent().describe()));
+        commands.put("overlay-bench", (ctx, a) -> {
+            requireOperator();
+            try {
+                int sessions = a.isEmpty() ? 100 : Integer.parseInt(a.getFirst());
+                int rooms = a.size() < 2 ? 10_000 : Integer.parseInt(a.get(1));
+                if (sessions < 1 || rooms < 1) throw new NumberFormatException();
+                OverlayBench.run(ctx.getOut(), sessions, rooms, 200);
+            } catch (NumberFormatException e) {
+                throw new InvalidCommandException("Использование: overlay-bench [сессий] [комнат]");
+            }
+        });
+
+        // alloc-stats [reset] - сколько памяти выделяют команды
+        commands.put("alloc-stats", (ctx, a) -> {
+            if (!a.isEmpty() && "reset".equals(a.getFirst())) {
+                requireOperator();
+                CommandProfile.reset();
+                ctx.getOut().println("Статистика выделений сброшена");
+                return;
+            }
+            CommandProfile.print(ctx.getOut());
+        });
+
+        commands.put("sessions", (ctx, a) -> {
+            requireOperator();
+            SessionRegistry.printActive(ctx.getOut());
+        });
+
+        commands.put("heap-report", (ctx, a) -> {
+            requireOperator();
+            HeapReport.print(ctx.getOut(), ctx);
+        });
+
+        commands.put("monitor", (ctx, a) -> {
+            requireOperator();
+            GameMonitor.print(ctx.getOut());
+        });
+
+        commands.put("mp-stress", (ctx, a) -> {
+            requireOperator();
+            try {
+                int maxPerRoom = a.isEmpty() ? 32 : Integer.parseInt(a.get(0));
+                int rooms = a.size() < 2 ? 4 : Integer.parseInt(a.get(1));
+                if (maxPerRoom < 1 || rooms < 1) throw new NumberFormatException();
+                SharedWorldStress.run(ctx.getOut(), maxPerRoom, rooms);
+            } catch (NumberFormatException e) {
+                throw new InvalidCommandException("Использование: mp-stress [игроков_на_комнату] [комнат]");
+            }
+        });
+
+        commands.put("generate", (ctx, a) -> {
+            if (shared != null) {
+                throw new InvalidCommandException("В общем мире генерация недоступна");
+            }
+            try {
+                int rooms = Integer.parseInt(a.getFirst());
+                long seed = a.size() > 1 ? Long.parseLong(a.get(1)) : System.nanoTime();
+                if (rooms < 1) throw new NumberFormatException();
+                if (!operator && rooms > REMOTE_GENERATE_ROOMS) {
+                    throw new InvalidCommandException("По сети не больше " + REMOTE_GENERATE_ROOMS + " комнат");
+                }
+                long started = System.nanoTime();
+                WorldTemplate template = WorldGenerator.template(rooms, seed);
+                OverlayWorld world = new OverlayWorld(template);
+                ctx.setWorld(world);
+                ctx.setDoors(template.doors());
+                ctx.setCurrent(world.get(WorldGenerator.roomName(0)));
+                restoreHistory(ctx);
+                ctx.getOut().printf("Сгенерирован мир из %d комнат и %d запертых дверей за %d мс%n",
+                        rooms, template.doors().size(), (System.nanoTime() - started) / 1_000_000);
+                analysis = WorldAnalyzer.analyze(ctx);
+                analysis.printSummary(ctx.getOut());
+            } catch (NoSuchElementException | NumberFormatException e) {
+                throw new InvalidCommandException("Использование: generate <комнат> [seed]");
+            }
+        });
+
+        commands.put("bots", (ctx, a) -> {
+            requireOperator();
+            try {
+                int count = a.isEmpty() ? 1000 : Integer.parseInt(a.getFirst());
+                int seconds = a.size() < 2 ? 5 : Integer.parseInt(a.get(1));
+                if (count < 1 || seconds < 1) throw new NumberFormatException();
+                BotSwarm.run(ctx.getOut(), count, seconds);
+            } catch (NumberFormatException e) {
+                throw new InvalidCommandException("Использование: bots [количество] [секунд]");
+            }
+        });
+
+        // analyze - связность мира заново, reachable <комната> - можно ли туда попасть
+        commands.put("analyze", (ctx, a) -> {
+            requireHeapWorld(ctx);
+            analysis = WorldAnalyzer.analyze(ctx);
+            analysis.print(ctx.getOut());
+        });
+
+        commands.put("reachable", (ctx, a) -> {
+            if (a.isEmpty()) throw new InvalidCommandException("Использование: reachable <комната>");
+            requireHeapWorld(ctx);
+            if (analysis == null || !analysis.isFor(ctx.getWorld())) analysis = WorldAnalyzer.analyze(ctx);
+            String room = String.join(" ", a);
+            if (!ctx.getWorld().containsKey(room)) throw new InvalidCommandException("Нет комнаты: " + room);
+            if (analysis.isReachable(room)) {
+                ctx.getOut().println(room + ": достижима");
+            } else if (analysis.isUnlockable(room)) {
+                ctx.getOut().println(room + ": за запертой дверью, ключ найти можно");
+            } else {
+                ctx.getOut().println(room + ": недостижима");
+            }
+        });
+
+        commands.put("look", (ctx, a) -> ctx.getCurrent().printDescription(ctx.getOut()));
 
         commands.put("move", (ctx, a) -> {
             if (a.isEmpty()) {
                 throw new InvalidCommandException("Укажите направление: move <north|south|east|west>");
             }
 
+            if (ctx.getCombat() != null) {
+                throw new InvalidCommandException("Вы в бою: attack - ударить, run - сбежать");
+            }
             String direction = a.getFirst().toLowerCase(Locale.ROOT);
             Room current = ctx.getCurrent();
             Room next = current.getNeighbors().get(direction);
@@ -98,9 +518,14 @@ public class Game {
             if (next == null) {
                 throw new InvalidCommandException("Нет выхода в направлении: " + direction);
             }
+            String name = ctx.getPlayer().getName();
+            announce(current, name + " уходит на " + direction);
             ctx.setCurrent(next);
-            System.out.println("Вы перешли в: " + next.getName());
-            System.out.println(next.describe());
+            if (inbox != null) shared.channels().enter(inbox, next);
+            announce(next, name + " приходит");
+            ctx.getOut().println("Вы перешли в: " + next.getName());
+            next.printDescription(ctx.getOut());
+            quest(ctx, "move", direction, 1);
         });
 
         commands.put("take", (ctx, a) -> {
@@ -112,25 +537,25 @@ public class Game {
             Room current = ctx.getCurrent();
             Player player = ctx.getPlayer();
 
-            Optional<Item> foundItem = current.getItems().stream()
-                    .filter(item -> item.getName().equalsIgnoreCase(itemName))
-                    .findFirst();
-
-            if (foundItem.isEmpty()) {
-                throw new InvalidCommandException("Предмет '" + itemName + "' не найден в комнате");
+            Item item = current.takeItem(itemName);
+            if (item == null) {
+                String corrected = correctItem(ctx, itemName, current.getItems(), "в комнате");
+                item = current.takeItem(corrected);
+                if (item == null) {
+                    throw new InvalidCommandException("Предмет '" + corrected + "' не найден в комнате");
+                }
             }
 
-            Item item = foundItem.get();
-            current.getItems().remove(item);
             player.getInventory().add(item);
-            System.out.println("Взято: " + item.getName());
+            ctx.getOut().println("Взято: " + item.getName());
+            quest(ctx, "take", item.getName(), 1);
         });
 
         commands.put("inventory", (ctx, a) -> {
             Player player = ctx.getPlayer();
 
             if (player.getInventory().isEmpty()) {
-                System.out.println("Инвентарь пуст");
+                ctx.getOut().println("Инвентарь пуст");
                 return;
             }
 
@@ -149,7 +574,7 @@ public class Game {
                                 .map(Item::getName)
                                 .sorted()
                                 .toList();
-                        System.out.println("- " + type + " (" + items.size() + "): " +
+                        ctx.getOut().println("- " + type + " (" + items.size() + "): " +
                                 String.join(", ", sortedItemNames));
                     });
         });
@@ -162,16 +587,32 @@ public class Game {
             String itemName = String.join(" ", a);
             Player player = ctx.getPlayer();
 
-            Optional<Item> foundItem = player.getInventory().stream()
-                    .filter(item -> item.getName().equalsIgnoreCase(itemName))
-                    .findFirst();
-
+            Optional<Item> foundItem = findItem(player.getInventory(), itemName);
+            if (foundItem.isEmpty()) {
+                foundItem = findItem(player.getInventory(),
+                        correctItem(ctx, itemName, player.getInventory(), "в инвентаре"));
+            }
             if (foundItem.isEmpty()) {
                 throw new InvalidCommandException("Предмет '" + itemName + "' не найден в инвентаре");
             }
 
             Item item = foundItem.get();
+            // двери, запертые до ключа: открытые им - события open
+            List<Door> locked = item instanceof Key ? ctx.getDoors().lockedExits(ctx.getCurrent()) : List.of();
             item.apply(ctx); // Полиморфизм через метод apply()
+            quest(ctx, "use", item.getName(), 1);
+            // зелье выпито - его имени больше нет в мире
+            if (itemIndex != null && !player.getInventory().contains(item)) itemIndex.remove(item.getName());
+            // ключ мог открыть двери: достижимость дополняется, а не считается заново
+            if (item instanceof Key && analysis != null && analysis.isFor(ctx.getWorld())) {
+                Room current = ctx.getCurrent();
+                for (Door d : ctx.getDoors().doorsAt(current.getName())) {
+                    if (!d.isLockedFrom(current)) analysis.opened(d);
+                }
+            }
+            for (Door d : locked) {
+                if (!d.isLockedFrom(ctx.getCurrent())) quest(ctx, "open", d.roomA() + "/" + d.roomB(), 1);
+            }
         });
 
         commands.put("fight", (ctx, a) -> {
@@ -179,149 +620,319 @@ public class Game {
             if (current == null) {
                 throw new InvalidCommandException("Вы находитесь в неопределенной локации");
             }
-            Player player = ctx.getPlayer();
-            Monster monster = current.getMonster();
+            if (ctx.getCombat() != null) {
+                throw new InvalidCommandException("Вы уже в бою: attack или run");
+            }
+            Monster monster = current.engageMonster();
 
             if (monster == null) {
                 throw new InvalidCommandException("В этой комнате нет монстров для боя");
             }
 
-            System.out.println("Начинается бой с " + monster.getName() + "!");
-
-            BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+            ctx.getOut().println("Начинается бой с " + monster.getName() + "!");
+            Combat combat = new Combat(current, monster);
+            ctx.setCombat(combat);
+            printRound(ctx, combat);
+        });
 
-            try {
-                while (player.getHp() > 0 && monster.getHp() > 0) {
-                    System.out.println("\n--- Ход боя ---");
-                    System.out.println(player.getName() + ": HP=" + player.getHp() + ", Атака=" + player.getAttack());
-                    System.out.println(monster.getName() + ": HP=" + monster.getHp() + ", Уровень=" + monster.getLevel());
-                    System.out.print("Введите 'attack' для атаки или 'run' для бегства: ");
-
-                    String input = in.readLine().trim().toLowerCase(Locale.ROOT);
-
-                    if ("run".equals(input)) {
-                        System.out.println("Вы сбежали из боя!");
-                        return;
-                    } else if (!"attack".equals(input)) {
-                        System.out.println("Неверная команда, пропуск хода");
-                        continue;
-                    }
+        // один ход боя: удар игрока и ответ монстра
+        commands.put("attack", (ctx, a) -> {
+            Combat combat = requireCombat(ctx);
+            Player player = ctx.getPlayer();
+            Monster monster = combat.getMonster();
+            Room room = combat.getRoom();
+
+            // Атака игрока (под замком комнаты - монстра могут бить и другие игроки)
+            int playerDamage = player.getAttack();
+            int monsterHp = room.strikeMonster(monster, playerDamage);
+            if (monsterHp < 0) {
+                ctx.setCombat(null);
+                ctx.getOut().println("Монстра уже одолел кто-то другой.");
+                return;
+            }
+            ctx.getOut().println("Вы бьёте " + monster.getName() + " на " + playerDamage +
+                    ". HP монстра: " + monsterHp);
 
-                    // Атака игрока
-                    int playerDamage = player.getAttack();
-                    monster.setHp(monster.getHp() - playerDamage);
-                    System.out.println("Вы бьёте " + monster.getName() + " на " + playerDamage +
-                            ". HP монстра: " + Math.max(0, monster.getHp()));
+            if (monsterHp == 0) {
+                ctx.setCombat(null);
+                ctx.getOut().println("Монстр побежден!");
 
-                    if (monster.getHp() <= 0) {
-                        System.out.println("Монстр побежден!");
+                // Выпадение лута
+                if (!room.getItems().isEmpty()) {
+                    ctx.getOut().println("Монстр выронил предметы: " +
+                            room.getItems().stream().map(Item::getName).collect(Collectors.joining(", ")));
+                }
 
-                        // Выпадение лута
-                        if (!current.getItems().isEmpty()) {
-                            System.out.println("Монстр выронил предметы: " +
-                                    current.getItems().stream().map(Item::getName).collect(Collectors.joining(", ")));
-                        }
+                ctx.addScore(10); // Бонус за победу
+                announce(room, player.getName() + " побеждает " + monster.getName());
+                quest(ctx, "kill", monster.getName(), 1);
+                return;
+            }
 
-                        current.setMonster(null);
-                        ctx.addScore(10); // Бонус за победу
-                        return;
-                    }
+            // Атака монстра (простая логика: уровень монстра = урон)
+            int monsterDamage = monster.getLevel();
+            player.setHp(player.getHp() - monsterDamage);
+            ctx.getOut().println("Монстр отвечает на " + monsterDamage +
+                    ". Ваше HP: " + Math.max(0, player.getHp()));
+
+            if (player.getHp() <= 0) {
+                ctx.setCombat(null);
+                ctx.getOut().println("Вы погибли! Игра окончена.");
+                // завершается только эта сессия, а не весь процесс (сервер, боты)
+                ctx.finish();
+                return;
+            }
+            printRound(ctx, combat);
+        });
 
-                    // Атака монстра (простая логика: уровень монстра = урон)
-                    int monsterDamage = monster.getLevel();
-                    player.setHp(player.getHp() - monsterDamage);
-                    System.out.println("Монстр отвечает на " + monsterDamage +
-                            ". Ваше HP: " + Math.max(0, player.getHp()));
+        commands.put("run", (ctx, a) -> {
+            requireCombat(ctx);
+            ctx.setCombat(null);
+            ctx.getOut().println("Вы сбежали из боя!");
+        });
 
-                    if (player.getHp() <= 0) {
-                        System.out.println("Вы погибли! Игра окончена.");
-                        System.exit(0);
-                    }
+        // массовый бой: игрок с союзниками против толпы монстров; раунды считаются пачкой
+        // по массивам, на экран - только ход рейда по четвертям
+        commands.put("raid", (ctx, a) -> {
+            if (ctx.getCombat() != null) {
+                throw new InvalidCommandException("Вы уже в бою: attack или run");
+            }
+            int maxHeroes = operator ? 1_000_000 : REMOTE_RAID_HEROES;
+            int maxMonsters = operator ? 10_000_000 : REMOTE_RAID_MONSTERS;
+            int heroes;
+            int monsters;
+            try {
+                heroes = a.isEmpty() ? 300 : Integer.parseInt(a.getFirst());
+                monsters = a.size() < 2 ? 2000 : Integer.parseInt(a.get(1));
+                if (heroes < 1 || monsters < 1 || heroes > maxHeroes || monsters > maxMonsters) {
+                    throw new NumberFormatException();
                 }
-            } catch (IOException e) {
-                throw new InvalidCommandException("Ошибка ввода во время боя: " + e.getMessage());
+            } catch (NumberFormatException e) {
+                throw new InvalidCommandException("Использование: raid [героев до " + maxHeroes + "] [монстров до " + maxMonsters + "]");
+            }
+            Player player = ctx.getPlayer();
+            Monster boss = ctx.getCurrent().getMonster();
+            int maxLevel = boss == null ? 3 : boss.getLevel() + 1;
+            RaidKernel kernel = RaidKernel.best();
+            long started = System.nanoTime();
+            Raid raid = Raid.spawn(kernel, player, heroes, monsters, maxLevel, System.nanoTime());
+            ctx.getOut().printf("⚔ Рейд в комнате %s: вы и %d союзников против %d монстров (до ур. %d)%n",
+                    ctx.getCurrent().getName(), heroes - 1, monsters, maxLevel);
+            int quarters = 3; // сколько отметок "осталось 3/4, 1/2, 1/4 монстров" еще впереди
+            boolean playerAlive = true;
+            while (raid.round()) {
+                if (quarters > 0 && raid.monsters() <= (long) monsters * quarters / 4) {
+                    ctx.getOut().printf("Раунд %d: героев %d, монстров %d%n", raid.rounds(), raid.heroes(), raid.monsters());
+                    while (quarters > 0 && raid.monsters() <= (long) monsters * quarters / 4) quarters--;
+                }
+                if (playerAlive && !raid.isPlayerAlive()) {
+                    playerAlive = false;
+                    ctx.getOut().printf("Раунд %d: вы пали, рейд идет без вас%n", raid.rounds());
+                }
+            }
+            boolean won = raid.monsters() == 0;
+            String outcome = won ? "победа" : raid.heroes() == 0 ? "поражение" : "ничья";
+            ctx.getOut().printf("%s за %d раундов: героев осталось %d, монстров %d (%d мс, расчет %s)%n",
+                    won ? "Победа" : raid.heroes() == 0 ? "Поражение" : "Ничья", raid.rounds(), raid.heroes(),
+                    raid.monsters(), (System.nanoTime() - started) / 1_000_000, kernel.name());
+            if (raid.isPlayerAlive()) {
+                player.setHp(raid.playerHp());
+                int share = (int) (raid.experience() / heroes) + (won ? 10 : 0);
+                ctx.addScore(share);
+                ctx.getOut().println("Ваша доля добычи: " + share + " очков. HP: " + player.getHp());
+            } else {
+                player.setHp(1);
+                ctx.getOut().println("Вас без сознания вынесли с арены. HP: 1");
+            }
+            quest(ctx, "raid", outcome, 1);
+        });
+
+        commands.put("raid-bench", (ctx, a) -> {
+            requireOperator();
+            try {
+                int heroes = a.isEmpty() ? 1000 : Integer.parseInt(a.getFirst());
+                int monsters = a.size() < 2 ? 100_000 : Integer.parseInt(a.get(1));
+                if (heroes < 1 || monsters < 1) throw new NumberFormatException();
+                RaidBench.run(ctx.getOut(), heroes, monsters);
+            } catch (NumberFormatException e) {
+                throw new InvalidCommandException("Использование: raid-bench [героев] [монстров]");
             }
         });
 
         commands.put("examine", (ctx, a) -> {
             Room current = ctx.getCurrent();
-            System.out.println(current.describe());
-
-            if (current.getName().equals("Сокровищница")) {
-                Room cave = ctx.getWorld().get("Пещера");
-                if (cave != null && !current.getNeighbors().containsValue(cave)) {
-                    System.out.println("🚪 Вы видите запертую дверь на юг. Нужен ключ.");
-                }
-            }
+            current.printDescription(ctx.getOut());
 
-            if (current.getName().equals("Пещера")) {
-                Room treasure = ctx.getWorld().get("Сокровищница");
-                if (treasure != null && !current.getNeighbors().containsValue(treasure)) {
-                    System.out.println("🚪 Вы видите запертую дверь на север. Нужен ключ.");
+            for (Door door : ctx.getDoors().lockedExits(current)) {
+                boolean hasKey = false;
+                for (Item item : ctx.getPlayer().getInventory()) {
+                    if (item instanceof Key key && key.opens(door)) hasKey = true;
                 }
+                ctx.getOut().println("🚪 Вы видите запертую дверь на " + door.directionFrom(current.getName())
+                        + (hasKey ? ". Подходящий ключ у вас есть." : ". Нужен ключ."));
             }
         });
 
         commands.put("save", (ctx, a) -> {
             if (a.isEmpty()) {
-                SaveLoad.displaySavedGames();
-                System.out.println("Для сохранения используйте: save <имя_сохранения>");
+                SaveLoad.displaySavedGames(storage, ctx.getOut(), savePrefix);
+                ctx.getOut().println("Для сохранения используйте: save <имя_сохранения> [-z]");
                 return;
             }
 
-            String saveName = String.join("_", a);
+            // -z: сжатое сохранение
+            List<String> nameParts = new ArrayList<>(a);
+            boolean compress = nameParts.remove("-z");
+            if (nameParts.isEmpty()) {
+                throw new InvalidCommandException("Укажите имя сохранения: save <имя_сохранения> [-z]");
+            }
+            String saveName = saveName(nameParts);
 
             try {
                 // Сохраняем игру
-                SaveLoad.saveGame(ctx, saveName);
-                System.out.println("✓ Игра успешно сохранена");
+                SaveLoad.saveGame(storage, ctx, saveName, compress);
+                ctx.getOut().println("✓ Игра успешно сохранена");
 
                 // Отдельно сохраняем счет (если ошибка - только предупреждение)
                 try {
-                    SaveLoad.saveScore(ctx.getPlayer().getName(), ctx.getScore());
-                    System.out.println("✓ Счет добавлен в таблицу лидеров");
+                    SaveLoad.saveScore(storage, ctx.getPlayer().getName(), ctx.getScore());
+                    ctx.getOut().println("✓ Счет добавлен в таблицу лидеров");
                 } catch (Exception e) {
-                    System.out.println("⚠ Счет не сохранен: " + e.getMessage());
+                    ctx.getOut().println("⚠ Счет не сохранен: " + e.getMessage());
                 }
 
             } catch (Exception e) {
-                System.out.println("❌ Ошибка при сохранении игры: " + e.getMessage());
+                ctx.getOut().println("❌ Ошибка при сохранении игры: " + e.getMessage());
             }
         });
 
         commands.put("load", (ctx, a) -> {
             if (a.isEmpty()) {
-                SaveLoad.displaySavedGames();
-                System.out.println("Для загрузки используйте: load <имя_сохранения>");
+                SaveLoad.displaySavedGames(storage, ctx.getOut(), savePrefix);
+                ctx.getOut().println("Для загрузки используйте: load <имя_сохранения>");
                 return;
             }
 
-            String saveName = String.join("_", a);
+            if (shared != null) {
+                throw new InvalidCommandException("В общем мире загрузка недоступна");
+            }
+
+            String saveName = saveName(a);
 
             try {
-                if (SaveLoad.loadGame(ctx, saveName)) {
-                    System.out.println("✓ Игра успешно загружена из: " + saveName);
-                    System.out.println("Текущее состояние:");
-                    System.out.println(ctx.getCurrent().describe());
+                if (SaveLoad.loadGame(storage, ctx, saveName)) {
+                    restoreHistory(ctx);
+                    ctx.getOut().println("✓ Игра успешно загружена из: " + String.join("_", a));
+                    analysis = WorldAnalyzer.analyze(ctx);
+                    analysis.printSummary(ctx.getOut());
+                    ctx.getOut().println("Текущее состояние:");
+                    ctx.getCurrent().printDescription(ctx.getOut());
                 } else {
-                    System.out.println("❌ Не удалось загрузить сохранение: " + saveName);
+                    ctx.getOut().println("❌ Не удалось загрузить сохранение: " + String.join("_", a));
                 }
             } catch (Exception e) {
-                System.out.println("❌ Ошибка при загрузке: " + e.getMessage());
+                ctx.getOut().println("❌ Ошибка при загрузке: " + e.getMessage());
             }
         });
 
-        commands.put("saves", (ctx, a) -> SaveLoad.displaySavedGames());
-        commands.put("scores", (ctx, a) -> SaveLoad.printScores());
+        commands.put("quicksave", (ctx, a) -> {
+            WorldHistory history = requireHistory(ctx);
+            String slot = a.isEmpty() ? "quick" : String.join("_", a);
+            history.quicksave(ctx, slot);
+            ctx.getOut().println("⚡ Быстрое сохранение: " + slot);
+        });
+
+        commands.put("quickload", (ctx, a) -> {
+            WorldHistory history = requireHistory(ctx);
+            String slot = a.isEmpty() ? "quick" : String.join("_", a);
+            itemIndex = null; // вернулись выпитые зелья
+            analysis = null;
+            if (!history.quickload(ctx, slot)) {
+                throw new InvalidCommandException("Нет быстрого сохранения '" + slot + "'. Слоты: " + history.slotNames());
+            }
+            ctx.getOut().println("⚡ Загружено быстрое сохранение: " + slot);
+            printDroppedSlots(ctx, history);
+            ctx.getCurrent().printDescription(ctx.getOut());
+        });
+
+        commands.put("undo", (ctx, a) -> {
+            WorldHistory history = requireHistory(ctx);
+            int n;
+            try {
+                n = a.isEmpty() ? 1 : Integer.parseInt(a.getFirst());
+            } catch (NumberFormatException e) {
+                throw new InvalidCommandException("Использование: undo [число_ходов]");
+            }
+            if (n < 1) throw new InvalidCommandException("Число ходов должно быть положительным");
+            itemIndex = null;
+            analysis = null;
+            int undone = history.undo(ctx, n);
+            if (undone == 0) {
+                throw new InvalidCommandException("Нечего отменять");
+            }
+            ctx.getOut().println("↶ Отменено ходов: " + undone + " (осталось в истории: " + history.turns() + ")");
+            printDroppedSlots(ctx, history);
+            ctx.getCurrent().printDescription(ctx.getOut());
+        });
+
+        commands.put("saves", (ctx, a) -> SaveLoad.displaySavedGames(storage, ctx.getOut(), savePrefix));
+        // store - состояние хранилища, store compact - убрать старые версии, store import - перенести файлы .save
+        commands.put("store", (ctx, a) -> {
+            String action = a.isEmpty() ? "" : a.getFirst();
+            switch (action) {
+                case "" -> SaveLoad.store().printStats(ctx.getOut());
+                case "compact" -> {
+                    requireOperator();
+                    try {
+                        ctx.getOut().println("Перенесено актуальных версий: " + SaveLoad.store().compact());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Уплотнение не удалось", e);
+                    }
+                    SaveLoad.store().printStats(ctx.getOut());
+                }
+                case "import" -> {
+                    requireOperator();
+                    SaveLoad.importLegacySaves(ctx.getOut());
+                }
+                default -> throw new InvalidCommandException("Использование: store [compact|import]");
+            }
+        });
+        // verify-saves - проверить все сохранения, verify-saves fix - починить ссылки, поврежденные в карантин
+        commands.put("verify-saves", (ctx, a) -> {
+            requireOperator();
+            String usage = "Использование: verify-saves [fix|bench [сохранений]]";
+            String action = a.isEmpty() ? "" : a.getFirst();
+            switch (action) {
+                case "", "fix" -> SaveCheck.run(ctx.getOut(), SaveLoad.saveDir(), SaveLoad.store(), !action.isEmpty());
+                case "bench" -> {
+                    try {
+                        int count = a.size() < 2 ? 100_000 : Integer.parseInt(a.get(1));
+                        if (count < 1) throw new NumberFormatException();
+                        SaveCheck.bench(ctx.getOut(), count);
+                    } catch (NumberFormatException e) {
+                        throw new InvalidCommandException(usage);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Не удалось подготовить сохранения", e);
+                    }
+                }
+                default -> throw new InvalidCommandException(usage);
+            }
+        });
+        commands.put("scores", (ctx, a) -> SaveLoad.printScores(storage, ctx.getOut()));
+        commands.put("scores-report", (ctx, a) -> {
+            SaveLoad.syncScores();
+            ScoreReport.print(ctx.getOut(), storage.scoresFile(), a.isEmpty() ? null : String.join(" ", a));
+        });
         commands.put("mystats", (ctx, a) -> {
             String playerName = ctx.getPlayer().getName();
+            SaveLoad.syncScores();
 
-            if (!Files.exists(SaveLoad.getScoresFile())) {
-                System.out.println("Нет данных о ваших результатах.");
+            if (!Files.exists(storage.scoresFile())) {
+                ctx.getOut().println("Нет данных о ваших результатах.");
                 return;
             }
 
-            try (BufferedReader r = Files.newBufferedReader(SaveLoad.getScoresFile())) {
+            try (BufferedReader r = Files.newBufferedReader(storage.scoresFile())) {
                 int bestScore = 0;
                 int totalGames = 0;
                 String firstGame = null;
@@ -343,15 +954,15 @@ public class Game {
                 }
 
                 if (totalGames > 0) {
-                    System.out.println("=== ВАША СТАТИСТИКА ===");
-                    System.out.println("Игрок: " + playerName);
-                    System.out.println("Лучший счет: " + bestScore);
-                    System.out.println("Всего игр: " + totalGames);
-                    System.out.println("Первая игра: " + (firstGame != null ? firstGame.substring(0, 10) : "неизвестно"));
-                    System.out.println("Последняя игра: " + (lastGame != null ? lastGame.substring(0, 10) : "неизвестно"));
-                    System.out.println("=====================");
+                    ctx.getOut().println("=== ВАША СТАТИСТИКА ===");
+                    ctx.getOut().println("Игрок: " + playerName);
+                    ctx.getOut().println("Лучший счет: " + bestScore);
+                    ctx.getOut().println("Всего игр: " + totalGames);
+                    ctx.getOut().println("Первая игра: " + (firstGame != null ? firstGame.substring(0, 10) : "неизвестно"));
+                    ctx.getOut().println("Последняя игра: " + (lastGame != null ? lastGame.substring(0, 10) : "неизвестно"));
+                    ctx.getOut().println("=====================");
                 } else {
-                    System.out.println("Нет данных о ваших играх.");
+                    ctx.getOut().println("Нет данных о ваших играх.");
                 }
 
             } catch (IOException e) {
@@ -363,58 +974,164 @@ public class Game {
             // сохраняем игру по желанию игрока. ниже аварийное сохранение на случай краша
             if (a.contains("save") || a.contains("сохранить")) {
                 try {
-                    SaveLoad.saveGame(ctx, "manual_exit");
-                    System.out.println("💾 Игра сохранена перед выходом");
+                    SaveLoad.saveGame(storage, ctx, savePrefix + "manual_exit", false);
+                    ctx.getOut().println("💾 Игра сохранена перед выходом");
                 } catch (Exception e) {
-                    System.out.println("⚠ Не удалось сохранить игру: " + e.getMessage());
+                    ctx.getOut().println("⚠ Не удалось сохранить игру: " + e.getMessage());
                 }
             }
-            System.out.println("👋 Пока!");
-            System.exit(0);
+            ctx.getOut().println("👋 Пока!");
+            ctx.finish();
         });
 
         commands.put("about", (ctx, a) -> {
-            System.out.println("╔══════════════════════════════════╗");
-            System.out.println("║           DUNGEON MINI           ║");
-            System.out.println("║        Текстовая RPG игра        ║");
-            System.out.println("╚══════════════════════════════════╝");
-            System.out.println();
-            System.out.println("📖 ОПИСАНИЕ:");
-            System.out.println("   Исследуйте волшебный мир, сражайтесь с монстрами,");
-            System.out.println("   собирайте предметы и находите выход!");
-            System.out.println();
-            System.out.println(" ОСНОВНЫЕ КОМАНДЫ:");
-            System.out.println("   look       - осмотреться в комнате");
-            System.out.println("   move       - переместиться (north/south/east/west)");
-            System.out.println("   take       - взять предмет");
-            System.out.println("   inventory  - показать инвентарь");
-            System.out.println("   use        - использовать предмет");
-            System.out.println("   fight      - сразиться с монстром");
-            System.out.println("   examine    - осмотреть дверь");
-            System.out.println("   save/load  - сохранить/загрузить игру");
-            System.out.println("   saves      - доступные сохранения");
-            System.out.println("   scores     - таблица лидеров");
-            System.out.println("   name       - имя текущего игрока");
-            System.out.println("   whoami     - информация об игроке");
-            System.out.println("   mystats    - статистика игрока");
-            System.out.println("   about      - об игре");
-            System.out.println("   gc-stats   - память");
-            System.out.println();
-            System.out.println("⚙️  ТЕХНИЧЕСКАЯ ИНФОРМАЦИЯ:");
-            System.out.println("   Разработка: Java Console Application");
-            System.out.println("   Архитектура: Модель-Команда-Состояние");
-            System.out.println("   Сохранение: Try-with-resources + NIO");
-            System.out.println("   Память: " + Runtime.getRuntime().maxMemory() / 1024 / 1024 + " MB доступно");
-            System.out.println();
-            System.out.println("📞 Для справки используйте 'help'");
-            System.out.println("🚪 Для выхода из игры используйте 'exit'");
+            ctx.getOut().println("╔══════════════════════════════════╗");
+            ctx.getOut().println("║           DUNGEON MINI           ║");
+            ctx.getOut().println("║        Текстовая RPG игра        ║");
+            ctx.getOut().println("╚══════════════════════════════════╝");
+            ctx.getOut().println();
+            ctx.getOut().println("📖 ОПИСАНИЕ:");
+            ctx.getOut().println("   Исследуйте волшебный мир, сражайтесь с монстрами,");
+            ctx.getOut().println("   собирайте предметы и находите выход!");
+            ctx.getOut().println();
+            ctx.getOut().println(" ОСНОВНЫЕ КОМАНДЫ:");
+            ctx.getOut().println("   look       - осмотреться в комнате");
+            ctx.getOut().println("   move       - переместиться (north/south/east/west)");
+            ctx.getOut().println("   take       - взять предмет");
+            ctx.getOut().println("   inventory  - показать инвентарь");
+            ctx.getOut().println("   use        - использовать предмет");
+            ctx.getOut().println("   fight      - сразиться с монстром");
+            ctx.getOut().println("   attack/run - ход боя или бегство");
+            ctx.getOut().println("   raid [героев] [монстров] - массовый бой на арене");
+            ctx.getOut().println("   examine    - осмотреть дверь");
+            ctx.getOut().println("   analyze/reachable <комната> - связность мира");
+            ctx.getOut().println("   save/load  - сохранить/загрузить игру");
+            ctx.getOut().println("   saves      - доступные сохранения");
+            ctx.getOut().println("   store [compact|import] - хранилище сохранений");
+            ctx.getOut().println("   verify-saves [fix|bench] - проверка всех сохранений, починка и карантин");
+            ctx.getOut().println("   mapped     - мир в файле вне кучи (create/open/flush/bench)");
+            ctx.getOut().println("   scores     - таблица лидеров");
+            ctx.getOut().println("   name       - имя текущего игрока");
+            ctx.getOut().println("   whoami     - информация об игроке");
+            ctx.getOut().println("   mystats    - статистика игрока");
+            ctx.getOut().println("   about      - об игре");
+            ctx.getOut().println("   macro      - макросы; несколько команд в строке через ';'");
+            ctx.getOut().println("   gc-stats   - память");
+            ctx.getOut().println("   fuzzy-bench [n] - поиск с опечатками по каталогу из n имен");
+            ctx.getOut().println("   describe-bench [комнат] [описаний] - описания комнат из кэша и со сборкой");
+            ctx.getOut().println("   overlay-bench [сессий] [комнат] - память сессий над общим шаблоном мира и с копиями");
+            ctx.getOut().println("   raid-bench [героев] [монстров] - раунды рейда: объекты против массивов и Vector API");
+            ctx.getOut().println("   quests [all] - квесты и достижения");
+            ctx.getOut().println("   quest-bench [правил] [событий] - сеть квестов против проверки всех правил");
+            ctx.getOut().println("   say <текст> - сказать всем в комнате (общий мир)");
+            ctx.getOut().println("   chat-bench [подписчиков] [сообщений] - каналы комнат и политики очередей");
+            ctx.getOut().println("   sessions   - спящие и активные сессии сервера");
+            ctx.getOut().println("   monitor    - счетчики JMX (com.example.dungeon:type=Dungeon, видны в JConsole)");
+            ctx.getOut().println("   alloc-stats/heap-report - кто выделяет память и из чего состоит мир");
+            ctx.getOut().println();
+            ctx.getOut().println("⚙️  ТЕХНИЧЕСКАЯ ИНФОРМАЦИЯ:");
+            ctx.getOut().println("   Разработка: Java Console Application");
+            ctx.getOut().println("   Архитектура: Модель-Команда-Состояние");
+            ctx.getOut().println("   Сохранение: Try-with-resources + NIO");
+            ctx.getOut().println("   Память: " + Runtime.getRuntime().maxMemory() / 1024 / 1024 + " MB доступно");
+            ctx.getOut().println();
+            ctx.getOut().println("📞 Для справки используйте 'help'");
+            ctx.getOut().println("🚪 Для выхода из игры используйте 'exit'");
         });
     }
 
+    private static void printRound(GameState ctx, Combat combat) {
+        Player player = ctx.getPlayer();
+        Monster monster = combat.getMonster();
+        ctx.getOut().println("\n--- Ход боя " + combat.nextRound() + " ---");
+        ctx.getOut().println(player.getName() + ": HP=" + player.getHp() + ", Атака=" + player.getAttack());
+        ctx.getOut().println(monster.getName() + ": HP=" + monster.getHp() + ", Уровень=" + monster.getLevel());
+        ctx.getOut().println("Введите 'attack' для атаки или 'run' для бегства");
+    }
+
+    // бой проверяется при каждом ходе: после load/undo или чужой победы он мог потерять смысл
+    private static Combat requireCombat(GameState ctx) {
+        Combat combat = ctx.getCombat();
+        if (combat == null) {
+            throw new InvalidCommandException("Вы не в бою. Начать бой: fight");
+        }
+        if (combat.getRoom() != ctx.getCurrent() || combat.getRoom().getMonster() != combat.getMonster()) {
+            ctx.setCombat(null);
+            throw new InvalidCommandException("Бой прерван: противника здесь больше нет");
+        }
+        return combat;
+    }
+
+    // имя сохранения в пространстве имен сессии; разделители пути не пропускаем, чтобы имя
+    // не вело к старым файлам вне него
+    private String saveName(List<String> parts) {
+        String name = String.join("_", parts);
+        if (name.contains("/") || name.contains("\\") || name.contains("..")) {
+            throw new InvalidCommandException("Недопустимое имя сохранения: " + name);
+        }
+        return savePrefix + name;
+    }
+
+    // история линейная: откат назад стирает быстрые сохранения, сделанные позже точки отката
+    private static void printDroppedSlots(GameState ctx, WorldHistory history) {
+        if (!history.droppedSlots().isEmpty()) {
+            ctx.getOut().println("⚠ Более поздние быстрые сохранения удалены: " + String.join(", ", history.droppedSlots()));
+        }
+    }
+
+    private void requireOperator() {
+        if (!operator) {
+            throw new InvalidCommandException("Команда оператора: по сети недоступна");
+        }
+    }
+
+    private void requirePrivateWorld() {
+        if (shared != null) {
+            throw new InvalidCommandException("В общем мире недоступно");
+        }
+    }
+
+    // история undo хранит копии комнат в куче, для мира в файле она выключается
+    private static void attachMapped(GameState ctx, MappedWorld world) {
+        ctx.disableHistory();
+        ctx.setCombat(null);
+        ctx.setWorld(world);
+        ctx.setDoors(world.doors());
+        world.restore(ctx);
+    }
+
+    // после mapped-мира обычный мир снова получает undo
+    private void restoreHistory(GameState ctx) {
+        if (shared == null && ctx.getHistory() == null) ctx.enableHistory(UNDO_TURNS);
+    }
+
+    private static void requireHeapWorld(GameState ctx) {
+        if (ctx.getWorld() instanceof MappedWorld) {
+            throw new InvalidCommandException("Анализ мира в файле недоступен: он обошел бы все комнаты");
+        }
+    }
+
+    private static WorldHistory requireHistory(GameState ctx) {
+        WorldHistory history = ctx.getHistory();
+        if (history == null) {
+            throw new InvalidCommandException("Быстрые сохранения и отмена ходов недоступны в общем мире и в mapped-мире");
+        }
+        return history;
+    }
+
     private void bootstrapWorld() {
         Player hero = new Player("Герой", 20, 5);
         state.setPlayer(hero);
 
+        OverlayWorld world = new OverlayWorld(STANDARD);
+        state.setWorld(world);
+        state.setDoors(STANDARD.doors());
+
+        state.setCurrent(world.get(START_ROOM));
+    }
+
+    // стандартный мир; используется и одиночной игрой, и общим миром
+    static Map<String, Room> createWorld() {
         Room square = new Room("Площадь", "Каменная площадь с фонтаном.");
         Room forest = new Room("Лес", "Шелест листвы и птичий щебет.");
         Room cave = new Room("Пещера", "Темно и сыро.");
@@ -425,10 +1142,10 @@ public class Game {
         forest.getNeighbors().put("east", cave);
         cave.getNeighbors().put("west", forest);
         cave.getNeighbors().put("north", treasure); // новое + ключ нужен
-        //treasure.getNeighbors().put("south", cave);// выход из сокровищницы
+        // выход из сокровищницы закрыт дверью, см. createDoors
 
         forest.getItems().add(new Potion("Малое зелье", 5));
-        forest.getItems().add(new Key("Золотой ключ")); // NEW
+        forest.getItems().add(new Key("Золотой ключ", TREASURY_LOCK)); // NEW
         forest.setMonster(new Monster("Волк", 1, 8));
 
         cave.getItems().add(new Weapon("Ржавый меч", 2));
@@ -440,63 +1157,244 @@ public class Game {
         world.put("Лес", forest);
         world.put("Пещера", cave);
         world.put("Сокровищница", treasure);
-        state.setWorld(world);
+        return world;
+    }
 
-        state.setCurrent(square);
+    // двери стандартного мира: дверь сокровищницы захлопнулась, изнутри нужен ключ
+    static DoorGraph createDoors() {
+        return new DoorGraph(List.of(new Door(TREASURY_LOCK, "Пещера", "north", "Сокровищница", "south")));
     }
 
     public void run() {
-        System.out.println("=== DUNGEON MINI GAME ===");
+        // вывод сбрасывается один раз перед чтением следующей строки, а не на каждый println
+        PrintStream out = new PrintStream(new FileOutputStream(FileDescriptor.out), false, System.out.charset());
+        state.setOut(out);
+        out.println("=== DUNGEON MINI GAME ===");
+        long session = GameMonitor.get().attach(this);
 
         try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in))) {
 
             // Запрос имени
-            System.out.print("Введите имя вашего героя (или нажмите Enter для случайного): ");
+            out.print("Введите имя вашего героя (или нажмите Enter для случайного): ");
+            out.flush();
             String playerName = in.readLine().trim();
 
             if (playerName.isEmpty()) {
                 playerName = generateRandomName();
-                System.out.println("Сгенерировано случайное имя: " + playerName);
+                out.println("Сгенерировано случайное имя: " + playerName);
             } else if (playerName.length() > 20) {
                 playerName = playerName.substring(0, 20);
-                System.out.println("Имя урезано до: " + playerName);
+                out.println("Имя урезано до: " + playerName);
             }
 
             state.getPlayer().setName(playerName);
-            System.out.println("Добро пожаловать, " + playerName + "!");
-            System.out.println("'help' — список команд");
-            System.out.println("======================");
+            out.println("Добро пожаловать, " + playerName + "!");
+            out.println("'help' — список команд");
+            out.println("======================");
 
-            while (true) {
-                System.out.print("> ");
+            while (!state.isFinished()) {
+                out.print("> ");
+                out.flush();
                 String line = in.readLine();
                 if (line == null) break;
-                line = line.trim();
-                if (line.isEmpty()) continue;
-                List<String> parts = Arrays.asList(line.split("\s+"));
-                String cmd = parts.getFirst().toLowerCase(Locale.ROOT);
-                List<String> args = parts.subList(1, parts.size());
-                Command c = commands.get(cmd);
-                try {
-                    if (c == null) throw new InvalidCommandException("Неизвестная команда: " + cmd);
-                    c.execute(state, args);
-                    state.addScore(1);
-                } catch (InvalidCommandException e) {
-                    System.out.println("Ошибка: " + e.getMessage());
-                } catch (Exception e) {
-                    System.out.println("Непредвиденная ошибка: " + e.getClass().getSimpleName() + ": " + e.getMessage());
-                }
+                execute(line);
             }
 
         } catch (IOException e) {
-            System.out.println("Ошибка ввода/вывода: " + e.getMessage());
+            out.println("Ошибка ввода/вывода: " + e.getMessage());
         } finally {// аварийное сохранение
+            GameMonitor.get().detach(session);
+            if (state.isFinished()) return; // обычный выход или смерть героя
             try {
-                SaveLoad.saveGame(state, "crash_recovery");
-                System.out.println("⚠ Создано аварийное сохранение");
+                SaveLoad.saveGame(storage, state, savePrefix + "crash_recovery", false);
+                out.println("⚠ Создано аварийное сохранение");
             } catch (Exception e) {
-                System.out.println("❌ Не удалось создать аварийное сохранение");
+                out.println("❌ Не удалось создать аварийное сохранение");
             }
+            out.flush();
+        }
+    }
+
+    // одна строка ввода: команды через ';' и макросы выполняются пачкой, счет начисляется
+    // один раз за пачку. ошибка останавливает остаток строки. через этот метод играют
+    // и консоль, и боты, и сетевые клиенты
+    public void execute(String line) {
+        lock.lock();
+        try {
+            executeLine(line);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void executeLine(String line) {
+        List<String> batch = new ArrayList<>();
+        int done = 0;
+        try {
+            expand(line, batch, 0, new int[1]);
+            trackRoom();
+            for (String command : batch) {
+                if (state.isFinished()) break;
+                dispatch(command);
+                done++;
+                trackRoom();
+            }
+        } catch (InvalidCommandException e) {
+            state.getOut().println("Ошибка: " + e.getMessage());
+            if (done + 1 < batch.size()) {
+                state.getOut().println("Пропущено команд: " + (batch.size() - done - 1));
+            }
+        } catch (Exception e) {
+            state.getOut().println("Непредвиденная ошибка: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+        if (done > 0) state.addScore(done);
+    }
+
+    // комната сменилась любым путем (move, load, undo, generate) - событие visit.
+    // новый мир пересчитывается до команды: после нее часть монстров уже может быть убита
+    private void trackRoom() {
+        Map<String, Room> world = state.getWorld();
+        if (world != totalsWorld) {
+            totalsWorld = world;
+            totals = countTotals(world);
+        }
+        Room current = state.getCurrent();
+        // комнату могли сменить и не через move
+        if (inbox != null && inbox.room() != current) shared.channels().enter(inbox, current);
+        if (current == null || current.getName().equals(visited)) return;
+        visited = current.getName();
+        quest(state, "visit", visited, 1);
+    }
+
+    private void quest(GameState ctx, String event, String key, int amount) {
+        for (QuestBook.Rule rule : quests.emit(event, key, amount, this::questTotal)) {
+            ctx.addReward(rule.reward());
+            ctx.getOut().println("🏆 Достижение: " + rule.title() + " (+" + rule.reward() + " очков)");
+        }
+    }
+
+    // пороги all: комнаты, двери, монстры, предметы мира, каким он был при входе в него.
+    // мир в файле не обходится целиком: в нем известны только комнаты и двери
+    private int[] countTotals(Map<String, Room> world) {
+        int monsters = 0;
+        int items = 0;
+        if (!(world instanceof MappedWorld)) {
+            for (Room room : world.values()) {
+                if (room.getMonster() != null) monsters++;
+                items += room.getItems().size();
+            }
+        }
+        return new int[]{world.size(), state.getDoors().size(), monsters, items};
+    }
+
+    private int questTotal(String event) {
+        if (totals == null) return 0;
+        return switch (event) {
+            case "visit" -> totals[0];
+            case "open" -> totals[1];
+            case "kill" -> totals[2];
+            case "take" -> totals[3];
+            default -> 0;
+        };
+    }
+
+    // режет строку на команды и раскрывает макросы; macro забирает остаток строки целиком.
+    // steps[0] - команд и раскрытий макросов в строке: пустые макросы тоже стоят работы
+    private void expand(String line, List<String> batch, int depth, int[] steps) {
+        if (depth > MACRO_DEPTH) {
+            throw new InvalidCommandException("Слишком глубокая вложенность макросов");
+        }
+        String[] parts = line.split(";");
+        for (int i = 0; i < parts.length; i++) {
+            String command = parts[i].trim();
+            if (command.isEmpty()) continue;
+            if (++steps[0] > MAX_LINE_COMMANDS) {
+                batch.clear(); // строка не выполняется вовсе
+                throw new InvalidCommandException("Строка раскрывается больше чем в " + MAX_LINE_COMMANDS + " команд");
+            }
+            String word = command.split("\\s+", 2)[0].toLowerCase(Locale.ROOT);
+            if ("macro".equals(word)) {
+                batch.add(String.join(";", Arrays.asList(parts).subList(i, parts.length)).trim());
+                return;
+            }
+            String body = commands.containsKey(word) ? null : macros.get(word);
+            if (body != null) {
+                expand(body, batch, depth + 1, steps);
+            } else {
+                batch.add(command);
+            }
+        }
+    }
+
+    // команду не исправляем молча: опечатка в exit или load слишком дорого обходится
+    private String suggestCommand(String cmd) {
+        if (commandIndex == null) {
+            commandIndex = new FuzzyIndex();
+            commands.keySet().forEach(commandIndex::add);
+            macros.keySet().forEach(commandIndex::add);
+        }
+        List<FuzzyIndex.Match> found = commandIndex.search(cmd, FuzzyIndex.tolerance(cmd));
+        if (found.isEmpty()) return "";
+        return ". Возможно, вы имели в виду: " + found.stream()
+                .limit(3).map(FuzzyIndex.Match::name).collect(Collectors.joining(", "));
+    }
+
+    private static Optional<Item> findItem(List<Item> items, String name) {
+        return items.stream().filter(item -> item.getName().equalsIgnoreCase(name)).findFirst();
+    }
+
+    // ближайшее к опечатке имя из тех, что есть в items: единственный ближайший вариант
+    // исправляется сам, при нескольких равных - ошибка со списком
+    private String correctItem(GameState ctx, String query, List<Item> items, String where) {
+        Set<String> present = new HashSet<>();
+        for (Item i : items) present.add(i.getName().toLowerCase(Locale.ROOT));
+        List<FuzzyIndex.Match> found = itemIndex(ctx).search(query, FuzzyIndex.tolerance(query)).stream()
+                .filter(m -> present.contains(m.name().toLowerCase(Locale.ROOT)))
+                .toList();
+        if (found.isEmpty()) {
+            throw new InvalidCommandException("Предмет '" + query + "' не найден " + where);
+        }
+        int best = found.getFirst().distance();
+        List<String> closest = found.stream().filter(m -> m.distance() == best).map(FuzzyIndex.Match::name).toList();
+        if (closest.size() > 1) {
+            throw new InvalidCommandException("Предмет '" + query + "' не найден " + where
+                    + ". Возможно, вы имели в виду: " + String.join(", ", closest));
+        }
+        ctx.getOut().println("(исправлено: " + closest.getFirst() + ")");
+        return closest.getFirst();
+    }
+
+    // каталог строится заново, только если сменился мир (generate, load, mapped) или откатился ход;
+    // взятый предмет лишь переходит из комнаты в инвентарь, имена в каталоге те же.
+    // мир в файле не обходится целиком: там каталог - текущая комната и инвентарь
+    private FuzzyIndex itemIndex(GameState ctx) {
+        Map<String, Room> world = ctx.getWorld();
+        if (itemIndex != null && itemIndexWorld == world) return itemIndex;
+        FuzzyIndex index = new FuzzyIndex();
+        boolean mapped = world instanceof MappedWorld;
+        for (Room room : mapped ? List.of(ctx.getCurrent()) : world.values()) {
+            for (Item i : room.getItems()) index.add(i.getName());
+        }
+        ctx.getPlayer().getInventory().forEach(i -> index.add(i.getName()));
+        if (mapped) return index;
+        itemIndex = index;
+        itemIndexWorld = world;
+        return index;
+    }
+
+    private void dispatch(String command) {
+        List<String> parts = Arrays.asList(command.split("\\s+"));
+        String cmd = parts.getFirst().toLowerCase(Locale.ROOT);
+        List<String> args = parts.subList(1, parts.size());
+        Command c = commands.get(cmd);
+        if (c == null) throw new InvalidCommandException("Неизвестная команда: " + cmd + suggestCommand(cmd));
+        long allocated = CommandProfile.allocated();
+        long started = System.nanoTime();
+        try {
+            if (!HISTORY_COMMANDS.contains(cmd)) state.checkpoint();
+            c.execute(state, args);
+        } finally {
+            CommandProfile.record(cmd, allocated, System.nanoTime() - started);
         }
     }
 }
@@ -0,0 +1,73 @@
+package com.example.dungeon.core;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// клиент сервера игры: ответ на строку читается до приглашения "> ".
+// строки можно слать пачкой и потом читать ответы по порядку
+final class GameClient implements Closeable {
+    private static final byte[] ERROR = "Ошибка".getBytes(StandardCharsets.UTF_8);
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final byte[] tail = new byte[64];
+
+    GameClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new BufferedInputStream(socket.getInputStream());
+        out = new BufferedOutputStream(socket.getOutputStream());
+        readResponse(); // приветствие
+    }
+
+    // одна строка - один обмен; true - игра ответила ошибкой
+    boolean send(String line) throws IOException {
+        write(line);
+        flush();
+        return readResponse();
+    }
+
+    // без отправки: строка уйдет со следующим flush
+    void write(String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    boolean readResponse() throws IOException {
+        int len = 0;
+        boolean error = false;
+        boolean lineStart = true;
+        int b;
+        while ((b = in.read()) != -1) {
+            if (len == tail.length) {
+                System.arraycopy(tail, 1, tail, 0, len - 1);
+                len--;
+            }
+            tail[len++] = (byte) b;
+            if (lineStart && b == (ERROR[0] & 0xff)) error |= startsError();
+            lineStart = b == '\n';
+            if (len >= 2 && tail[len - 2] == '>' && tail[len - 1] == ' '
+                    && (len == 2 || tail[len - 3] == '\n')) {
+                return error;
+            }
+        }
+        throw new EOFException("Сервер закрыл соединение");
+    }
+
+    private boolean startsError() throws IOException {
+        in.mark(ERROR.length);
+        byte[] rest = in.readNBytes(ERROR.length - 1);
+        in.reset();
+        return Arrays.equals(rest, 0, rest.length, ERROR, 1, ERROR.length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,381 @@
+package com.example.dungeon.core;
+
+import com.example.dungeon.model.*;
+
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// счетчики и сессии процесса для JMX (см. DungeonMXBean). регистрируется при первом get():
+// консольная игра и сервер. сессии консоли и общего мира подключаются сюда сами,
+// отдельные миры сервера живут в SessionRegistry и берутся оттуда.
+// дорогие атрибуты (обход миров, разбор scores.csv) кэшируются: JConsole опрашивает каждые 4 с
+final class GameMonitor implements DungeonMXBean {
+    static final String NAME = "com.example.dungeon:type=Dungeon";
+    private static final long WORLD_CACHE_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final AtomicLong IDS = new AtomicLong();
+
+    // сохранения и загрузки считаются всегда, даже без зарегистрированного MBean
+    static final Timing SAVES = new Timing();
+    static final Timing LOADS = new Timing();
+
+    private static GameMonitor instance;
+
+    static final class Timing {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long spent) {
+            count.increment();
+            nanos.add(spent);
+            max.accumulate(spent);
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        double averageMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : nanos.sum() / 1e6 / n;
+        }
+
+        double maxMillis() {
+            return max.get() / 1e6;
+        }
+    }
+
+    private final Map<Long, Game> attached = new ConcurrentHashMap<>();
+
+    private long rateAt = System.nanoTime();
+    private long rateCommands;
+    private double rate;
+
+    private long[] worldCounts; // комнаты, монстры, предметы
+    private long worldCountsAt;
+    // шаблон не меняется: его монстры и предметы считаются один раз
+    private final Map<WorldTemplate, long[]> templateCounts = new WeakHashMap<>();
+
+    private int boardSize;
+    private long boardFileSize = -1;
+    private long boardModified = -1;
+
+    private GameMonitor() {
+    }
+
+    static synchronized GameMonitor get() {
+        if (instance == null) {
+            instance = new GameMonitor();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(NAME));
+            } catch (JMException e) {
+                System.err.println("JMX недоступен: " + e.getMessage());
+            }
+        }
+        return instance;
+    }
+
+    static long nextSessionId() {
+        return IDS.incrementAndGet();
+    }
+
+    long attach(Game game) {
+        long id = nextSessionId();
+        attached.put(id, game);
+        return id;
+    }
+
+    void detach(long id) {
+        attached.remove(id);
+    }
+
+    private Map<Long, Game> games() {
+        Map<Long, Game> games = new TreeMap<>(attached);
+        SessionRegistry registry = SessionRegistry.active();
+        if (registry != null) games.putAll(registry.awake());
+        return games;
+    }
+
+    @Override
+    public int getSessionCount() {
+        return games().size() + getHibernatedSessionCount();
+    }
+
+    @Override
+    public int getHibernatedSessionCount() {
+        SessionRegistry registry = SessionRegistry.active();
+        return registry == null ? 0 : registry.asleepCount();
+    }
+
+    @Override
+    public long getRoomCount() {
+        return worldCounts()[0];
+    }
+
+    @Override
+    public long getMonsterCount() {
+        return worldCounts()[1];
+    }
+
+    @Override
+    public long getItemCount() {
+        return worldCounts()[2];
+    }
+
+    // общий мир у многих сессий - один объект, считается один раз; мир в файле - только комнаты.
+    // мир читается под замком сессии; занятые командой сессии пропускаются, и такой итог не кэшируется
+    private synchronized long[] worldCounts() {
+        long now = System.nanoTime();
+        if (worldCounts != null && now - worldCountsAt < WORLD_CACHE_NANOS) return worldCounts;
+        Set<Map<String, Room>> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        long[] counts = new long[3];
+        int busy = 0;
+        for (Game game : games().values()) {
+            Boolean counted = game.tryLocked(() -> {
+                Map<String, Room> world = game.getState().getWorld();
+                if (seen.add(world)) addCounts(world, counts);
+                return true;
+            });
+            if (counted == null) busy++;
+        }
+        if (busy == 0) {
+            worldCounts = counts;
+            worldCountsAt = now;
+        }
+        return counts;
+    }
+
+    // мир над шаблоном: счет шаблона плюс разница в комнатах, где сессия завела свою копию
+    private void addCounts(Map<String, Room> world, long[] counts) {
+        counts[0] += world.size();
+        if (world instanceof MappedWorld) return;
+        if (world instanceof OverlayWorld overlay) {
+            long[] base = templateCounts.computeIfAbsent(overlay.template(), t -> {
+                long[] c = new long[3];
+                for (Room room : t.rooms().values()) count(room, c);
+                return c;
+            });
+            counts[1] += base[1];
+            counts[2] += base[2];
+            Map<String, Room> rooms = overlay.template().rooms();
+            for (Room room : overlay.views()) {
+                OverlayRoom view = (OverlayRoom) room;
+                Room original = rooms.get(view.getName());
+                if (view.ownsMonster()) {
+                    counts[1] += (view.getMonster() != null ? 1 : 0) - (original.getMonster() != null ? 1 : 0);
+                }
+                if (view.ownsItems()) counts[2] += view.getItems().size() - original.getItems().size();
+            }
+            return;
+        }
+        for (Room room : world.values()) count(room, counts);
+    }
+
+    private static void count(Room room, long[] counts) {
+        if (room.getMonster() != null) counts[1]++;
+        counts[2] += room.getItems().size();
+    }
+
+    @Override
+    public long getCommandCount() {
+        return CommandProfile.totalCalls();
+    }
+
+    @Override
+    public synchronized double getCommandsPerSecond() {
+        long now = System.nanoTime();
+        if (now - rateAt >= RATE_WINDOW_NANOS) {
+            long commands = CommandProfile.totalCalls();
+            rate = Math.max(0, commands - rateCommands) * 1e9 / (now - rateAt);
+            rateCommands = commands;
+            rateAt = now;
+        }
+        return rate;
+    }
+
+    @Override
+    public long getSaveCount() {
+        return SAVES.count();
+    }
+
+    @Override
+    public long getLoadCount() {
+        return LOADS.count();
+    }
+
+    @Override
+    public double getAverageSaveMillis() {
+        return SAVES.averageMillis();
+    }
+
+    @Override
+    public double getMaxSaveMillis() {
+        return SAVES.maxMillis();
+    }
+
+    @Override
+    public double getAverageLoadMillis() {
+        return LOADS.averageMillis();
+    }
+
+    @Override
+    public double getMaxLoadMillis() {
+        return LOADS.maxMillis();
+    }
+
+    // игроков в таблице лидеров; файл разбирается заново, только если изменился
+    @Override
+    public synchronized int getLeaderboardSize() {
+        Path file = SaveLoad.getScoresFile();
+        try {
+            if (!Files.exists(file)) return 0;
+            long size = Files.size(file);
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            if (size != boardFileSize || modified != boardModified) {
+                boardSize = ScoreReport.build(file).players.size();
+                boardFileSize = size;
+                boardModified = modified;
+            }
+            return boardSize;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public long getPendingScores() {
+        return ScoreAppender.pendingIfStarted();
+    }
+
+    @Override
+    public String[] getSessions() {
+        List<String> rows = new ArrayList<>();
+        for (Map.Entry<Long, Game> e : games().entrySet()) {
+            String row = e.getValue().tryLocked(() -> {
+                GameState s = e.getValue().getState();
+                Room room = s.getCurrent();
+                return e.getKey() + ": " + s.getPlayer().getName() + ", " + (room == null ? "-" : room.getName())
+                        + ", счет " + s.getScore() + (s.getCombat() != null ? ", в бою" : "");
+            });
+            rows.add(row != null ? row : e.getKey() + ": выполняет команду");
+        }
+        SessionRegistry registry = SessionRegistry.active();
+        if (registry != null && registry.asleepCount() > 0) rows.add("спят на диске: " + registry.asleepCount());
+        return rows.toArray(new String[0]);
+    }
+
+    @Override
+    public String saveAllSessions() {
+        int saved = 0;
+        int failed = 0;
+        long bytes = 0;
+        for (Map.Entry<Long, Game> e : games().entrySet()) {
+            String name = "auto-" + e.getKey();
+            GameState state = e.getValue().getState();
+            try {
+                bytes += e.getValue().locked(() -> {
+                    try {
+                        return SaveLoad.saveQuietly(state, name);
+                    } catch (IOException ex) {
+                        throw new java.io.UncheckedIOException(ex);
+                    }
+                });
+                saved++;
+            } catch (RuntimeException ex) {
+                failed++;
+                System.err.println("Не удалось сохранить сессию " + e.getKey() + ": " + ex.getMessage());
+            }
+        }
+        return "Сохранено сессий: " + saved + " (" + bytes / 1024 + " КБ), спят на диске: "
+                + getHibernatedSessionCount() + ", ошибок: " + failed;
+    }
+
+    @Override
+    public long flushScores() {
+        long pending = ScoreAppender.pendingIfStarted();
+        SaveLoad.syncScores();
+        return pending;
+    }
+
+    @Override
+    public int evictIdleSessions(int idleSeconds) {
+        SessionRegistry registry = SessionRegistry.active();
+        if (registry == null) {
+            throw new IllegalStateException("Усыпление есть только на сервере с отдельными мирами (server --private)");
+        }
+        return registry.evictIdle(TimeUnit.SECONDS.toMillis(Math.max(0, idleSeconds)));
+    }
+
+    @Override
+    public String dumpSession(long id) {
+        Game game = games().get(id);
+        if (game == null) {
+            SessionRegistry registry = SessionRegistry.active();
+            return registry != null && registry.isAsleep(id) ? "Сессия " + id + " спит на диске" : "Нет сессии " + id;
+        }
+        return game.locked(() -> describe(id, game));
+    }
+
+    private static String describe(long id, Game game) {
+        GameState s = game.getState();
+        Player p = s.getPlayer();
+        Room room = s.getCurrent();
+        Map<String, Room> world = s.getWorld();
+        StringBuilder sb = new StringBuilder();
+        sb.append("Сессия ").append(id).append(": ").append(p.getName())
+                .append(", HP ").append(p.getHp()).append(", атака ").append(p.getAttack())
+                .append(", счет ").append(s.getScore()).append(s.isFinished() ? " (завершена)" : "").append('\n');
+        sb.append("Комната: ").append(room == null ? "-" : room.getName())
+                .append(" (мир: ").append(world.size()).append(" комнат, ").append(world.getClass().getSimpleName())
+                .append(", дверей ").append(s.getDoors().size()).append(")\n");
+        sb.append("Инвентарь: ").append(p.getInventory().isEmpty() ? "пуст"
+                : String.join(", ", p.getInventory().stream().map(Item::getName).toList())).append('\n');
+        Combat combat = s.getCombat();
+        sb.append("Бой: ").append(combat == null ? "нет"
+                : combat.getMonster().getName() + " (HP " + combat.getMonster().getHp() + ")").append('\n');
+        WorldHistory history = s.getHistory();
+        sb.append("История: ").append(history == null ? "выключена"
+                : history.turns() + " ходов, слоты " + history.slotNames()).append('\n');
+        sb.append("Макросы: ").append(game.getMacros().keySet());
+        return sb.toString();
+    }
+
+    // то же, что видит JMX-клиент: атрибуты читаются через MBeanServer
+    static void print(PrintStream out) {
+        get();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(NAME);
+            out.println("=== JMX: " + NAME + " (jconsole " + ProcessHandle.current().pid() + ") ===");
+            MBeanAttributeInfo[] attributes = server.getMBeanInfo(name).getAttributes();
+            Arrays.sort(attributes, Comparator.comparing(MBeanAttributeInfo::getName));
+            for (MBeanAttributeInfo a : attributes) {
+                Object v = server.getAttribute(name, a.getName());
+                if (v instanceof String[] rows) {
+                    out.println(a.getName() + ":");
+                    for (String row : rows) out.println("  " + row);
+                } else if (v instanceof Double d) {
+                    out.printf("%s: %.2f%n", a.getName(), d);
+                } else {
+                    out.println(a.getName() + ": " + v);
+                }
+            }
+        } catch (JMException e) {
+            out.println("JMX недоступен: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.dungeon.core;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// сетевой режим: одна строка - одна команда, ответ заканчивается приглашением "> ".
+// на каждое соединение виртуальный поток; по умолчанию все игроки в общем мире.
+// отдельные миры молчащих игроков усыпляются на диск (SessionRegistry); в общем мире
+// у сессии только игрок, а мир общий - там усыплять нечего.
+// бенчмарки и обслуживание сохранений клиентам недоступны, рейд и генерация ограничены;
+// -Ddungeon.server.admin=true снимает это для подключений с того же хоста (loopback).
+// сохранения клиента живут в его пространстве имен на время соединения: чужие он не видит
+// и не перезаписывает. строка длиннее MAX_LINE закрывает соединение
+public final class GameServer {
+    public static final int DEFAULT_PORT = 4040;
+    static final String PROMPT = "> ";
+    static final int MAX_LINE = 8 * 1024; // символов в одной команде
+    private static final String ADMIN_PROPERTY = "dungeon.server.admin";
+
+    private final int port;
+    private final SharedWorld world; // null - у каждого клиента свой мир
+    private final SessionRegistry registry; // только для отдельных миров
+
+    public GameServer(int port, boolean sharedWorld) {
+        this.port = port;
+        this.world = sharedWorld ? SharedWorld.standard() : null;
+        this.registry = sharedWorld ? null : new SessionRegistry();
+    }
+
+    public void run() throws IOException {
+        GameMonitor.get();
+        if (registry != null) registry.start();
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.out.println("Сервер слушает порт " + port + (world != null ? " (общий мир)" : " (отдельные миры)"));
+            accept(server);
+        }
+    }
+
+    // принимает соединения, пока сокет не закроют
+    void accept(ServerSocket server) {
+        try (ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (!server.isClosed()) {
+                Socket socket = server.accept();
+                sessions.submit(() -> serve(socket));
+            }
+        } catch (IOException e) {
+            // сокет сервера закрыт
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintStream out = new PrintStream(new BufferedOutputStream(socket.getOutputStream()), false, StandardCharsets.UTF_8)) {
+            socket.setTcpNoDelay(true);
+            String name = Game.generateRandomName();
+            boolean operator = Boolean.getBoolean(ADMIN_PROPERTY) && socket.getInetAddress().isLoopbackAddress();
+            String savePrefix = operator ? "" : "net-" + HexFormat.of().toHexDigits(ThreadLocalRandom.current().nextLong()) + "-";
+            out.println("=== DUNGEON MINI SERVER ===");
+            out.println("Вы: " + name + ". 'help' — список команд");
+            out.print(PROMPT);
+            out.flush();
+            if (registry != null) {
+                servePrivate(in, out, name, operator, savePrefix);
+                return;
+            }
+
+            Game game = world.join(name);
+            game.getState().getPlayer().setName(name);
+            game.getState().setOut(out);
+            game.setOperator(operator);
+            game.setSavePrefix(savePrefix);
+            long id = GameMonitor.get().attach(game);
+            RoomChannels.Inbox inbox = game.openInbox();
+            Thread.ofVirtual().name("chat-" + id).start(() -> deliver(game, inbox, out));
+            try {
+                String line;
+                while (!game.getState().isFinished() && (line = nextLine(in, out)) != null) {
+                    game.execute(line);
+                    out.print(PROMPT);
+                    // клиент прислал строки подряд, не дожидаясь ответов: отвечаем на все одним пакетом
+                    if (!in.ready()) out.flush();
+                }
+            } finally {
+                game.closeInbox();
+                GameMonitor.get().detach(id);
+            }
+        } catch (IOException e) {
+            // клиент отключился
+        }
+    }
+
+    // сообщения комнаты уходят клиенту сразу, не дожидаясь его команды; между командами сессии
+    private static void deliver(Game game, RoomChannels.Inbox inbox, PrintStream out) {
+        try {
+            String message;
+            while ((message = inbox.take()) != null) {
+                String line = message;
+                game.locked(() -> {
+                    out.println(line);
+                    out.flush();
+                    return null;
+                });
+            }
+        } catch (InterruptedException e) {
+            // сессия закрыта
+        }
+    }
+
+    private void servePrivate(BufferedReader in, PrintStream out, String name, boolean operator, String savePrefix)
+            throws IOException {
+        SessionRegistry.Session session = registry.open(() -> {
+            Game game = new Game();
+            game.getState().getPlayer().setName(name);
+            game.setOperator(operator);
+            game.setSavePrefix(savePrefix);
+            return game;
+        }, out);
+        try {
+            String line;
+            while (!registry.isFinished(session) && (line = nextLine(in, out)) != null) {
+                registry.execute(session, line);
+                out.print(PROMPT);
+                if (!in.ready()) out.flush();
+            }
+        } finally {
+            registry.close(session);
+        }
+    }
+
+    // readLine без предела длины: строка без перевода копится в памяти, пока клиент шлет байты.
+    // здесь не больше MAX_LINE символов; длиннее - сообщаем и закрываем соединение (null)
+    static String nextLine(BufferedReader in, PrintStream out) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') return line.toString();
+            if (c == '\r') {
+                in.mark(1);
+                if (in.read() != '\n') in.reset();
+                return line.toString();
+            }
+            if (line.length() == MAX_LINE) {
+                out.println("Строка длиннее " + MAX_LINE + " символов, соединение закрыто");
+                out.flush();
+                return null;
+            }
+            line.append((char) c);
+        }
+        return line.isEmpty() ? null : line.toString();
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.dungeon.core;
+
+import com.example.dungeon.model.Door;
+import com.example.dungeon.model.DoorGraph;
+import com.example.dungeon.model.GameState;
+import com.example.dungeon.model.Item;
+import com.example.dungeon.model.Monster;
+import com.example.dungeon.model.OverlayRoom;
+import com.example.dungeon.model.OverlayWorld;
+import com.example.dungeon.model.Player;
+import com.example.dungeon.model.Room;
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.util.*;
+
+// примерный удерживаемый размер мира по типам. объекты обходятся от карты мира,
+// каждый считается один раз (общие строки и предметы не удваиваются). размеры своих
+// классов берутся из полей, для коллекций JDK - из их известной раскладки в HotSpot.
+// это оценка без агента и дампа кучи: точность - десятки процентов, порядок верный
+final class HeapReport {
+    private static final boolean COMPRESSED_OOPS = vmFlag("UseCompressedOops", true);
+    private static final int HEADER = vmFlag("UseCompressedClassPointers", true) ? 12 : 16;
+    private static final int REF = COMPRESSED_OOPS ? 4 : 8;
+    private static final int ARRAY_HEADER = align(HEADER + 4);
+    private static final Map<Class<?>, Long> SHALLOW = new HashMap<>();
+
+    private final Map<Object, Boolean> seen = new IdentityHashMap<>();
+    private final Map<String, long[]> byType = new TreeMap<>(); // тип -> {объектов, байт}
+
+    private HeapReport() {
+    }
+
+    static void print(PrintStream out, GameState state) {
+        HeapReport r = new HeapReport();
+        Map<String, Room> world = state.getWorld();
+        if (world instanceof MappedWorld mapped) {
+            r.mappedNote(out, mapped);
+        } else if (world instanceof OverlayWorld overlay) {
+            r.overlay(out, overlay);
+        } else {
+            r.map("карта мира", world);
+            for (Room room : world.values()) r.room(room);
+        }
+        r.player(state.getPlayer());
+        // двери шаблона тоже общие
+        if (!(world instanceof OverlayWorld overlay && overlay.template().doors() == state.getDoors())) {
+            r.doors(state.getDoors());
+        }
+        r.report(out, world instanceof OverlayWorld overlay ? overlay.views().size() : world.size());
+    }
+
+    private void mappedNote(PrintStream out, MappedWorld mapped) {
+        long size;
+        try {
+            size = Files.size(mapped.file());
+        } catch (IOException e) {
+            size = -1;
+        }
+        out.println("Мир в файле " + mapped.file() + " (вне кучи): "
+                + (size < 0 ? "размер неизвестен" : size / 1024 / 1024 + " MB")
+                + ". В куче только кэш представлений комнат, он не обходится.");
+    }
+
+    // шаблон общий для сессий и в итог не входит; считаются виды сессии и их собственные копии
+    private void overlay(PrintStream out, OverlayWorld overlay) {
+        HeapReport template = new HeapReport();
+        for (Room room : overlay.template().rooms().values()) template.room(room);
+        long shared = 0;
+        for (long[] t : template.byType.values()) shared += t[1];
+        out.printf("Мир поверх общего шаблона: %d комнат шаблона (~%d КБ на все сессии), у сессии %d видов, %d со своими копиями%n",
+                overlay.size(), shared / 1024, overlay.views().size(), overlay.changedRooms());
+        add("OverlayWorld", overlay, shallow(OverlayWorld.class) + align(HEADER + 6 * REF)
+                + array(tableSize(overlay.views().size())) + 32L * overlay.views().size());
+        for (Room room : overlay.views()) {
+            OverlayRoom view = (OverlayRoom) room;
+            add("OverlayRoom", view, shallow(OverlayRoom.class));
+            if (view.ownsExits()) map("свои выходы (HashMap)", view.getNeighbors());
+            if (view.ownsItems()) {
+                List<Item> items = view.getItems();
+                add("свои предметы (ArrayList)", items, align(HEADER + 4 + 4 + REF) + array(items.size()));
+            }
+            Monster m = view.ownsMonster() ? view.getMonster() : null;
+            if (m != null && add("Monster (копия)", m, shallow(m.getClass()))) string(m.getName());
+        }
+    }
+
+    private void room(Room room) {
+        if (!add("Room", room, shallow(room.getClass()))) return;
+        string(room.getName());
+        string(room.getDescription());
+        map("выходы (ConcurrentHashMap)", room.getNeighbors());
+        List<Item> items = room.getItems();
+        if (add("предметы комнаты (CopyOnWriteArrayList)", items,
+                align(HEADER + 2 * REF) + align(HEADER) + array(items.size()))) {
+            for (Item i : items) item(i);
+        }
+        Monster m = room.getMonster();
+        if (m != null && add("Monster", m, shallow(m.getClass()))) string(m.getName());
+    }
+
+    private void item(Item item) {
+        if (add(item.getClass().getSimpleName(), item, shallow(item.getClass()))) string(item.getName());
+    }
+
+    private void player(Player p) {
+        if (p == null || !add("Player", p, shallow(p.getClass()))) return;
+        string(p.getName());
+        List<Item> inv = p.getInventory();
+        add("инвентарь (ArrayList)", inv, align(HEADER + 4 + 4 + REF) + array(inv.size()));
+        for (Item i : inv) item(i);
+    }
+
+    private void doors(DoorGraph doors) {
+        if (doors == null || doors.size() == 0 || !add("DoorGraph", doors, shallow(DoorGraph.class))) return;
+        // индексы по комнате и по замку: по узлу и списку на дверь в каждом
+        long index = 2L * doors.size() * (32 + align(HEADER + 8 + REF) + array(1));
+        add("индексы дверей", new Object(), array(doors.size()) + index);
+        for (Door d : doors.all()) {
+            if (!add("Door", d, shallow(Door.class))) continue;
+            string(d.lockId());
+            string(d.roomA());
+            string(d.dirA());
+            string(d.roomB());
+            string(d.dirB());
+        }
+    }
+
+    // HashMap и ConcurrentHashMap: объект, таблица степени двойки и по узлу на запись
+    private void map(String type, Map<String, Room> map) {
+        int n = map.size();
+        long table = n == 0 ? 0 : array(tableSize(n));
+        if (!add(type, map, align(HEADER + 6 * REF) + table + 32L * n)) return;
+        // направления выходов - одни и те же литералы, посчитаются один раз
+        for (String k : map.keySet()) string(k);
+    }
+
+    private void string(String s) {
+        if (s == null) return;
+        boolean latin1 = true;
+        for (int i = 0; i < s.length() && latin1; i++) latin1 = s.charAt(i) < 256;
+        add("String", s, align(HEADER + REF + 4 + 4) + align(ARRAY_HEADER + (latin1 ? s.length() : 2L * s.length())));
+    }
+
+    private boolean add(String type, Object o, long bytes) {
+        if (seen.put(o, Boolean.TRUE) != null) return false;
+        long[] t = byType.computeIfAbsent(type, k -> new long[2]);
+        t[0]++;
+        t[1] += bytes;
+        return true;
+    }
+
+    private void report(PrintStream out, int rooms) {
+        long total = 0;
+        for (long[] t : byType.values()) total += t[1];
+        List<Map.Entry<String, long[]>> rows = new ArrayList<>(byType.entrySet());
+        rows.sort((x, y) -> Long.compare(y.getValue()[1], x.getValue()[1]));
+
+        out.println("=== Занимаемая миром память (оценка) ===");
+        out.printf("%-42s %10s %12s %6s%n", "тип", "объектов", "КБ", "доля");
+        for (Map.Entry<String, long[]> e : rows) {
+            long[] t = e.getValue();
+            out.printf("%-42s %10d %12d %5d%%%n", e.getKey(), t[0], t[1] / 1024, total == 0 ? 0 : t[1] * 100 / total);
+        }
+        Runtime rt = Runtime.getRuntime();
+        out.println("Итого: " + total / 1024 / 1024 + " MB"
+                + (rooms > 0 && total > 0 ? ", примерно " + total / rooms + " байт на комнату" : "")
+                + " (куча занята сейчас: " + (rt.totalMemory() - rt.freeMemory()) / 1024 / 1024 + " MB)");
+        out.println("Ссылки " + REF + " байта, заголовок " + HEADER + " байт, выравнивание 8.");
+    }
+
+    // поля класса и его предков; статические не в объекте
+    private static synchronized long shallow(Class<?> type) {
+        Long cached = SHALLOW.get(type);
+        if (cached != null) return cached;
+        long size = HEADER;
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                if (Modifier.isStatic(f.getModifiers())) continue;
+                size += fieldSize(f.getType());
+            }
+        }
+        size = align(size);
+        SHALLOW.put(type, size);
+        return size;
+    }
+
+    private static int fieldSize(Class<?> t) {
+        if (t == long.class || t == double.class) return 8;
+        if (t == int.class || t == float.class) return 4;
+        if (t == short.class || t == char.class) return 2;
+        if (t == byte.class || t == boolean.class) return 1;
+        return REF;
+    }
+
+    private static int tableSize(int n) {
+        return Integer.highestOneBit(Math.max(1, (int) (n / 0.75f)) * 2 - 1);
+    }
+
+    private static long array(int refs) {
+        return align(ARRAY_HEADER + (long) refs * REF);
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+
+    private static boolean vmFlag(String name, boolean fallback) {
+        try {
+            HotSpotDiagnosticMXBean hs = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            return Boolean.parseBoolean(hs.getVMOption(name).getValue());
+        } catch (RuntimeException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.dungeon.core;
+
+// гистограмма задержек в наносекундах: до 128 нс точно, дальше 64 корзины на каждую
+// степень двойки (погрешность ~1.5%). не потокобезопасна: своя у каждого клиента, потом merge
+final class LatencyHistogram {
+    private static final int LINEAR = 128;
+    private static final int SUB = 64;
+    private final long[] counts = new long[LINEAR + (63 - 7) * SUB];
+    private long total;
+    private long max;
+
+    void record(long nanos) {
+        long v = Math.max(0, nanos);
+        counts[index(v)]++;
+        total++;
+        max = Math.max(max, v);
+    }
+
+    void merge(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    long count() {
+        return total;
+    }
+
+    long max() {
+        return max;
+    }
+
+    // верхняя граница корзины, в которую попал перцентиль p (0..100)
+    long percentile(double p) {
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(max, upperBound(i));
+        }
+        return max;
+    }
+
+    private static int index(long v) {
+        if (v < LINEAR) return (int) v;
+        int e = 63 - Long.numberOfLeadingZeros(v);
+        return LINEAR + (e - 7) * SUB + (int) ((v >>> (e - 6)) - SUB);
+    }
+
+    private static long upperBound(int idx) {
+        if (idx < LINEAR) return idx;
+        int e = (idx - LINEAR) / SUB + 7;
+        long m = (idx - LINEAR) % SUB + SUB;
+        return ((m + 1) << (e - 6)) - 1;
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.dungeon.core;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// нагрузочный тест всей игры: N клиентов шлют смесь команд в сессии внутри процесса
+// или на сервер по сокету. нагрузка открытая: запросы уходят по расписанию с заданной
+// частотой, задержка считается от запланированного момента - так очередь за медленным
+// ответом тоже попадает в статистику (нет coordinated omission).
+// внутри процесса сохранения и счет пишутся во временный каталог, удаляемый после прогона;
+// на чужой сервер синтетика save не шлет - его хранилище не наше
+public final class LoadTest {
+    // синтетическая смесь: команда и ее вес
+    private static final String[][] MIX = {
+            {"look", "40"}, {"move", "25"}, {"take", "10"}, {"fight", "5"}, {"attack", "10"},
+            {"inventory", "8"}, {"scores", "4"}, {"save", "3"}};
+    private static final String[] DIRECTIONS = {"north", "south", "east", "west"};
+    private static final String[] ITEMS = {"Малое зелье", "Золотой ключ", "Ржавый меч"};
+
+    private int clients = 50;
+    private int seconds = 30;
+    private int rampSeconds = 5;
+    private double rate = 500; // запросов в секунду суммарно
+    private String target = "inproc";
+    private List<String> script;
+
+    private LoadTest() {
+    }
+
+    // --clients=50 --duration=30 --ramp=5 --rate=500 --target=inproc|host:port --script=file
+    public static void main(String[] args) throws IOException {
+        LoadTest t = new LoadTest();
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            String v = kv.length > 1 ? kv[1] : "";
+            switch (kv[0]) {
+                case "clients" -> t.clients = Integer.parseInt(v);
+                case "duration" -> t.seconds = Integer.parseInt(v);
+                case "ramp" -> t.rampSeconds = Integer.parseInt(v);
+                case "rate" -> t.rate = Double.parseDouble(v);
+                case "target" -> t.target = v;
+                case "script" -> t.script = Files.readAllLines(Path.of(v)).stream()
+                        .map(String::trim).filter(l -> !l.isEmpty() && !l.startsWith("#")).toList();
+                default -> throw new IllegalArgumentException("Неизвестный параметр: " + arg);
+            }
+        }
+        t.run(System.out);
+    }
+
+    private interface Client extends Closeable {
+        // true - игра ответила ошибкой
+        boolean send(String command) throws IOException;
+    }
+
+    private void run(PrintStream out) {
+        out.printf("Нагрузка: %d клиентов, %.0f запр/с, разгон %d с, всего %d с, цель %s, команды: %s%n",
+                clients, rate, rampSeconds, seconds, target, script != null ? "сценарий" : "синтетика");
+
+        SharedWorld world = "inproc".equals(target) ? SharedWorld.standard() : null;
+        SaveLoad.Storage storage;
+        try {
+            storage = world != null ? SaveLoad.Storage.temporary("loadtest") : null;
+        } catch (IOException e) {
+            out.println("Не удалось создать временный каталог: " + e.getMessage());
+            return;
+        }
+        String[][] mix = world != null ? MIX
+                : Arrays.stream(MIX).filter(m -> !m[0].equals("save")).toArray(String[][]::new);
+        Map<String, LatencyHistogram> merged = new TreeMap<>();
+        AtomicLong gameErrors = new AtomicLong();
+        AtomicLong ioErrors = new AtomicLong();
+        AtomicLong unsent = new AtomicLong();
+        List<Map<String, LatencyHistogram>> perClient = Collections.synchronizedList(new ArrayList<>());
+        GcPauses gc = new GcPauses();
+
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> threads = new ArrayList<>();
+        gc.start();
+        for (int c = 0; c < clients; c++) {
+            int id = c;
+            threads.add(Thread.ofVirtual().start(() -> {
+                Map<String, LatencyHistogram> hist = new HashMap<>();
+                perClient.add(hist);
+                SplittableRandom rnd = new SplittableRandom(id);
+                try (Client client = connect(world, storage, id)) {
+                    long intended = start + (long) (rnd.nextDouble() * interval(0));
+                    int scriptPos = script != null ? rnd.nextInt(script.size()) : 0;
+                    while (intended < end) {
+                        long now = System.nanoTime();
+                        if (now >= end) break;
+                        if (intended > now) LockSupport.parkNanos(intended - now);
+                        String command = script != null
+                                ? script.get(scriptPos++ % script.size()).replace("{client}", String.valueOf(id))
+                                : synthetic(mix, rnd, id);
+                        if (client.send(command)) gameErrors.incrementAndGet();
+                        long latency = System.nanoTime() - intended;
+                        String type = command.split("\\s+", 2)[0].toLowerCase(Locale.ROOT);
+                        hist.computeIfAbsent(type, k -> new LatencyHistogram()).record(latency);
+                        intended += interval(intended - start);
+                    }
+                    // не успели отправить до конца прогона - система не держит заданную частоту
+                    for (; intended < end; intended += interval(intended - start)) {
+                        unsent.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    ioErrors.incrementAndGet();
+                }
+            }));
+        }
+        try {
+            for (Thread t : threads) t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            gc.stop();
+            if (storage != null) {
+                try {
+                    storage.deleteTemporary();
+                } catch (IOException e) {
+                    out.println("Временный каталог не удален: " + e.getMessage());
+                }
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        LatencyHistogram all = new LatencyHistogram();
+        for (Map<String, LatencyHistogram> hist : perClient) {
+            hist.forEach((type, h) -> {
+                merged.computeIfAbsent(type, k -> new LatencyHistogram()).merge(h);
+                all.merge(h);
+            });
+        }
+
+        out.println("=== Результаты ===");
+        out.printf("Запросов: %d за %.1f с (%.0f запр/с), не отправлено: %d, ошибок игры: %d, сбоев соединения: %d%n",
+                all.count(), elapsed, all.count() / elapsed, unsent.get(), gameErrors.get(), ioErrors.get());
+        out.printf("%-10s %9s %10s %10s %10s %10s%n", "команда", "кол-во", "p50 мс", "p99 мс", "p999 мс", "max мс");
+        merged.forEach((type, h) -> printRow(out, type, h));
+        printRow(out, "ВСЕ", all);
+        out.printf("GC: пауз %d, суммарно %d мс, максимум %d мс (в этом процессе)%n", gc.count, gc.totalMillis, gc.maxMillis);
+    }
+
+    private static void printRow(PrintStream out, String type, LatencyHistogram h) {
+        out.printf("%-10s %9d %10.3f %10.3f %10.3f %10.3f%n", type, h.count(),
+                h.percentile(50) / 1e6, h.percentile(99) / 1e6, h.percentile(99.9) / 1e6, h.max() / 1e6);
+    }
+
+    // интервал между запросами одного клиента; во время разгона частота растет линейно
+    private long interval(long sinceStart) {
+        double ramp = TimeUnit.SECONDS.toNanos(rampSeconds);
+        double share = ramp <= 0 ? 1.0 : Math.min(1.0, Math.max(0.05, sinceStart / ramp));
+        return (long) (1e9 * clients / (rate * share));
+    }
+
+    private static String synthetic(String[][] mix, SplittableRandom rnd, int id) {
+        int total = 0;
+        for (String[] m : mix) total += Integer.parseInt(m[1]);
+        int roll = rnd.nextInt(total);
+        String cmd = mix[0][0];
+        for (String[] m : mix) {
+            roll -= Integer.parseInt(m[1]);
+            if (roll < 0) {
+                cmd = m[0];
+                break;
+            }
+        }
+        return switch (cmd) {
+            case "move" -> "move " + DIRECTIONS[rnd.nextInt(DIRECTIONS.length)];
+            case "take" -> "take " + ITEMS[rnd.nextInt(ITEMS.length)];
+            case "save" -> "save loadtest_" + id;
+            default -> cmd;
+        };
+    }
+
+    private Client connect(SharedWorld world, SaveLoad.Storage storage, int id) throws IOException {
+        if (world != null) {
+            Game game = world.join("Нагрузка-" + id);
+            game.setStorage(storage);
+            return new InProcessClient(game);
+        }
+        String[] hostPort = target.split(":");
+        GameClient remote = new GameClient(hostPort[0], Integer.parseInt(hostPort[1]));
+        return new Client() {
+            @Override
+            public boolean send(String command) throws IOException {
+                return remote.send(command);
+            }
+
+            @Override
+            public void close() throws IOException {
+                remote.close();
+            }
+        };
+    }
+
+    // сессия в этом же процессе; вывод копится в буфер только ради признака ошибки
+    private static final class InProcessClient implements Client {
+        private static final byte[] ERROR = "Ошибка".getBytes(StandardCharsets.UTF_8);
+        private final Game game;
+        private final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+        InProcessClient(Game game) {
+            this.game = game;
+            game.getState().setOut(new PrintStream(buf, false, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public boolean send(String command) {
+            buf.reset();
+            game.execute(command);
+            byte[] response = buf.toByteArray();
+            return response.length >= ERROR.length && Arrays.equals(response, 0, ERROR.length, ERROR, 0, ERROR.length);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // паузы GC за время прогона по уведомлениям сборщиков; фоновые циклы не считаются
+    private static final class GcPauses implements NotificationListener {
+        private final Map<NotificationEmitter, Boolean> emitters = new ConcurrentHashMap<>();
+        volatile long count;
+        volatile long totalMillis;
+        volatile long maxMillis;
+
+        void start() {
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (gc instanceof NotificationEmitter emitter) {
+                    emitter.addNotificationListener(this, null, null);
+                    emitters.put(emitter, true);
+                }
+            }
+        }
+
+        void stop() {
+            for (NotificationEmitter emitter : emitters.keySet()) {
+                try {
+                    emitter.removeNotificationListener(this);
+                } catch (javax.management.ListenerNotFoundException ignored) {
+                }
+            }
+        }
+
+        @Override
+        public synchronized void handleNotification(javax.management.Notification n, Object handback) {
+            if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(n.getType())) return;
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+            if (info.getGcName().contains("Concurrent")) return;
+            long ms = info.getGcInfo().getDuration();
+            count++;
+            totalMillis += ms;
+            maxMillis = Math.max(maxMillis, ms);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.dungeon.core;
+
+import com.example.dungeon.model.Room;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+// мир в куче против мира в mapped-файле на одном размере: построение, живая куча
+// после полной сборки, длительность полной сборки, сборки во время прогулки по миру и RSS.
+// mapped меряется первым: после модели в куче процесс уже не отдаст выросшую кучу
+final class MappedBench {
+    private static final long MB = 1024 * 1024;
+    private static final int WALK_STEPS = 1_000_000;
+    private static final int SAMPLE = 100_000;
+
+    private MappedBench() {
+    }
+
+    private record Result(long buildMs, long liveMb, long fullGcMs, long walkMs, long gcCount, long gcMs, String rss) {
+    }
+
+    static void run(PrintStream out, int rooms) throws IOException {
+        Runtime rt = Runtime.getRuntime();
+        out.printf("Мир из %d комнат, куча до %d МБ, прогулка %d шагов%n", rooms, rt.maxMemory() / MB, WALK_STEPS);
+        out.printf("%-8s %10s %10s %12s %10s %8s %8s %10s%n",
+                "модель", "создан мс", "куча МБ", "полн.GC мс", "шаги мс", "сборок", "GC мс", "RSS МБ");
+
+        Path file = SaveLoad.mappedFile("bench-" + rooms);
+        try {
+            print(out, "mapped", measure(() -> WorldGenerator.generateMapped(file, rooms, 42)));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        long perRoom = heapBytesPerRoom();
+        long need = perRoom * rooms;
+        long available = rt.maxMemory() - usedAfterGc();
+        if (need + need / 4 > available) {
+            out.printf("%-8s не помещается: нужно ~%d МБ (~%d байт на комнату), доступно %d МБ%n",
+                    "куча", need / MB, perRoom, available / MB);
+        } else {
+            print(out, "куча", measure(() -> WorldGenerator.generate(rooms, 42).rooms()));
+        }
+    }
+
+    private interface Builder {
+        Map<String, Room> build() throws IOException;
+    }
+
+    private static Result measure(Builder builder) throws IOException {
+        long before = usedAfterGc();
+        long t = System.nanoTime();
+        Map<String, Room> world = builder.build();
+        long buildMs = ms(t);
+
+        t = System.nanoTime();
+        long live = usedAfterGc() - before;
+        long fullGcMs = ms(t);
+
+        long[] gc = gcTotals();
+        t = System.nanoTime();
+        walk(world);
+        long walkMs = ms(t);
+        long[] gcAfter = gcTotals();
+        String rss = rssMb();
+
+        return new Result(buildMs, Math.max(0, live) / MB, fullGcMs, walkMs,
+                gcAfter[0] - gc[0], gcAfter[1] - gc[1], rss);
+    }
+
+    // случайная прогулка с описанием комнат, иногда прыжок в случайную комнату по имени
+    private static void walk(Map<String, Room> world) {
+        SplittableRandom rnd = new SplittableRandom(7);
+        int rooms = world.size();
+        Room room = world.get(WorldGenerator.roomName(0));
+        long chars = 0;
+        for (int step = 0; step < WALK_STEPS; step++) {
+            chars += room.describe().length();
+            List<Room> exits = List.copyOf(room.getNeighbors().values());
+            if (exits.isEmpty() || step % 100 == 0) {
+                room = world.get(WorldGenerator.roomName(rnd.nextInt(rooms)));
+            } else {
+                room = exits.get(rnd.nextInt(exits.size()));
+            }
+        }
+        if (chars == 0) throw new IllegalStateException();
+    }
+
+    private static long heapBytesPerRoom() {
+        long before = usedAfterGc();
+        Map<String, Room> sample = WorldGenerator.generate(SAMPLE, 1).rooms();
+        long after = usedAfterGc();
+        long perRoom = Math.max(1, (after - before) / sample.size());
+        sample.clear();
+        return perRoom;
+    }
+
+    private static void print(PrintStream out, String model, Result r) {
+        out.printf("%-8s %10d %10d %12d %10d %8d %8d %10s%n",
+                model, r.buildMs, r.liveMb, r.fullGcMs, r.walkMs, r.gcCount, r.gcMs, r.rss);
+    }
+
+    private static long usedAfterGc() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long[] gcTotals() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[]{count, time};
+    }
+
+    // резидентная память процесса (Linux); включает прочитанные страницы mapped-файла
+    private static String rssMb() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return String.valueOf(Long.parseLong(line.replaceAll("\\D", "")) / 1024);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // не Linux
+        }
+        return "н/д";
+    }
+
+    private static long ms(long started) {
+        return (System.nanoTime() - started) / 1_000_000;
+    }
+}
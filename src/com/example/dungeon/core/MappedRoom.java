@@ -0,0 +1,170 @@
+package com.example.dungeon.core;
+
+import com.example.dungeon.model.Item;
+import com.example.dungeon.model.Monster;
+import com.example.dungeon.model.Room;
+
+import java.io.PrintStream;
+import java.util.*;
+
+// комната-вид над записью MappedWorld: состояние не хранит, читает и пишет запись в файле.
+// коллекции только для чтения - менять комнату можно лишь ее методами, как и обычную.
+// рассчитана на одну сессию: общий мир в mapped-режиме не поддерживается
+final class MappedRoom extends Room {
+    private final MappedWorld world;
+    private final int index;
+    private final Map<String, Room> exits = new Exits();
+    private Monster monster;   // один объект на вид, пока в записи тот же монстр
+    private long monsterName = -1;
+
+    MappedRoom(MappedWorld world, int index) {
+        super(world.name(index), world.description(index));
+        this.world = world;
+        this.index = index;
+    }
+
+    @Override
+    public Map<String, Room> getNeighbors() {
+        return exits;
+    }
+
+    @Override
+    public List<Item> getItems() {
+        return Collections.unmodifiableList(world.items(index));
+    }
+
+    @Override
+    public synchronized Monster getMonster() {
+        long name = world.monsterName(index);
+        if (name < 0) {
+            monster = null;
+        } else if (monster == null || name != monsterName) {
+            monster = world.monster(index);
+        } else {
+            monster.setHp(world.monsterHp(index));
+        }
+        monsterName = name;
+        return monster;
+    }
+
+    @Override
+    public synchronized void setMonster(Monster m) {
+        world.setMonster(index, m);
+        monster = m;
+        monsterName = world.monsterName(index);
+    }
+
+    @Override
+    public synchronized int strikeMonster(Monster target, int damage) {
+        if (getMonster() != target) return -1;
+        int hp = Math.max(0, target.getHp() - damage);
+        target.setHp(hp);
+        if (hp == 0) {
+            world.setMonster(index, null);
+            monster = null;
+        } else {
+            world.setMonsterHp(index, hp);
+        }
+        return hp;
+    }
+
+    @Override
+    public synchronized void addItem(Item item) {
+        if (!world.addItem(index, item)) {
+            throw new InvalidCommandException("В комнате нет места для предмета");
+        }
+    }
+
+    @Override
+    public synchronized Item takeItem(String itemName) {
+        for (int s = 0; s < MappedWorld.ITEM_SLOTS; s++) {
+            Item item = world.item(index, s);
+            if (item != null && item.getName().equalsIgnoreCase(itemName)) {
+                world.clearItem(index, s);
+                return item;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized boolean openExit(String direction, Room target) {
+        int dir = MappedWorld.direction(direction);
+        if (dir < 0 || !(target instanceof MappedRoom t) || t.world != world) return false;
+        if (world.exit(index, dir) >= 0) return false;
+        world.setExit(index, dir, t.index);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean closeExit(String direction, Room target) {
+        int dir = MappedWorld.direction(direction);
+        if (dir < 0 || !(target instanceof MappedRoom t) || t.world != world) return false;
+        if (world.exit(index, dir) != t.index) return false;
+        world.setExit(index, dir, -1);
+        return true;
+    }
+
+    // описание не кэшируется: запись в файле меняют и другие виды той же комнаты
+    @Override
+    public String describe() {
+        return render();
+    }
+
+    @Override
+    public void printDescription(PrintStream out) {
+        out.println(render());
+    }
+
+    // выходы: виды соседей создаются только при обращении к значению
+    private final class Exits extends AbstractMap<String, Room> {
+        @Override
+        public Room get(Object key) {
+            int dir = key instanceof String s ? MappedWorld.direction(s) : -1;
+            if (dir < 0) return null;
+            int target = world.exit(index, dir);
+            return target < 0 ? null : world.room(target);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            int dir = key instanceof String s ? MappedWorld.direction(s) : -1;
+            return dir >= 0 && world.exit(index, dir) >= 0;
+        }
+
+        @Override
+        public Set<Map.Entry<String, Room>> entrySet() {
+            Set<Map.Entry<String, Room>> entries = new LinkedHashSet<>();
+            for (int d = 0; d < MappedWorld.DIRECTIONS.length; d++) {
+                int target = world.exit(index, d);
+                if (target >= 0) entries.add(new Exit(MappedWorld.DIRECTIONS[d], target));
+            }
+            return entries;
+        }
+    }
+
+    private final class Exit implements Map.Entry<String, Room> {
+        private final String direction;
+        private final int target;
+
+        Exit(String direction, int target) {
+            this.direction = direction;
+            this.target = target;
+        }
+
+        @Override
+        public String getKey() {
+            return direction;
+        }
+
+        @Override
+        public Room getValue() {
+            return world.room(target);
+        }
+
+        @Override
+        public Room setValue(Room value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
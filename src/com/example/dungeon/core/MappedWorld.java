@@ -0,0 +1,561 @@
+package com.example.dungeon.core;
+
+import com.example.dungeon.model.*;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// мир в отображаемом в память файле. комнаты, монстры и предметы лежат вне кучи записями
+// фиксированной длины, объекты Room создаются только как временные виды (MappedRoom).
+// изменения пишутся прямо в отображение, поэтому сохранение - это force() на диск.
+// файл: заголовок (в т.ч. игрок), записи комнат, хеш-индекс имен, область строк
+final class MappedWorld extends AbstractMap<String, Room> {
+    static final String[] DIRECTIONS = {"north", "south", "east", "west"};
+    static final int ITEM_SLOTS = 2;
+    static final int INVENTORY_SLOTS = 16;
+
+    private static final int MAGIC = 0x444D4150; // "DMAP"
+    private static final int VERSION = 1;
+    private static final int HEADER = 4096;
+    private static final int VIEW_CACHE = 1024;
+    private static final int CHUNK = 1 << 30; // одно отображение не больше 2 ГБ
+
+    // запись комнаты
+    private static final int RECORD = 96;
+    private static final int R_NAME = 0;        // long, смещение строки
+    private static final int R_DESC = 8;        // long
+    private static final int R_EXITS = 16;      // int[4], индекс комнаты или -1
+    private static final int R_MONSTER = 32;    // long, имя монстра или -1
+    private static final int R_LEVEL = 40;      // int
+    private static final int R_HP = 44;         // int
+    private static final int R_ITEMS = 48;      // ITEM_SLOTS слотов по 24 байта
+    private static final int ITEM = 24;         // тип int, значение int, имя long, замок long
+
+    private static final int NONE = 0;
+    private static final int POTION = 1;
+    private static final int WEAPON = 2;
+    private static final int KEY = 3;
+
+    // заголовок
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_COUNT = 8;
+    private static final int H_SLOTS = 12;
+    private static final int H_STRINGS_CAP = 16;
+    private static final int H_STRINGS_END = 24;
+    private static final int H_DOORS = 32;
+    private static final int H_CURRENT = 40;    // -1 - игрок еще не сохранялся
+    private static final int H_HP = 44;
+    private static final int H_ATTACK = 48;
+    private static final int H_SCORE = 52;
+    private static final int H_INVENTORY = 56;  // число предметов
+    private static final int H_NAME = 128;      // 64 байта
+    private static final int H_ITEMS = 256;     // INVENTORY_SLOTS по 128 байт
+    private static final int INV_ITEM = 128;
+
+    private final Path file;
+    private final Region header;
+    private final Region records;
+    private final Region index;
+    private final Region strings;
+    private final int count;
+    private final int slots;
+    private long stringsEnd;
+    private int added;
+    private final Map<String, Long> interned = new HashMap<>(); // повторяющиеся имена предметов и монстров
+    private final Map<Integer, MappedRoom> views = new LinkedHashMap<>(VIEW_CACHE * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, MappedRoom> eldest) {
+            return size() > VIEW_CACHE;
+        }
+    };
+
+    private MappedWorld(Path file, FileChannel ch, int count, int slots, long stringsCap) throws IOException {
+        this.file = file;
+        this.count = count;
+        this.slots = slots;
+        long recordsOff = HEADER;
+        long indexOff = recordsOff + (long) count * RECORD;
+        long stringsOff = indexOff + (long) slots * 4;
+        this.header = new Region(ch, 0, HEADER, HEADER);
+        this.records = new Region(ch, recordsOff, (long) count * RECORD, RECORD);
+        this.index = new Region(ch, indexOff, (long) slots * 4, 4);
+        this.strings = new Region(ch, stringsOff, stringsCap, 1);
+    }
+
+    // пустой файл на count комнат; комнаты добавляются по порядку через addRoom
+    static MappedWorld create(Path file, int count, long stringBytes) throws IOException {
+        int slots = Integer.highestOneBit(Math.max(2, count) * 2 - 1) << 1;
+        // запас на выравнивание строк по границам отображений и строки, добавленные в игре
+        long stringsCap = stringBytes + (stringBytes / CHUNK + 1) * 4096 + (1 << 20);
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedWorld w = new MappedWorld(file, ch, count, slots, stringsCap);
+            w.header.putInt(H_MAGIC, MAGIC);
+            w.header.putInt(H_VERSION, VERSION);
+            w.header.putInt(H_COUNT, count);
+            w.header.putInt(H_SLOTS, slots);
+            w.header.putLong(H_STRINGS_CAP, stringsCap);
+            w.header.putLong(H_DOORS, -1);
+            w.header.putInt(H_CURRENT, -1);
+            w.stringsEnd = 0;
+            w.header.putLong(H_STRINGS_END, 0);
+            w.added = 0;
+            return w;
+        }
+    }
+
+    // канал закрывается сразу: отображения остаются действительными и без него
+    static MappedWorld open(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            throw new InvalidCommandException("Файл мира не найден: " + file);
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Region h = new Region(ch, 0, HEADER, HEADER);
+            if (ch.size() < HEADER || h.getInt(H_MAGIC) != MAGIC || h.getInt(H_VERSION) != VERSION) {
+                throw new InvalidCommandException("Файл не является миром в формате mapped: " + file);
+            }
+            MappedWorld w = new MappedWorld(file, ch, h.getInt(H_COUNT), h.getInt(H_SLOTS), h.getLong(H_STRINGS_CAP));
+            w.stringsEnd = w.header.getLong(H_STRINGS_END);
+            w.added = w.count;
+            return w;
+        }
+    }
+
+    // копия мира из кучи: поддерживаются четыре стороны света и до ITEM_SLOTS предметов в комнате
+    static MappedWorld copyOf(Path file, Map<String, Room> world, DoorGraph doors) throws IOException {
+        long bytes = 8;
+        for (Room room : world.values()) {
+            bytes += 8 + utf8Length(room.getName()) + utf8Length(room.getDescription());
+            for (Item item : room.getItems()) bytes += 8 + utf8Length(item.getName()) + 8 + 16;
+            if (room.getMonster() != null) bytes += 4 + utf8Length(room.getMonster().getName());
+        }
+        String doorsText = SaveLoad.formatDoors(doors);
+        bytes += 4 + utf8Length(doorsText);
+
+        MappedWorld w = create(file, world.size(), bytes);
+        // по имени: обход OverlayWorld каждый раз дает новые временные виды
+        Map<String, Integer> ids = new HashMap<>();
+        for (Room room : world.values()) {
+            ids.put(room.getName(), w.addRoom(room.getName(), room.getDescription()));
+        }
+        for (Room room : world.values()) {
+            int i = ids.get(room.getName());
+            for (Map.Entry<String, Room> e : room.getNeighbors().entrySet()) {
+                int dir = direction(e.getKey());
+                if (dir < 0) {
+                    throw new InvalidCommandException("Направление '" + e.getKey() + "' не поддерживается в mapped-мире");
+                }
+                Integer target = ids.get(e.getValue().getName());
+                if (target != null) w.setExit(i, dir, target);
+            }
+            for (Item item : room.getItems()) {
+                if (!w.addItem(i, item)) {
+                    throw new InvalidCommandException("В комнате " + room.getName() + " больше "
+                            + ITEM_SLOTS + " предметов - не помещается в mapped-мир");
+                }
+            }
+            if (room.getMonster() != null) w.setMonster(i, room.getMonster());
+        }
+        w.header.putLong(H_DOORS, w.putString(doorsText));
+        return w;
+    }
+
+    Path file() {
+        return file;
+    }
+
+    static int direction(String dir) {
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            if (DIRECTIONS[d].equals(dir)) return d;
+        }
+        return -1;
+    }
+
+    // ---- карта имя -> комната
+
+    @Override
+    public Room get(Object key) {
+        if (!(key instanceof String name)) return null;
+        int i = find(name);
+        return i < 0 ? null : room(i);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String name && find(name) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return added;
+    }
+
+    // обход всех комнат создает виды мимо кэша, чтобы не вытеснить рабочие
+    @Override
+    public Set<Map.Entry<String, Room>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, Room>> iterator() {
+                return new Iterator<>() {
+                    private int i;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < added;
+                    }
+
+                    @Override
+                    public Map.Entry<String, Room> next() {
+                        if (i >= added) throw new NoSuchElementException();
+                        MappedRoom room = new MappedRoom(MappedWorld.this, i++);
+                        return new SimpleImmutableEntry<>(room.getName(), room);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return added;
+            }
+        };
+    }
+
+    // вид комнаты; один и тот же, пока он в кэше, - от этого зависит сравнение комнат по ссылке
+    synchronized MappedRoom room(int i) {
+        return views.computeIfAbsent(i, k -> new MappedRoom(this, k));
+    }
+
+    // ---- запись в файл при создании
+
+    int addRoom(String name, String description) {
+        if (added == count) throw new IllegalStateException("Файл рассчитан на " + count + " комнат");
+        int i = added;
+        long rec = (long) i * RECORD;
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        records.putLong(rec + R_NAME, putBytes(nameBytes));
+        records.putLong(rec + R_DESC, putString(description));
+        for (int d = 0; d < DIRECTIONS.length; d++) records.putInt(rec + R_EXITS + d * 4L, -1);
+        records.putLong(rec + R_MONSTER, -1);
+        for (int s = 0; s < ITEM_SLOTS; s++) records.putInt(rec + R_ITEMS + (long) s * ITEM, NONE);
+
+        int slot = hash(nameBytes) & (slots - 1);
+        while (index.getInt(slot * 4L) != 0) {
+            if (nameEquals(index.getInt(slot * 4L) - 1, nameBytes)) {
+                throw new IllegalArgumentException("Повторное имя комнаты: " + name);
+            }
+            slot = (slot + 1) & (slots - 1);
+        }
+        index.putInt(slot * 4L, i + 1);
+        added++;
+        return i;
+    }
+
+    // ---- записи комнат, для MappedRoom
+
+    String name(int i) {
+        return string(records.getLong((long) i * RECORD + R_NAME));
+    }
+
+    String description(int i) {
+        return string(records.getLong((long) i * RECORD + R_DESC));
+    }
+
+    int exit(int i, int dir) {
+        return records.getInt((long) i * RECORD + R_EXITS + dir * 4L);
+    }
+
+    void setExit(int i, int dir, int target) {
+        records.putInt((long) i * RECORD + R_EXITS + dir * 4L, target);
+    }
+
+    long monsterName(int i) {
+        return records.getLong((long) i * RECORD + R_MONSTER);
+    }
+
+    Monster monster(int i) {
+        long rec = (long) i * RECORD;
+        long name = records.getLong(rec + R_MONSTER);
+        if (name < 0) return null;
+        return new Monster(string(name), records.getInt(rec + R_LEVEL), records.getInt(rec + R_HP));
+    }
+
+    int monsterHp(int i) {
+        return records.getInt((long) i * RECORD + R_HP);
+    }
+
+    void setMonster(int i, Monster m) {
+        long rec = (long) i * RECORD;
+        if (m == null) {
+            records.putLong(rec + R_MONSTER, -1);
+            return;
+        }
+        records.putInt(rec + R_LEVEL, m.getLevel());
+        records.putInt(rec + R_HP, m.getHp());
+        records.putLong(rec + R_MONSTER, internString(m.getName()));
+    }
+
+    void setMonsterHp(int i, int hp) {
+        records.putInt((long) i * RECORD + R_HP, hp);
+    }
+
+    List<Item> items(int i) {
+        List<Item> items = new ArrayList<>(ITEM_SLOTS);
+        for (int s = 0; s < ITEM_SLOTS; s++) {
+            Item item = item(i, s);
+            if (item != null) items.add(item);
+        }
+        return items;
+    }
+
+    Item item(int i, int slot) {
+        long at = (long) i * RECORD + R_ITEMS + (long) slot * ITEM;
+        int type = records.getInt(at);
+        if (type == NONE) return null;
+        return newItem(type, records.getInt(at + 4), string(records.getLong(at + 8)), string(records.getLong(at + 16)));
+    }
+
+    // false - свободных слотов нет
+    boolean addItem(int i, Item item) {
+        for (int s = 0; s < ITEM_SLOTS; s++) {
+            long at = (long) i * RECORD + R_ITEMS + (long) s * ITEM;
+            if (records.getInt(at) == NONE) {
+                records.putInt(at + 4, itemValue(item));
+                records.putLong(at + 8, internString(item.getName()));
+                records.putLong(at + 16, item instanceof Key k && k.getLockId() != null ? internString(k.getLockId()) : -1);
+                records.putInt(at, itemType(item));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void clearItem(int i, int slot) {
+        records.putInt((long) i * RECORD + R_ITEMS + (long) slot * ITEM, NONE);
+    }
+
+    DoorGraph doors() {
+        String text = string(header.getLong(H_DOORS));
+        return text == null ? DoorGraph.EMPTY : SaveLoad.parseDoors(text).within(this);
+    }
+
+    // ---- игрок в заголовке: сохранение - запись нескольких полей и force()
+
+    void save(GameState state) {
+        Player p = state.getPlayer();
+        List<Item> inventory = p.getInventory();
+        if (inventory.size() > INVENTORY_SLOTS) {
+            throw new InvalidCommandException("В mapped-мире инвентарь ограничен " + INVENTORY_SLOTS + " предметами");
+        }
+        int current = find(state.getCurrent().getName());
+        header.putInt(H_HP, p.getHp());
+        header.putInt(H_ATTACK, p.getAttack());
+        header.putInt(H_SCORE, state.getScore());
+        putInline(H_NAME, p.getName(), 64);
+        for (int s = 0; s < inventory.size(); s++) {
+            Item item = inventory.get(s);
+            int at = H_ITEMS + s * INV_ITEM;
+            header.putInt(at, itemType(item));
+            header.putInt(at + 4, itemValue(item));
+            putInline(at + 8, item.getName(), 60);
+            putInline(at + 68, item instanceof Key k ? k.getLockId() : null, 60);
+        }
+        header.putInt(H_INVENTORY, inventory.size());
+        header.putInt(H_CURRENT, current);
+        flush();
+    }
+
+    // игрок из заголовка; если его еще не сохраняли - только стартовая комната
+    void restore(GameState state) {
+        int current = header.getInt(H_CURRENT);
+        if (current < 0) {
+            state.setCurrent(room(0));
+            return;
+        }
+        Player p = new Player(getInline(H_NAME), header.getInt(H_HP), header.getInt(H_ATTACK));
+        int n = header.getInt(H_INVENTORY);
+        for (int s = 0; s < n; s++) {
+            int at = H_ITEMS + s * INV_ITEM;
+            p.getInventory().add(newItem(header.getInt(at), header.getInt(at + 4), getInline(at + 8), getInline(at + 68)));
+        }
+        state.setPlayer(p);
+        state.addScore(header.getInt(H_SCORE) - state.getScore());
+        state.setCurrent(room(current));
+    }
+
+    void flush() {
+        header.force();
+        records.force();
+        index.force();
+        strings.force();
+    }
+
+    // ---- строки и индекс
+
+    private int find(String name) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int slot = hash(nameBytes) & (slots - 1);
+        int id;
+        while ((id = index.getInt(slot * 4L)) != 0) {
+            if (nameEquals(id - 1, nameBytes)) return id - 1;
+            slot = (slot + 1) & (slots - 1);
+        }
+        return -1;
+    }
+
+    private boolean nameEquals(int i, byte[] name) {
+        long off = records.getLong((long) i * RECORD + R_NAME);
+        if (strings.getInt(off) != name.length) return false;
+        for (int k = 0; k < name.length; k++) {
+            if (strings.get(off + 4 + k) != name[k]) return false;
+        }
+        return true;
+    }
+
+    private static int hash(byte[] b) {
+        int h = 0x811c9dc5;
+        for (byte x : b) {
+            h = (h ^ x) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private long internString(String s) {
+        Long off = interned.get(s);
+        if (off == null) {
+            off = putString(s);
+            interned.put(s, off);
+        }
+        return off;
+    }
+
+    private long putString(String s) {
+        return s == null ? -1 : putBytes(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // строка не пересекает границу отображений: иначе сдвигается в начало следующего
+    private long putBytes(byte[] b) {
+        long pos = stringsEnd;
+        if (pos / CHUNK != (pos + 4 + b.length - 1) / CHUNK) pos = (pos / CHUNK + 1) * CHUNK;
+        if (pos + 4 + b.length > strings.length) {
+            throw new InvalidCommandException("В файле мира закончилось место для строк");
+        }
+        strings.putInt(pos, b.length);
+        strings.put(pos + 4, b);
+        stringsEnd = pos + 4 + b.length;
+        header.putLong(H_STRINGS_END, stringsEnd);
+        return pos;
+    }
+
+    private String string(long off) {
+        if (off < 0) return null;
+        byte[] b = new byte[strings.getInt(off)];
+        strings.get(off + 4, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private void putInline(int at, String s, int size) {
+        byte[] b = s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+        if (b.length > size - 1) {
+            throw new InvalidCommandException("Слишком длинное имя для mapped-мира: " + s);
+        }
+        header.put(at, (byte) (s == null ? 0xff : b.length));
+        header.put(at + 1L, b);
+    }
+
+    private String getInline(int at) {
+        int len = header.get(at) & 0xff;
+        if (len == 0xff) return null;
+        byte[] b = new byte[len];
+        header.get(at + 1L, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static int itemType(Item item) {
+        if (item instanceof Potion) return POTION;
+        if (item instanceof Weapon) return WEAPON;
+        if (item instanceof Key) return KEY;
+        throw new InvalidCommandException("Предмет не поддерживается в mapped-мире: " + item.getName());
+    }
+
+    private static int itemValue(Item item) {
+        if (item instanceof Potion p) return p.getHeal();
+        if (item instanceof Weapon w) return w.getBonus();
+        return 0;
+    }
+
+    private static Item newItem(int type, int value, String name, String lockId) {
+        return switch (type) {
+            case POTION -> new Potion(name, value);
+            case WEAPON -> new Weapon(name, value);
+            case KEY -> new Key(name, lockId);
+            default -> null;
+        };
+    }
+
+    private static long utf8Length(String s) {
+        return s.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    // участок файла, отображенный кусками до 1 ГБ; размер куска кратен align,
+    // поэтому запись фиксированной длины никогда не разрезана между кусками
+    private static final class Region {
+        final long length;
+        private final long chunk;
+        private final MappedByteBuffer[] maps;
+
+        Region(FileChannel ch, long offset, long length, int align) throws IOException {
+            this.length = length;
+            this.chunk = (long) (CHUNK / align) * align;
+            int n = (int) Math.max(1, (length + chunk - 1) / chunk);
+            this.maps = new MappedByteBuffer[n];
+            for (int k = 0; k < n; k++) {
+                long size = Math.min(chunk, length - k * chunk);
+                maps[k] = ch.map(FileChannel.MapMode.READ_WRITE, offset + k * chunk, Math.max(0, size));
+            }
+        }
+
+        int getInt(long pos) {
+            return maps[(int) (pos / chunk)].getInt((int) (pos % chunk));
+        }
+
+        void putInt(long pos, int v) {
+            maps[(int) (pos / chunk)].putInt((int) (pos % chunk), v);
+        }
+
+        long getLong(long pos) {
+            return maps[(int) (pos / chunk)].getLong((int) (pos % chunk));
+        }
+
+        void putLong(long pos, long v) {
+            maps[(int) (pos / chunk)].putLong((int) (pos % chunk), v);
+        }
+
+        byte get(long pos) {
+            return maps[(int) (pos / chunk)].get((int) (pos % chunk));
+        }
+
+        void put(long pos, byte v) {
+            maps[(int) (pos / chunk)].put((int) (pos % chunk), v);
+        }
+
+        void get(long pos, byte[] dst) {
+            maps[(int) (pos / chunk)].get((int) (pos % chunk), dst);
+        }
+
+        void put(long pos, byte[] src) {
+            maps[(int) (pos / chunk)].put((int) (pos % chunk), src);
+        }
+
+        void force() {
+            for (MappedByteBuffer m : maps) m.force();
+        }
+    }
+}
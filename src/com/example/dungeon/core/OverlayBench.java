@@ -0,0 +1,107 @@
+package com.example.dungeon.core;
+
+import com.example.dungeon.model.Item;
+import com.example.dungeon.model.Monster;
+import com.example.dungeon.model.OverlayWorld;
+import com.example.dungeon.model.Room;
+import com.example.dungeon.model.WorldTemplate;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+// память сессий: общий шаблон с надстройками против своей копии мира у каждой.
+// каждая сессия проходит одинаковую прогулку: шаги по выходам, подбор предметов, бой.
+// живая куча меряется после полной сборки; копий создается столько, сколько помещается
+final class OverlayBench {
+    private static final long KB = 1024;
+    private static final long MB = 1024 * 1024;
+    private static final long SEED = 42;
+
+    private OverlayBench() {
+    }
+
+    static void run(PrintStream out, int sessions, int rooms, int steps) {
+        out.printf("Мир из %d комнат, %d сессий по %d шагов, куча до %d МБ%n",
+                rooms, sessions, steps, Runtime.getRuntime().maxMemory() / MB);
+        out.printf("%-12s %8s %10s %12s %14s%n", "модель", "сессий", "создан мс", "куча МБ", "на сессию КБ");
+
+        long before = usedAfterGc();
+        long t = System.nanoTime();
+        WorldTemplate template = WorldGenerator.template(rooms, SEED);
+        long buildMs = ms(t);
+        long shared = usedAfterGc() - before;
+        print(out, "шаблон", 1, buildMs, shared, shared);
+
+        List<Map<String, Room>> worlds = new ArrayList<>(sessions);
+        before = usedAfterGc();
+        t = System.nanoTime();
+        long changed = 0;
+        for (int s = 0; s < sessions; s++) {
+            OverlayWorld world = new OverlayWorld(template);
+            walk(world, steps, s);
+            changed += world.changedRooms();
+            worlds.add(world);
+        }
+        buildMs = ms(t);
+        long overlays = usedAfterGc() - before;
+        print(out, "надстройки", sessions, buildMs, overlays, overlays / sessions);
+        out.printf("  изменено комнат в среднем: %d%n", changed / sessions);
+        worlds.clear();
+
+        // сколько копий поместится, видно по первой
+        before = usedAfterGc();
+        t = System.nanoTime();
+        Map<String, Room> first = WorldGenerator.generate(rooms, SEED).rooms();
+        walk(first, steps, 0);
+        worlds.add(first);
+        long perCopy = Math.max(1, usedAfterGc() - before);
+        long available = Runtime.getRuntime().maxMemory() - before - perCopy;
+        int copies = (int) Math.max(1, Math.min(sessions, 1 + available * 2 / 3 / perCopy));
+        for (int s = 1; s < copies; s++) {
+            Map<String, Room> world = WorldGenerator.generate(rooms, SEED).rooms();
+            walk(world, steps, s);
+            worlds.add(world);
+        }
+        buildMs = ms(t);
+        long full = usedAfterGc() - before;
+        print(out, "копии", copies, buildMs, full, full / copies);
+        if (copies < sessions) {
+            out.printf("  на %d сессий копиями понадобилось бы ~%d МБ%n", sessions, full / copies * sessions / MB);
+        }
+        worlds.clear();
+    }
+
+    // та же прогулка, что у ботов: выход наугад, все предметы в карман, монстра добить
+    private static void walk(Map<String, Room> world, int steps, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        Room room = world.get(WorldGenerator.roomName(0));
+        for (int step = 0; step < steps; step++) {
+            for (Item item : room.getItems()) room.takeItem(item.getName());
+            Monster m = room.engageMonster();
+            while (m != null && room.strikeMonster(m, 5) > 0) {
+                // бьем, пока не упадет
+            }
+            List<Room> exits = List.copyOf(room.getNeighbors().values());
+            if (exits.isEmpty()) break;
+            room = exits.get(rnd.nextInt(exits.size()));
+        }
+    }
+
+    private static void print(PrintStream out, String model, int sessions, long buildMs, long bytes, long perSession) {
+        out.printf("%-12s %8d %10d %12d %14d%n", model, sessions, buildMs, Math.max(0, bytes) / MB,
+                Math.max(0, perSession) / KB);
+    }
+
+    private static long usedAfterGc() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long ms(long started) {
+        return (System.nanoTime() - started) / 1_000_000;
+    }
+}
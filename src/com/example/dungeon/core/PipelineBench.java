@@ -0,0 +1,62 @@
+package com.example.dungeon.core;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+
+// сравнение трех способов слать команды серверу по loopback:
+// по одной с ожиданием ответа, пачкой через ';' в одной строке, и конвейером
+// (много строк подряд, ответы читаются потом). сервер и клиент в этом же процессе
+final class PipelineBench {
+    private static final String[] CYCLE = {"look", "inventory", "move north", "move south"};
+
+    private PipelineBench() {
+    }
+
+    static void run(PrintStream out, int count, int batch) throws IOException {
+        GameServer server = new GameServer(0, false);
+        try (ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Thread.ofPlatform().daemon().start(() -> server.accept(socket));
+            String host = socket.getInetAddress().getHostAddress();
+            int port = socket.getLocalPort();
+            out.printf("Команд: %d, в пачке: %d, сервер на порту %d%n", count, batch, port);
+
+            // прогрев, чтобы JIT не попал в первый замер
+            measure(host, port, Math.min(count, 2_000), 1, false);
+
+            double single = measure(host, port, count, 1, false);
+            double batched = measure(host, port, count, batch, false);
+            double pipelined = measure(host, port, count, batch, true);
+            out.printf("  по одной:        %9.0f команд/с%n", single);
+            out.printf("  пачкой через ';': %9.0f команд/с (x%.1f)%n", batched, batched / single);
+            out.printf("  конвейером:      %9.0f команд/с (x%.1f)%n", pipelined, pipelined / single);
+        }
+    }
+
+    // команд в секунду; pipelined - строки по одной команде, но batch штук без ожидания ответа
+    private static double measure(String host, int port, int count, int batch, boolean pipelined) throws IOException {
+        try (GameClient client = new GameClient(host, port)) {
+            long started = System.nanoTime();
+            int sent = 0;
+            StringBuilder line = new StringBuilder();
+            while (sent < count) {
+                int n = Math.min(batch, count - sent);
+                if (pipelined) {
+                    for (int i = 0; i < n; i++) client.write(CYCLE[(sent + i) % CYCLE.length]);
+                    client.flush();
+                    for (int i = 0; i < n; i++) client.readResponse();
+                } else {
+                    line.setLength(0);
+                    for (int i = 0; i < n; i++) {
+                        if (i > 0) line.append("; ");
+                        line.append(CYCLE[(sent + i) % CYCLE.length]);
+                    }
+                    client.send(line.toString());
+                }
+                sent += n;
+            }
+            return count / ((System.nanoTime() - started) / 1e9);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.dungeon.core;
+
+import java.io.PrintStream;
+import java.util.*;
+
+// случайная книга правил и поток событий одного игрока: сеть QuestProgress против прямой проверки
+// всех правил после каждого события (как если бы условия были кодом в командах).
+// завершения обоих способов сверяются
+final class QuestBench {
+    private static final long SEED = 11;
+    private static final String[] EVENTS = {"kill", "visit", "move", "take", "use", "open"};
+    private static final int KEYS = 40; // разных ключей на событие
+
+    private QuestBench() {
+    }
+
+    static void run(PrintStream out, int ruleCount, int eventCount) {
+        List<QuestBook.Rule> rules = rules(ruleCount);
+        QuestBook book = new QuestBook(rules);
+        String[][] stream = events(eventCount);
+        out.printf("Квесты: %d правил (%d узлов сети), %d событий игрока%n", ruleCount, book.nodeCount(), eventCount);
+
+        // прогрев обоих способов на трети потока
+        String[][] warmup = Arrays.copyOf(stream, eventCount / 3);
+        incremental(book, warmup);
+        naive(rules, warmup);
+
+        long t = System.nanoTime();
+        long[] fast = incremental(book, stream);
+        long fastNanos = System.nanoTime() - t;
+        t = System.nanoTime();
+        long[] slow = naive(rules, stream);
+        long slowNanos = System.nanoTime() - t;
+
+        out.printf("%-28s %14s %12s %12s%n", "способ", "событий/с", "мкс/событие", "завершено");
+        out.printf("%-28s %14.0f %12.3f %12d%n", "проверка всех правил", eventCount * 1e9 / slowNanos,
+                slowNanos / 1e3 / eventCount, slow[0]);
+        out.printf("%-28s %14.0f %12.3f %12d%n", "сеть (инкрементально)", eventCount * 1e9 / fastNanos,
+                fastNanos / 1e3 / eventCount, fast[0]);
+        out.printf("Ускорение: %.1fx, завершения %s%n", (double) slowNanos / fastNanos,
+                fast[0] == slow[0] && fast[1] == slow[1] ? "совпадают" : "РАСХОДЯТСЯ");
+    }
+
+    // 1-3 условия: ключ (70%), любое (20%) или число разных (10%); у части правил лимит ходов
+    private static List<QuestBook.Rule> rules(int count) {
+        SplittableRandom rnd = new SplittableRandom(SEED);
+        List<QuestBook.Rule> rules = new ArrayList<>(count);
+        for (int r = 0; r < count; r++) {
+            List<QuestBook.Condition> conditions = new ArrayList<>();
+            int n = 1 + rnd.nextInt(3);
+            for (int c = 0; c < n; c++) {
+                String event = EVENTS[rnd.nextInt(EVENTS.length)];
+                int kind = rnd.nextInt(10);
+                if (kind < 7) {
+                    conditions.add(new QuestBook.Condition(event, key(rnd.nextInt(KEYS)), QuestBook.Kind.AT_LEAST, 1 + rnd.nextInt(200)));
+                } else if (kind < 9) {
+                    conditions.add(new QuestBook.Condition(event, QuestBook.ANY, QuestBook.Kind.AT_LEAST, 1 + rnd.nextInt(2000)));
+                } else {
+                    conditions.add(new QuestBook.Condition(event, "distinct", QuestBook.Kind.DISTINCT, 1 + rnd.nextInt(KEYS)));
+                }
+            }
+            if (rnd.nextInt(20) == 0) {
+                conditions.add(new QuestBook.Condition("move", QuestBook.ANY, QuestBook.Kind.AT_MOST, 500 + rnd.nextInt(5000)));
+            }
+            rules.add(new QuestBook.Rule("q" + r, 1, "квест " + r, conditions));
+        }
+        return rules;
+    }
+
+    private static String key(int i) {
+        return "k" + i;
+    }
+
+    // частые ключи встречаются чаще: квадрат равномерного
+    private static String[][] events(int count) {
+        SplittableRandom rnd = new SplittableRandom(SEED + 1);
+        String[] keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) keys[i] = key(i);
+        String[][] stream = new String[count][];
+        for (int i = 0; i < count; i++) {
+            double u = rnd.nextDouble();
+            stream[i] = new String[]{EVENTS[rnd.nextInt(EVENTS.length)], keys[(int) (u * u * KEYS)]};
+        }
+        return stream;
+    }
+
+    // [завершено, сумма (номер события, правило) - порядок внутри одного события не важен]
+    private static long[] incremental(QuestBook book, String[][] stream) {
+        QuestProgress progress = new QuestProgress(book);
+        long done = 0;
+        long check = 0;
+        for (int i = 0; i < stream.length; i++) {
+            for (QuestBook.Rule r : progress.emit(stream[i][0], stream[i][1], 1, e -> 0)) {
+                done++;
+                check += mix(i, r.id());
+            }
+        }
+        return new long[]{done, check};
+    }
+
+    private static long[] naive(List<QuestBook.Rule> rules, String[][] stream) {
+        // ключи счетчиков условий готовятся заранее, чтобы мерить проверку, а не склейку строк
+        String[][] keys = new String[rules.size()][];
+        for (int r = 0; r < keys.length; r++) {
+            keys[r] = rules.get(r).conditions().stream().map(c -> c.event() + " " + c.key()).toArray(String[]::new);
+        }
+        Map<String, Long> counts = new HashMap<>();
+        Map<String, Set<String>> seen = new HashMap<>();
+        BitSet finished = new BitSet();
+        long done = 0;
+        long check = 0;
+        for (int i = 0; i < stream.length; i++) {
+            String event = stream[i][0];
+            String key = stream[i][1];
+            counts.merge(event + " " + key, 1L, Long::sum);
+            counts.merge(event + " " + QuestBook.ANY, 1L, Long::sum);
+            seen.computeIfAbsent(event, e -> new HashSet<>()).add(key);
+            for (int r = finished.nextClearBit(0); r < rules.size(); r = finished.nextClearBit(r + 1)) {
+                int state = evaluate(rules.get(r), keys[r], counts, seen);
+                if (state == 0) continue;
+                finished.set(r);
+                if (state > 0) {
+                    done++;
+                    check += mix(i, rules.get(r).id());
+                }
+            }
+        }
+        return new long[]{done, check};
+    }
+
+    // 1 - выполнено, -1 - лимит нарушен навсегда, 0 - еще нет
+    private static int evaluate(QuestBook.Rule rule, String[] keys, Map<String, Long> counts, Map<String, Set<String>> seen) {
+        boolean all = true;
+        List<QuestBook.Condition> conditions = rule.conditions();
+        for (int i = 0; i < keys.length; i++) {
+            QuestBook.Condition c = conditions.get(i);
+            long n = c.kind() == QuestBook.Kind.DISTINCT
+                    ? seen.getOrDefault(c.event(), Set.of()).size()
+                    : counts.getOrDefault(keys[i], 0L);
+            if (c.kind() == QuestBook.Kind.AT_MOST) {
+                if (n > c.target()) return -1;
+            } else if (n < c.target()) {
+                all = false;
+            }
+        }
+        return all ? 1 : 0;
+    }
+
+    private static long mix(int event, String id) {
+        long h = (event + 1L) * 0x9E3779B97F4A7C15L ^ id.hashCode();
+        return h ^ (h >>> 29);
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.dungeon.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// квесты и достижения, заданные строками (см. STANDARD), скомпилированные в сеть по образцу Rete.
+// альфа-узел - счетчик одного образца события: (kill, Волк), (kill, *) или число разных ключей visit.
+// узлы общие: сто правил про волков - один счетчик. пороги условий узла отсортированы,
+// так что событие продвигает курсор только через пороги, которые оно пересекло.
+// бета-часть - счетчик выполненных условий правила. сеть неизменяема и одна на процесс,
+// ход игрока по ней хранит QuestProgress
+final class QuestBook {
+    static final String PROPERTY = "dungeon.quests"; // файл с дополнительными правилами
+    static final String ANY = "*";
+    static final int ALL = -1; // порог "все": комнаты, двери, монстры или предметы текущего мира
+    // событие - игроку; quest - завершение другого правила, из него строятся цепочки
+    static final Set<String> EVENTS = Set.of("kill", "visit", "move", "open", "take", "use", "raid", "quest");
+
+    // id | очки | название | условие; условие...
+    // условие: <событие> <ключ|*> >= <n|all>, <событие> distinct >= <n|all>, <событие> <ключ|*> <= <n>
+    static final List<String> STANDARD = List.of(
+            "first-blood | 5 | Первая кровь | kill * >= 1",
+            "wolf-slayer | 15 | Гроза волков | kill Волк >= 3",
+            "monster-hunter | 30 | Охотник на монстров | kill * >= all",
+            "collector | 10 | Собиратель | take * >= 3",
+            "key-master | 20 | Ключник | open * >= all",
+            "explorer | 15 | Исследователь | visit distinct >= all",
+            "pathfinder | 40 | Следопыт | visit distinct >= all; move * <= 6",
+            "raider | 25 | Полководец | raid победа >= 1",
+            "veteran | 50 | Ветеран | quest first-blood >= 1; quest explorer >= 1; kill * >= 10");
+
+    private static QuestBook standard;
+
+    enum Kind { AT_LEAST, DISTINCT, AT_MOST }
+
+    record Condition(String event, String key, Kind kind, int target) {
+    }
+
+    record Rule(String id, int reward, String title, List<Condition> conditions) {
+    }
+
+    // пороги одного узла: условия "не меньше" по возрастанию, "не больше" - отдельно, "все" - списком
+    static final class Node {
+        final String event;
+        final String key; // ANY - любое; null - число разных ключей
+        int[] atLeast = new int[0];
+        int[] atLeastRule = new int[0];
+        int[] atMost = new int[0];
+        int[] atMostRule = new int[0];
+        int[] allRule = new int[0];
+        int allFrom; // номер первого условия "все" этого узла в сквозной нумерации
+
+        private Node(String event, String key) {
+            this.event = event;
+            this.key = key;
+        }
+    }
+
+    private final Rule[] rules;
+    private final int[] needed; // условий "не меньше" у правила
+    private final Node[] nodes;
+    private final Map<String, Map<String, Integer>> byKey = new HashMap<>(); // событие -> ключ -> узел
+    private final Map<String, Integer> byAny = new HashMap<>();
+    private final Map<String, Integer> byDistinct = new HashMap<>();
+
+    QuestBook(List<Rule> rules) {
+        this.rules = rules.toArray(new Rule[0]);
+        this.needed = new int[this.rules.length];
+        List<Node> nodes = new ArrayList<>();
+        // пороги собираются списками, потом сортируются в массивы
+        Map<Node, List<int[]>> atLeast = new IdentityHashMap<>();
+        Map<Node, List<int[]>> atMost = new IdentityHashMap<>();
+        Map<Node, List<Integer>> all = new IdentityHashMap<>();
+        Set<String> ids = new HashSet<>();
+        for (int r = 0; r < this.rules.length; r++) {
+            Rule rule = this.rules[r];
+            if (!ids.add(rule.id())) throw new IllegalArgumentException("Правило задано дважды: " + rule.id());
+            for (Condition c : rule.conditions()) {
+                Node node = nodes.get(node(nodes, c.event(), c.kind() == Kind.DISTINCT ? null : c.key()));
+                if (c.kind() == Kind.AT_MOST) {
+                    atMost.computeIfAbsent(node, k -> new ArrayList<>()).add(new int[]{c.target(), r});
+                    continue;
+                }
+                needed[r]++;
+                if (c.target() == ALL) {
+                    all.computeIfAbsent(node, k -> new ArrayList<>()).add(r);
+                } else {
+                    atLeast.computeIfAbsent(node, k -> new ArrayList<>()).add(new int[]{c.target(), r});
+                }
+            }
+            if (needed[r] == 0) throw new IllegalArgumentException("У правила " + rule.id() + " нет цели, только ограничения");
+        }
+        int allFrom = 0;
+        for (Node node : nodes) {
+            List<int[]> min = atLeast.getOrDefault(node, new ArrayList<>());
+            min.sort(Comparator.comparingInt(t -> t[0]));
+            node.atLeast = min.stream().mapToInt(t -> t[0]).toArray();
+            node.atLeastRule = min.stream().mapToInt(t -> t[1]).toArray();
+            List<int[]> max = atMost.getOrDefault(node, new ArrayList<>());
+            max.sort(Comparator.comparingInt(t -> t[0]));
+            node.atMost = max.stream().mapToInt(t -> t[0]).toArray();
+            node.atMostRule = max.stream().mapToInt(t -> t[1]).toArray();
+            node.allRule = all.getOrDefault(node, List.of()).stream().mapToInt(Integer::intValue).toArray();
+            node.allFrom = allFrom;
+            allFrom += node.allRule.length;
+        }
+        this.nodes = nodes.toArray(new Node[0]);
+    }
+
+    private int node(List<Node> nodes, String event, String key) {
+        Map<String, Integer> index = key == null ? byDistinct
+                : ANY.equals(key) ? byAny
+                : byKey.computeIfAbsent(event, e -> new HashMap<>());
+        String k = key == null || ANY.equals(key) ? event : key;
+        return index.computeIfAbsent(k, x -> {
+            nodes.add(new Node(event, key));
+            return nodes.size() - 1;
+        });
+    }
+
+    // стандартные правила и правила из -Ddungeon.quests; правило файла с тем же id заменяет стандартное
+    static synchronized QuestBook standard() {
+        if (standard == null) {
+            Map<String, Rule> rules = new LinkedHashMap<>();
+            for (Rule r : parse(STANDARD)) rules.put(r.id(), r);
+            String file = System.getProperty(PROPERTY);
+            if (file != null) {
+                try {
+                    for (Rule r : parse(Files.readAllLines(Path.of(file), StandardCharsets.UTF_8))) rules.put(r.id(), r);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Не удалось прочитать квесты " + file, e);
+                }
+            }
+            standard = new QuestBook(new ArrayList<>(rules.values()));
+        }
+        return standard;
+    }
+
+    static List<Rule> parse(List<String> lines) {
+        List<Rule> rules = new ArrayList<>();
+        for (int n = 0; n < lines.size(); n++) {
+            String line = lines.get(n).strip();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            try {
+                rules.add(parseRule(line));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Квест, строка " + (n + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return rules;
+    }
+
+    private static Rule parseRule(String line) {
+        String[] parts = line.split("\\|");
+        if (parts.length != 4) throw new IllegalArgumentException("нужно 'id | очки | название | условия': " + line);
+        String id = parts[0].strip();
+        if (id.isEmpty() || id.contains(" ")) throw new IllegalArgumentException("плохой id: '" + id + "'");
+        List<Condition> conditions = new ArrayList<>();
+        for (String c : parts[3].split(";")) {
+            if (!c.isBlank()) conditions.add(parseCondition(c.strip()));
+        }
+        return new Rule(id, Integer.parseInt(parts[1].strip()), parts[2].strip(), List.copyOf(conditions));
+    }
+
+    private static Condition parseCondition(String text) {
+        String[] t = text.split("\\s+");
+        if (t.length < 4) throw new IllegalArgumentException("нужно '<событие> <ключ> >=|<= <n>': " + text);
+        String event = t[0];
+        if (!EVENTS.contains(event)) throw new IllegalArgumentException("неизвестное событие " + event + ", есть " + EVENTS);
+        String key = String.join(" ", Arrays.asList(t).subList(1, t.length - 2));
+        String op = t[t.length - 2];
+        String target = t[t.length - 1];
+        int n = "all".equals(target) ? ALL : Integer.parseInt(target);
+        if (n < 0 && n != ALL) throw new IllegalArgumentException("отрицательный порог: " + text);
+        Kind kind = switch (op) {
+            case ">=" -> "distinct".equals(key) ? Kind.DISTINCT : Kind.AT_LEAST;
+            case "<=" -> Kind.AT_MOST;
+            default -> throw new IllegalArgumentException("неизвестное сравнение " + op + ": " + text);
+        };
+        if (kind == Kind.AT_MOST && (n == ALL || "distinct".equals(key))) {
+            throw new IllegalArgumentException("ограничение задается числом событий: " + text);
+        }
+        return new Condition(event, key, kind, n);
+    }
+
+    int ruleCount() {
+        return rules.length;
+    }
+
+    Rule rule(int r) {
+        return rules[r];
+    }
+
+    int needed(int r) {
+        return needed[r];
+    }
+
+    int nodeCount() {
+        return nodes.length;
+    }
+
+    Node node(int i) {
+        return nodes[i];
+    }
+
+    // узлы, которые задевает событие; -1 - такого узла нет
+    int keyNode(String event, String key) {
+        Map<String, Integer> keys = byKey.get(event);
+        Integer i = keys == null ? null : keys.get(key);
+        return i == null ? -1 : i;
+    }
+
+    int anyNode(String event) {
+        return byAny.getOrDefault(event, -1);
+    }
+
+    int distinctNode(String event) {
+        return byDistinct.getOrDefault(event, -1);
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.dungeon.core;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+// ход одного игрока по сети QuestBook: счетчики узлов, курсоры порогов, выполненные условия правил.
+// событие стоит O(задетых узлов + пересеченных порогов + условий "все" этих узлов),
+// а не O(правил): правила, которых событие не касается, не просматриваются вовсе.
+// прогресс живет с сессией, как макросы: save/load и undo его не откатывают, достижение не выдается дважды.
+// поэтому и награда идет отдельным итогом (GameState.addReward), который откат счета не снимает
+final class QuestProgress {
+    private final QuestBook book;
+    private final long[] counts;
+    private final Set<?>[] seen; // ключи узлов distinct, создаются при первом событии
+    private final int[] reached; // курсор по atLeast узла: пороги до него пройдены
+    private final int[] exceeded; // курсор по atMost узла: ограничения до него нарушены
+    private final BitSet allMet = new BitSet();
+    private final int[] met; // выполненных условий правила
+    private final BitSet done = new BitSet();
+    private final BitSet failed = new BitSet();
+    private final ArrayDeque<String> chained = new ArrayDeque<>(); // id завершенных правил - события quest
+    private long events;
+
+    QuestProgress(QuestBook book) {
+        this.book = book;
+        counts = new long[book.nodeCount()];
+        seen = new Set<?>[book.nodeCount()];
+        reached = new int[book.nodeCount()];
+        exceeded = new int[book.nodeCount()];
+        met = new int[book.ruleCount()];
+    }
+
+    QuestBook book() {
+        return book;
+    }
+
+    // totals: сколько всего в мире того, к чему относится событие (для порогов all); <= 0 - неизвестно.
+    // возвращает правила, завершенные этим событием и цепочками от него, в порядке завершения
+    List<QuestBook.Rule> emit(String event, String key, int amount, ToIntFunction<String> totals) {
+        List<QuestBook.Rule> completed = new ArrayList<>(0);
+        apply(event, key, amount, totals, completed);
+        while (!chained.isEmpty()) apply("quest", chained.poll(), 1, totals, completed);
+        return completed;
+    }
+
+    // сначала счетчики и ограничения всех задетых узлов, потом цели: ход, нарушивший лимит
+    // одного узла, не должен успеть засчитаться в цель другого
+    private void apply(String event, String key, int amount, ToIntFunction<String> totals, List<QuestBook.Rule> completed) {
+        events++;
+        int byKey = book.keyNode(event, key);
+        int byAny = book.anyNode(event);
+        int distinct = book.distinctNode(event);
+        if (distinct >= 0 && !see(distinct, key)) distinct = -1; // ключ уже встречался
+        if (byKey >= 0) count(byKey, amount);
+        if (byAny >= 0) count(byAny, amount);
+        if (distinct >= 0) count(distinct, 1);
+        if (byKey >= 0) reach(byKey, totals, completed);
+        if (byAny >= 0) reach(byAny, totals, completed);
+        if (distinct >= 0) reach(distinct, totals, completed);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean see(int n, String key) {
+        Set<String> keys = (Set<String>) seen[n];
+        if (keys == null) seen[n] = keys = new HashSet<>();
+        return keys.add(key);
+    }
+
+    private void count(int n, int amount) {
+        QuestBook.Node node = book.node(n);
+        long count = counts[n] += amount;
+        int[] atMost = node.atMost;
+        int i = exceeded[n];
+        while (i < atMost.length && count > atMost[i]) failed.set(node.atMostRule[i++]);
+        exceeded[n] = i;
+    }
+
+    private void reach(int n, ToIntFunction<String> totals, List<QuestBook.Rule> completed) {
+        QuestBook.Node node = book.node(n);
+        long count = counts[n];
+        int[] atLeast = node.atLeast;
+        int i = reached[n];
+        while (i < atLeast.length && count >= atLeast[i]) meet(node.atLeastRule[i++], completed);
+        reached[n] = i;
+
+        int[] all = node.allRule;
+        if (all.length > 0) {
+            int total = totals.applyAsInt(node.event);
+            if (total > 0 && count >= total) {
+                for (int k = 0; k < all.length; k++) {
+                    if (!allMet.get(node.allFrom + k)) {
+                        allMet.set(node.allFrom + k);
+                        meet(all[k], completed);
+                    }
+                }
+            }
+        }
+    }
+
+    private void meet(int r, List<QuestBook.Rule> completed) {
+        if (++met[r] < book.needed(r) || failed.get(r) || done.get(r)) return;
+        done.set(r);
+        QuestBook.Rule rule = book.rule(r);
+        completed.add(rule);
+        chained.add(rule.id());
+    }
+
+    boolean isDone(int r) {
+        return done.get(r);
+    }
+
+    boolean isFailed(int r) {
+        return failed.get(r);
+    }
+
+    int doneCount() {
+        return done.cardinality();
+    }
+
+    long events() {
+        return events;
+    }
+
+    // "3/10" по каждому условию правила; для all - от текущего мира
+    String describe(int r, ToIntFunction<String> totals) {
+        QuestBook.Rule rule = book.rule(r);
+        StringJoiner parts = new StringJoiner(", ");
+        for (QuestBook.Condition c : rule.conditions()) {
+            int n = c.kind() == QuestBook.Kind.DISTINCT ? book.distinctNode(c.event())
+                    : QuestBook.ANY.equals(c.key()) ? book.anyNode(c.event()) : book.keyNode(c.event(), c.key());
+            long count = counts[n];
+            String target = c.target() == QuestBook.ALL ? String.valueOf(Math.max(0, totals.applyAsInt(c.event())))
+                    : String.valueOf(c.target());
+            String what = c.event() + (c.kind() == QuestBook.Kind.DISTINCT ? " (разных)"
+                    : QuestBook.ANY.equals(c.key()) ? "" : " " + c.key());
+            parts.add(what + (c.kind() == QuestBook.Kind.AT_MOST ? " " + count + " из не более " : " " + count + "/") + target);
+        }
+        return parts.toString();
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.dungeon.core;
+
+import com.example.dungeon.model.Player;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// рейд: сотни героев против тысяч монстров в одной комнате. бойцы - не объекты, а столбцы
+// int[] (HP, атака, броня), раунд - несколько сплошных проходов по массивам:
+// стенка на стенку - герой i бьет монстра i, тот отвечает ему же; лишние герои
+// встают к тем же монстрам по второму кругу, лишние монстры ждут в задних рядах.
+// удары одновременные: урон считается от состояния до раунда. павшие вычеркиваются
+// со сдвигом, порядок выживших сохраняется: место павшего занимает следующий из задних рядов.
+// игрок - последний герой, в строй он встает, когда впереди никого не останется
+final class Raid {
+    static final int MAX_ROUNDS = 100_000; // дальше - ничья
+
+    private final RaidKernel kernel;
+    private final int[] heroHp;
+    private final int[] heroAttack;
+    private final int[] heroArmor; // у героев брони нет, нули для общего strike
+    private final int[] monsterHp;
+    private final int[] monsterAttack;
+    private final int[] monsterArmor;
+    private final int[] monsterLevel; // опыт за победу
+    private final int[] toMonsters;
+    private final int[] toHeroes;
+    private int heroes;
+    private int monsters;
+    private int round;
+    private boolean playerAlive;
+    private long experience;
+    private long entityRounds; // живых бойцов, сложенных по раундам
+
+    private Raid(RaidKernel kernel, int heroes, int monsters) {
+        this.kernel = kernel;
+        this.heroes = heroes;
+        this.monsters = monsters;
+        heroHp = new int[heroes];
+        heroAttack = new int[heroes];
+        heroArmor = new int[heroes];
+        monsterHp = new int[monsters];
+        monsterAttack = new int[monsters];
+        monsterArmor = new int[monsters];
+        monsterLevel = new int[monsters];
+        toMonsters = new int[monsters];
+        toHeroes = new int[heroes];
+    }
+
+    // игрок (если есть) - последний герой, остальные - союзники из таверны
+    static Raid spawn(RaidKernel kernel, Player player, int heroes, int monsters, int maxLevel, long seed) {
+        Raid r = new Raid(kernel, heroes, monsters);
+        SplittableRandom rnd = new SplittableRandom(seed);
+        for (int i = 0; i < heroes; i++) {
+            r.heroHp[i] = 40 + rnd.nextInt(21);
+            r.heroAttack[i] = 4 + rnd.nextInt(5);
+        }
+        if (player != null) {
+            r.heroHp[heroes - 1] = Math.max(1, player.getHp());
+            r.heroAttack[heroes - 1] = player.getAttack();
+            r.playerAlive = true;
+        }
+        for (int j = 0; j < monsters; j++) {
+            int level = 1 + rnd.nextInt(maxLevel);
+            r.monsterLevel[j] = level;
+            r.monsterHp[j] = level * 5;
+            r.monsterAttack[j] = level;
+            r.monsterArmor[j] = level - 1;
+        }
+        return r;
+    }
+
+    // один раунд; false - рейд окончен
+    boolean round() {
+        if (isOver()) return false;
+        round++;
+        entityRounds += heroes + monsters;
+        Arrays.fill(toMonsters, 0, monsters, 0);
+        Arrays.fill(toHeroes, 0, heroes, 0);
+        // герой i бьет монстра i % monsters
+        for (int from = 0; from < heroes; from += monsters) {
+            kernel.accumulate(toMonsters, 0, heroAttack, from, Math.min(monsters, heroes - from));
+        }
+        // первые монстры отвечают героям напротив
+        kernel.accumulate(toHeroes, 0, monsterAttack, 0, Math.min(heroes, monsters));
+
+        int fallenMonsters = kernel.strike(monsterHp, toMonsters, monsterArmor, monsters);
+        int fallenHeroes = kernel.strike(heroHp, toHeroes, heroArmor, heroes);
+        if (playerAlive && heroHp[heroes - 1] == 0) playerAlive = false;
+        if (fallenMonsters > 0) removeFallenMonsters();
+        if (fallenHeroes > 0) removeFallenHeroes();
+        return !isOver();
+    }
+
+    private void removeFallenMonsters() {
+        int alive = 0;
+        for (int j = 0; j < monsters; j++) {
+            if (monsterHp[j] == 0) {
+                experience += monsterLevel[j];
+                continue;
+            }
+            monsterHp[alive] = monsterHp[j];
+            monsterAttack[alive] = monsterAttack[j];
+            monsterArmor[alive] = monsterArmor[j];
+            monsterLevel[alive] = monsterLevel[j];
+            alive++;
+        }
+        monsters = alive;
+    }
+
+    private void removeFallenHeroes() {
+        int alive = 0;
+        for (int i = 0; i < heroes; i++) {
+            if (heroHp[i] == 0) continue;
+            heroHp[alive] = heroHp[i];
+            heroAttack[alive] = heroAttack[i];
+            alive++;
+        }
+        heroes = alive;
+    }
+
+    boolean isOver() {
+        return heroes == 0 || monsters == 0 || round >= MAX_ROUNDS;
+    }
+
+    int heroes() {
+        return heroes;
+    }
+
+    int monsters() {
+        return monsters;
+    }
+
+    int rounds() {
+        return round;
+    }
+
+    long entityRounds() {
+        return entityRounds;
+    }
+
+    long experience() {
+        return experience;
+    }
+
+    boolean isPlayerAlive() {
+        return playerAlive;
+    }
+
+    // HP игрока после рейда; 0 - пал
+    int playerHp() {
+        return playerAlive ? heroHp[heroes - 1] : 0;
+    }
+
+    // суммарное HP сторон: сверка реализаций в бенчмарке
+    long checksum() {
+        long sum = 0;
+        for (int i = 0; i < heroes; i++) sum = sum * 31 + heroHp[i];
+        for (int j = 0; j < monsters; j++) sum = sum * 31 + monsterHp[j];
+        return sum;
+    }
+}
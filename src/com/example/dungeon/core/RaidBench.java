@@ -0,0 +1,184 @@
+package com.example.dungeon.core;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// рейд тремя способами на одних и тех же бойцах: объект на бойца со списками (как обычный бой),
+// столбцы int[] со скалярным циклом и с Vector API. итоги всех трех сверяются.
+// каждый способ гоняет рейды заново, пока не наберет заданное время
+final class RaidBench {
+    private static final long SEED = 7;
+    private static final int MAX_LEVEL = 3;
+    private static final long BUDGET_NANOS = 2_000_000_000L;
+
+    private RaidBench() {
+    }
+
+    private interface Arena {
+        boolean round();
+
+        int rounds();
+
+        long entityRounds();
+
+        long checksum();
+    }
+
+    static void run(PrintStream out, int heroes, int monsters) {
+        RaidKernel vector = RaidKernel.best();
+        out.printf("Рейд: %d героев против %d монстров, по %d с на способ%n", heroes, monsters, BUDGET_NANOS / 1_000_000_000L);
+        if (vector == RaidKernel.Scalar.INSTANCE) {
+            out.println("Vector API недоступен (нужен --add-modules " + RaidKernel.VECTOR_MODULE + "), сравниваются два способа");
+        }
+
+        Arena naive = new Naive(heroes, monsters);
+        Arena scalar = arrays(RaidKernel.Scalar.INSTANCE, heroes, monsters);
+        play(naive);
+        play(scalar);
+        boolean same = naive.rounds() == scalar.rounds() && naive.checksum() == scalar.checksum();
+        if (vector != RaidKernel.Scalar.INSTANCE) {
+            Arena v = arrays(vector, heroes, monsters);
+            play(v);
+            same &= v.rounds() == scalar.rounds() && v.checksum() == scalar.checksum();
+        }
+        out.printf("Раундов в рейде: %d, в среднем бойцов за раунд: %d, итоги %s%n", scalar.rounds(),
+                scalar.entityRounds() / Math.max(1, scalar.rounds()), same ? "совпадают" : "РАСХОДЯТСЯ");
+
+        out.printf("%-32s %12s %16s %10s%n", "способ", "раундов/с", "бойцов/с, млн", "ускорение");
+        double base = measure(out, "объекты", () -> new Naive(heroes, monsters), 0);
+        measure(out, "массивы, скалярно", () -> arrays(RaidKernel.Scalar.INSTANCE, heroes, monsters), base);
+        if (vector != RaidKernel.Scalar.INSTANCE) {
+            measure(out, "массивы, " + vector.name(), () -> arrays(vector, heroes, monsters), base);
+        }
+    }
+
+    private interface Factory {
+        Arena create();
+    }
+
+    // сначала прогрев тем же кодом, потом замер
+    private static double measure(PrintStream out, String title, Factory factory, double base) {
+        for (int i = 0; i < 3; i++) play(factory.create());
+        long rounds = 0;
+        long entities = 0;
+        long spent = 0;
+        while (spent < BUDGET_NANOS) {
+            Arena a = factory.create();
+            long t = System.nanoTime();
+            play(a);
+            spent += System.nanoTime() - t;
+            rounds += a.rounds();
+            entities += a.entityRounds();
+        }
+        double perSecond = rounds * 1e9 / spent;
+        out.printf("%-32s %12.0f %16.1f %10s%n", title, perSecond, entities * 1e3 / spent,
+                base == 0 ? "1.0x" : String.format("%.1fx", perSecond / base));
+        return perSecond;
+    }
+
+    private static void play(Arena a) {
+        while (a.round()) {
+            // до конца рейда
+        }
+    }
+
+    private static Arena arrays(RaidKernel kernel, int heroes, int monsters) {
+        Raid raid = Raid.spawn(kernel, null, heroes, monsters, MAX_LEVEL, SEED);
+        return new Arena() {
+            @Override
+            public boolean round() {
+                return raid.round();
+            }
+
+            @Override
+            public int rounds() {
+                return raid.rounds();
+            }
+
+            @Override
+            public long entityRounds() {
+                return raid.entityRounds();
+            }
+
+            @Override
+            public long checksum() {
+                return raid.checksum();
+            }
+        };
+    }
+
+    private static final class Fighter {
+        int hp;
+        final int attack;
+        final int armor;
+        int incoming;
+
+        Fighter(int hp, int attack, int armor) {
+            this.hp = hp;
+            this.attack = attack;
+            this.armor = armor;
+        }
+    }
+
+    // те же правила, что у Raid, но по объекту на бойца
+    private static final class Naive implements Arena {
+        private final List<Fighter> heroes = new ArrayList<>();
+        private final List<Fighter> monsters = new ArrayList<>();
+        private int round;
+        private long entityRounds;
+
+        Naive(int heroCount, int monsterCount) {
+            SplittableRandom rnd = new SplittableRandom(SEED);
+            for (int i = 0; i < heroCount; i++) {
+                int hp = 40 + rnd.nextInt(21);
+                heroes.add(new Fighter(hp, 4 + rnd.nextInt(5), 0));
+            }
+            for (int j = 0; j < monsterCount; j++) {
+                int level = 1 + rnd.nextInt(MAX_LEVEL);
+                monsters.add(new Fighter(level * 5, level, level - 1));
+            }
+        }
+
+        @Override
+        public boolean round() {
+            if (heroes.isEmpty() || monsters.isEmpty() || round >= Raid.MAX_ROUNDS) return false;
+            round++;
+            int h = heroes.size();
+            int m = monsters.size();
+            entityRounds += h + m;
+            for (Fighter f : heroes) f.incoming = 0;
+            for (Fighter f : monsters) f.incoming = 0;
+            for (int i = 0; i < h; i++) monsters.get(i % m).incoming += heroes.get(i).attack;
+            for (int i = 0; i < Math.min(h, m); i++) heroes.get(i).incoming += monsters.get(i).attack;
+            for (Fighter f : monsters) strike(f);
+            for (Fighter f : heroes) strike(f);
+            monsters.removeIf(f -> f.hp == 0);
+            heroes.removeIf(f -> f.hp == 0);
+            return !heroes.isEmpty() && !monsters.isEmpty() && round < Raid.MAX_ROUNDS;
+        }
+
+        private static void strike(Fighter f) {
+            if (f.incoming > 0) f.hp = Math.max(0, f.hp - Math.max(1, f.incoming - f.armor));
+        }
+
+        @Override
+        public int rounds() {
+            return round;
+        }
+
+        @Override
+        public long entityRounds() {
+            return entityRounds;
+        }
+
+        @Override
+        public long checksum() {
+            long sum = 0;
+            for (Fighter f : heroes) sum = sum * 31 + f.hp;
+            for (Fighter f : monsters) sum = sum * 31 + f.hp;
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.dungeon.core;
+
+// массовые операции раунда рейда над массивами. векторная версия (RaidVectorKernel)
+// берется, если JVM запущена с --add-modules jdk.incubator.vector; иначе - скалярная.
+// -Ddungeon.raid.scalar=true - принудительно скалярная
+interface RaidKernel {
+    String VECTOR_MODULE = "jdk.incubator.vector";
+
+    // dst[dstFrom + k] += src[srcFrom + k], k < len
+    void accumulate(int[] dst, int dstFrom, int[] src, int srcFrom, int len);
+
+    // удары раунда: урон max(1, incoming - armor), если по бойцу били; HP не ниже нуля.
+    // возвращает, сколько бойцов упало
+    int strike(int[] hp, int[] incoming, int[] armor, int n);
+
+    String name();
+
+    static RaidKernel best() {
+        if (Boolean.getBoolean("dungeon.raid.scalar") || ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return Scalar.INSTANCE;
+        }
+        try {
+            return (RaidKernel) Class.forName("com.example.dungeon.core.RaidVectorKernel")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return Scalar.INSTANCE; // собрано без модуля
+        }
+    }
+
+    final class Scalar implements RaidKernel {
+        static final Scalar INSTANCE = new Scalar();
+
+        private Scalar() {
+        }
+
+        @Override
+        public void accumulate(int[] dst, int dstFrom, int[] src, int srcFrom, int len) {
+            for (int k = 0; k < len; k++) dst[dstFrom + k] += src[srcFrom + k];
+        }
+
+        @Override
+        public int strike(int[] hp, int[] incoming, int[] armor, int n) {
+            int fallen = 0;
+            for (int k = 0; k < n; k++) {
+                int in = incoming[k];
+                if (in <= 0) continue;
+                int h = Math.max(0, hp[k] - Math.max(1, in - armor[k]));
+                hp[k] = h;
+                if (h == 0) fallen++;
+            }
+            return fallen;
+        }
+
+        @Override
+        public String name() {
+            return "скалярное";
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.dungeon.core;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// раунд рейда на Vector API: по ширине регистра машины (AVX2 - 8 бойцов, AVX-512 - 16),
+// хвост короче вектора - скалярно. класс загружается только через RaidKernel.best()
+final class RaidVectorKernel implements RaidKernel {
+    private static final VectorSpecies<Integer> S = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public void accumulate(int[] dst, int dstFrom, int[] src, int srcFrom, int len) {
+        int k = 0;
+        for (int bound = S.loopBound(len); k < bound; k += S.length()) {
+            IntVector.fromArray(S, dst, dstFrom + k)
+                    .add(IntVector.fromArray(S, src, srcFrom + k))
+                    .intoArray(dst, dstFrom + k);
+        }
+        for (; k < len; k++) dst[dstFrom + k] += src[srcFrom + k];
+    }
+
+    @Override
+    public int strike(int[] hp, int[] incoming, int[] armor, int n) {
+        int fallen = 0;
+        int k = 0;
+        for (int bound = S.loopBound(n); k < bound; k += S.length()) {
+            IntVector in = IntVector.fromArray(S, incoming, k);
+            VectorMask<Integer> hit = in.compare(VectorOperators.GT, 0);
+            if (!hit.anyTrue()) continue;
+            IntVector damage = in.sub(IntVector.fromArray(S, armor, k)).max(1);
+            IntVector h = IntVector.fromArray(S, hp, k);
+            IntVector left = h.sub(damage).max(0);
+            left.intoArray(hp, k, hit);
+            fallen += left.compare(VectorOperators.EQ, 0).and(hit).trueCount();
+        }
+        for (; k < n; k++) {
+            int in = incoming[k];
+            if (in <= 0) continue;
+            int h = Math.max(0, hp[k] - Math.max(1, in - armor[k]));
+            hp[k] = h;
+            if (h == 0) fallen++;
+        }
+        return fallen;
+    }
+
+    @Override
+    public String name() {
+        return "векторное, " + S.length() + " x int";
+    }
+}
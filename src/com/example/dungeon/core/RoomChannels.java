@@ -0,0 +1,220 @@
+package com.example.dungeon.core;
+
+import com.example.dungeon.model.Room;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// каналы комнат общего мира: сообщение уходит только тем, кто стоит в комнате, а не всем сессиям.
+// у подписчика своя ограниченная очередь; переполнение решает политика:
+// drop-oldest (по умолчанию) - вытеснить самое старое, drop-newest - не класть новое,
+// block - публикующий ждет место, но на всю рассылку не дольше BLOCK_MILLIS; после срока
+// полные очереди вытесняют старое, как drop-oldest. публикующий держит блокировку своей игры,
+// поэтому срок общий на всех подписчиков, а не на каждого.
+// медленный клиент так теряет сообщения сам, а не тормозит комнату
+final class RoomChannels {
+    // -Ddungeon.chat.queue=<сообщений в очереди>, -Ddungeon.chat.overflow=drop-oldest|drop-newest|block
+    private static final String QUEUE_PROPERTY = "dungeon.chat.queue";
+    private static final String OVERFLOW_PROPERTY = "dungeon.chat.overflow";
+    static final long BLOCK_MILLIS = 50;
+
+    enum Overflow { DROP_OLDEST, DROP_NEWEST, BLOCK }
+
+    private final Map<Room, Set<Inbox>> rooms = new ConcurrentHashMap<>(); // Room сравнивается по ссылке
+    private final int capacity;
+    private final Overflow overflow;
+    private final LongAdder published = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    RoomChannels() {
+        this(Integer.getInteger(QUEUE_PROPERTY, 64),
+                Overflow.valueOf(System.getProperty(OVERFLOW_PROPERTY, "drop-oldest").toUpperCase(Locale.ROOT).replace('-', '_')));
+    }
+
+    RoomChannels(int capacity, Overflow overflow) {
+        if (capacity < 1) throw new IllegalArgumentException("Очередь подписчика должна вмещать хотя бы одно сообщение");
+        this.capacity = capacity;
+        this.overflow = overflow;
+    }
+
+    // очередь одной сессии; в канале не больше одной комнаты за раз
+    final class Inbox {
+        private final String[] ring = new String[capacity];
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Condition notFull = lock.newCondition();
+        private int head;
+        private int size;
+        private long lost; // с прошлой выдачи
+        private boolean closed;
+        private volatile Room room;
+
+        Room room() {
+            return room;
+        }
+
+        boolean offer(String message) {
+            return offer(message, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BLOCK_MILLIS));
+        }
+
+        // deadline - System.nanoTime(), до которого block ждет место
+        boolean offer(String message, long deadline) {
+            lock.lock();
+            try {
+                if (closed) return false;
+                if (size == ring.length) {
+                    switch (overflow) {
+                        case DROP_NEWEST -> {
+                            return lose();
+                        }
+                        case DROP_OLDEST -> dropOldest();
+                        case BLOCK -> {
+                            long nanos = deadline - System.nanoTime();
+                            while (size == ring.length && !closed && nanos > 0) nanos = notFull.awaitNanos(nanos);
+                            if (closed) return lose();
+                            if (size == ring.length) dropOldest(); // срок рассылки вышел
+                        }
+                    }
+                }
+                ring[(head + size) % ring.length] = message;
+                size++;
+                notEmpty.signal();
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return lose();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void dropOldest() {
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+            size--;
+            lose();
+        }
+
+        private boolean lose() {
+            lost++;
+            dropped.increment();
+            return false;
+        }
+
+        // ждет сообщение; null - очередь закрыта. о потерянных сообщениях сообщает отдельной строкой
+        String take() throws InterruptedException {
+            lock.lock();
+            try {
+                while (size == 0 && lost == 0 && !closed) notEmpty.await();
+                if (lost > 0) {
+                    String note = "(пропущено сообщений: " + lost + ")";
+                    lost = 0;
+                    return note;
+                }
+                if (size == 0) return null;
+                String message = ring[head];
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                size--;
+                notFull.signal();
+                delivered.increment();
+                return message;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void close() {
+            lock.lock();
+            try {
+                closed = true;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    Inbox open(Room room) {
+        Inbox inbox = new Inbox();
+        enter(inbox, room);
+        return inbox;
+    }
+
+    // переход в другую комнату: из старого канала вон, в новый
+    void enter(Inbox inbox, Room room) {
+        Room old = inbox.room;
+        if (old == room) return;
+        if (old != null) leave(old, inbox);
+        inbox.room = room;
+        if (room != null) rooms.computeIfAbsent(room, r -> ConcurrentHashMap.newKeySet()).add(inbox);
+    }
+
+    void close(Inbox inbox) {
+        Room old = inbox.room;
+        inbox.room = null;
+        if (old != null) leave(old, inbox);
+        inbox.close();
+    }
+
+    private void leave(Room room, Inbox inbox) {
+        // пустой канал не удаляется: вход-выход в одну комнату не пересоздает множество
+        Set<Inbox> subscribers = rooms.get(room);
+        if (subscribers != null) subscribers.remove(inbox);
+    }
+
+    // всем в комнате, кроме from (может быть null); сколько очередей приняли сообщение
+    int publish(Room room, Inbox from, String message) {
+        published.increment();
+        Set<Inbox> subscribers = rooms.get(room);
+        if (subscribers == null) return 0;
+        int accepted = 0;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BLOCK_MILLIS);
+        for (Inbox inbox : subscribers) {
+            if (inbox != from && inbox.offer(message, deadline)) accepted++;
+        }
+        return accepted;
+    }
+
+    int subscribers(Room room) {
+        Set<Inbox> subscribers = rooms.get(room);
+        return subscribers == null ? 0 : subscribers.size();
+    }
+
+    Overflow overflow() {
+        return overflow;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    long published() {
+        return published.sum();
+    }
+
+    long delivered() {
+        return delivered.sum();
+    }
+
+    long dropped() {
+        return dropped.sum();
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.dungeon.core;
+
+import com.example.dungeon.model.GameState;
+import com.example.dungeon.model.Player;
+import com.example.dungeon.model.Room;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.IntStream;
+
+// проверка всех сохранений: актуальные версии в хранилище и старые файлы <имя>.save разбираются
+// параллельно полным чтением (SaveLoad.check) без сборки мира. с fix сохранения, где битые только
+// ссылки, переписываются исправленными, а с поврежденными данными уходят в saves/quarantine
+final class SaveCheck {
+    private static final String QUARANTINE = "quarantine";
+    private static final int SHOW = 20;
+    private static final int BENCH_BROKEN_PERCENT = 5;
+
+    enum Outcome { OK, REPAIRABLE, BROKEN, REPAIRED, QUARANTINED, CHANGED, FAILED }
+
+    private record Result(String name, Outcome outcome, List<String> problems, long bytes) {
+    }
+
+    // одно сохранение: откуда читать и как заменить или убрать.
+    // false - сохранение изменилось после чтения, и его новую версию трогать нельзя
+    private interface Target {
+        String name();
+
+        byte[] read() throws IOException;
+
+        boolean replace(byte[] data) throws IOException;
+
+        boolean quarantine(byte[] data, Path dir) throws IOException;
+    }
+
+    // запись хранилища; заменяется и удаляется только та версия, что была прочитана,
+    // иначе сессия, сохранившаяся посреди проверки, потеряла бы свое сохранение
+    private static final class StoreTarget implements Target {
+        private final SaveStore store;
+        private final String name;
+        private long version = -1;
+
+        StoreTarget(SaveStore store, String name) {
+            this.store = store;
+            this.name = name;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public byte[] read() throws IOException {
+            SaveStore.Stored stored = store.read(name);
+            if (stored == null) throw new NoSuchFileException(name);
+            version = stored.entry().version();
+            return stored.data();
+        }
+
+        public boolean replace(byte[] data) throws IOException {
+            return store.replace(name, version, out -> out.write(data)) != null;
+        }
+
+        // копия в карантин пишется до удаления из хранилища: сбой между ними не теряет данных
+        public boolean quarantine(byte[] data, Path dir) throws IOException {
+            Path copy;
+            for (int n = 0; ; n++) {
+                copy = quarantineFile(dir, name, n);
+                try {
+                    Files.write(copy, data, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                    break;
+                } catch (FileAlreadyExistsException e) {
+                    // следующее свободное имя
+                }
+            }
+            if (store.delete(name, version)) return true;
+            Files.deleteIfExists(copy);
+            return false;
+        }
+    }
+
+    private record FileTarget(Path file) implements Target {
+        public String name() {
+            String f = file.getFileName().toString();
+            return f.substring(0, f.length() - ".save".length()) + " (файл)";
+        }
+
+        public byte[] read() throws IOException {
+            return Files.readAllBytes(file);
+        }
+
+        // рядом во временный файл и переименованием поверх: обрыв записи не портит старый файл
+        // старые файлы игра больше не пишет, перезаписать их посреди проверки некому
+        public boolean replace(byte[] data) throws IOException {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, data);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        }
+
+        public boolean quarantine(byte[] data, Path dir) throws IOException {
+            String f = file.getFileName().toString();
+            String base = f.substring(0, f.length() - ".save".length());
+            for (int n = 0; ; n++) {
+                try {
+                    Files.move(file, quarantineFile(dir, base, n));
+                    return true;
+                } catch (FileAlreadyExistsException e) {
+                    // следующее свободное имя
+                }
+            }
+        }
+    }
+
+    private SaveCheck() {
+    }
+
+    // store == null - только файлы каталога (для bench)
+    static void run(PrintStream out, Path dir, SaveStore store, boolean fix) {
+        long started = System.nanoTime();
+        List<Target> targets = new ArrayList<>();
+        if (store != null) {
+            for (SaveStore.Entry e : store.entries()) targets.add(new StoreTarget(store, e.name()));
+        }
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.save")) {
+                for (Path p : stream) targets.add(new FileTarget(p));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось прочитать каталог сохранений", e);
+            }
+        }
+        long listed = System.nanoTime();
+        Path quarantine = dir.resolve(QUARANTINE);
+        if (fix) {
+            try {
+                Files.createDirectories(quarantine);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось создать каталог карантина", e);
+            }
+        }
+
+        List<Result> results = targets.parallelStream().map(t -> check(t, fix, quarantine)).toList();
+        long checked = System.nanoTime();
+        report(out, results, listed - started, checked - listed, fix ? quarantine : null);
+    }
+
+    private static Result check(Target t, boolean fix, Path quarantine) {
+        byte[] data;
+        try {
+            data = t.read();
+        } catch (IOException e) {
+            return new Result(t.name(), Outcome.FAILED, List.of("не читается: " + e.getMessage()), 0);
+        }
+        SaveLoad.Check c = SaveLoad.check(data);
+        if (c.ok()) return new Result(t.name(), Outcome.OK, List.of(), data.length);
+        if (!fix) {
+            return new Result(t.name(), c.repairable() ? Outcome.REPAIRABLE : Outcome.BROKEN, c.problems(), data.length);
+        }
+        try {
+            boolean done = c.repairable() ? t.replace(SaveLoad.repair(data)) : t.quarantine(data, quarantine);
+            Outcome outcome = !done ? Outcome.CHANGED : c.repairable() ? Outcome.REPAIRED : Outcome.QUARANTINED;
+            return new Result(t.name(), outcome, c.problems(), data.length);
+        } catch (IOException | RuntimeException e) {
+            List<String> problems = new ArrayList<>(c.problems());
+            problems.add("не исправлено: " + e.getMessage());
+            return new Result(t.name(), Outcome.FAILED, problems, data.length);
+        }
+    }
+
+    private static void report(PrintStream out, List<Result> results, long listNanos, long checkNanos, Path quarantine) {
+        EnumMap<Outcome, Integer> counts = new EnumMap<>(Outcome.class);
+        long bytes = 0;
+        for (Result r : results) {
+            counts.merge(r.outcome(), 1, Integer::sum);
+            bytes += r.bytes();
+        }
+        out.println("=== Проверка сохранений ===");
+        int shown = 0;
+        for (Result r : results) {
+            if (r.outcome() == Outcome.OK) continue;
+            if (shown++ == SHOW) {
+                out.println("  ...");
+                break;
+            }
+            out.println("✗ " + r.name() + " [" + r.outcome().name().toLowerCase(Locale.ROOT) + "]: "
+                    + String.join("; ", r.problems()));
+        }
+        int files = results.size();
+        double seconds = Math.max(checkNanos, 1) / 1e9;
+        out.printf("Сохранений: %d (%d МБ), потоков: %d%n", files, bytes / (1024 * 1024),
+                Runtime.getRuntime().availableProcessors());
+        out.printf("В порядке: %d, битые ссылки: %d, поврежденные: %d%n", counts.getOrDefault(Outcome.OK, 0),
+                counts.getOrDefault(Outcome.REPAIRABLE, 0), counts.getOrDefault(Outcome.BROKEN, 0));
+        if (quarantine != null) {
+            out.printf("Исправлено: %d, в карантине: %d (%s)%n", counts.getOrDefault(Outcome.REPAIRED, 0),
+                    counts.getOrDefault(Outcome.QUARANTINED, 0), quarantine.toAbsolutePath());
+        }
+        if (counts.containsKey(Outcome.CHANGED)) {
+            out.println("Пересохранены во время проверки, не тронуты: " + counts.get(Outcome.CHANGED));
+        }
+        if (counts.containsKey(Outcome.FAILED)) out.println("Ошибок: " + counts.get(Outcome.FAILED));
+        out.printf("Список: %d мс, проверка: %d мс, %.0f файлов/с, %.1f МБ/с%n", listNanos / 1_000_000,
+                checkNanos / 1_000_000, files / seconds, bytes / seconds / (1024 * 1024));
+    }
+
+    private static Path quarantineFile(Path dir, String name, int n) {
+        return dir.resolve(n == 0 ? name + ".save" : name + "." + n + ".save");
+    }
+
+    // каталог из count файлов стандартного мира; каждое 20-е с битой ссылкой на текущую комнату,
+    // каждое 20-е обрезано. проверка без исправления, с исправлением и повторная - все чисто
+    static void bench(PrintStream out, int count) throws IOException {
+        Path dir = Files.createTempDirectory("verify-saves");
+        try {
+            byte[] good = sample(false);
+            byte[] dangling = sample(true);
+            byte[] truncated = Arrays.copyOf(good, good.length / 2);
+            long t = System.nanoTime();
+            IntStream.range(0, count).parallel().forEach(i -> {
+                int kind = i % (100 / BENCH_BROKEN_PERCENT);
+                byte[] data = kind == 1 ? dangling : kind == 2 ? truncated : good;
+                try {
+                    Files.write(dir.resolve("bench-" + i + ".save"), data);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.printf("Создано %d сохранений по %d байт за %d мс: %s%n", count, good.length,
+                    (System.nanoTime() - t) / 1_000_000, dir);
+            out.println("--- только проверка ---");
+            run(new PrintStream(OutputStream.nullOutputStream()), dir, null, false); // прогрев
+            run(out, dir, null, false);
+            out.println("--- проверка с исправлением ---");
+            run(out, dir, null, true);
+            out.println("--- повторная проверка ---");
+            run(out, dir, null, false);
+        } finally {
+            try (var files = Files.walk(dir)) {
+                for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    private static byte[] sample(boolean danglingRoom) throws IOException {
+        GameState state = new GameState();
+        state.setWorld(Game.createWorld());
+        state.setDoors(Game.createDoors());
+        state.setPlayer(new Player("Бот", 100, 10));
+        state.setCurrent(danglingRoom ? new Room("Снесенная комната", "") : state.getWorld().get(Game.START_ROOM));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SaveLoad.writeSave(state, bytes, false);
+        return bytes.toByteArray();
+    }
+}
@@ -4,108 +4,226 @@ import com.example.dungeon.model.*;
 import com.example.dungeon.core.InvalidCommandException; // Добавьте этот импорт
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.FileTime;
-import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+import java.util.zip.*;
 
 public class SaveLoad {
 
     private static final Path SAVE_DIR = Paths.get("saves");
     private static final Path SCORES_FILE = Paths.get("scores.csv").toAbsolutePath();
+    private static final int FORMAT_VERSION = 2;
+    private static final int IO_BUFFER = 64 * 1024;
 
     public static Path getScoresFile() {
         return SCORES_FILE;
     }
 
-    public static void saveGame(GameState state, String saveName) {
-        Path saveFile = SAVE_DIR.resolve(saveName + ".save");
+    static Path mappedFile(String name) {
+        return SAVE_DIR.resolve(name + ".map");
+    }
 
-        try {
-            Files.createDirectories(SAVE_DIR);
-        } catch (IOException e) {
-            throw new UncheckedIOException("Не удалось создать директорию сохранений", e);
-        }
-
-        try (BufferedWriter writer = Files.newBufferedWriter(saveFile,
-                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-
-            Player player = state.getPlayer();
-            StringBuilder sb = new StringBuilder(2048);
-
-            // данные игрока
-            sb.append("player;")
-                    .append(player.getName()).append(";")
-                    .append(player.getHp()).append(";")
-                    .append(player.getAttack()).append("\n");
-
-            // инвентарь
-            sb.append("inventory;");
-            if (!player.getInventory().isEmpty()) {
-                boolean first = true;
-                for (Item item : player.getInventory()) {
-                    if (!first) sb.append(",");
-                    if (item instanceof Potion) {
-                        sb.append("potion:").append(item.getName()).append(":5");
-                    } else if (item instanceof Weapon) {
-                        sb.append("weapon:").append(item.getName()).append(":3");
-                    } else if (item instanceof Key) {
-                        sb.append("key:").append(item.getName());
-                    } else {
-                        sb.append("item:").append(item.getName());
-                    }
-                    first = false;
-                }
-            }
-            sb.append("\n");
+    // где лежат сохранения и таблица результатов. у игры - каталоги процесса, у нагрузочных
+    // прогонов и ботов - временный каталог, чтобы синтетика не попадала в настоящие
+    record Storage(Path saveDir, Path scoresFile) {
+        static final Storage DEFAULT = new Storage(SAVE_DIR, SCORES_FILE);
 
-            // сохраняем ВСЕ комнаты
-            sb.append("world;").append(serializeWorld(state)).append("\n");
+        static Storage temporary(String prefix) throws IOException {
+            Path root = Files.createTempDirectory(prefix);
+            return new Storage(root.resolve("saves"), root.resolve("scores.csv"));
+        }
+
+        // сохранения в сегментах хранилища; старые файлы <имя>.save читаются, пока их не перенесли
+        SaveStore store() {
+            return SaveStore.get(saveDir);
+        }
+
+        // закрыть хранилище и таблицу временного каталога и удалить его целиком
+        void deleteTemporary() throws IOException {
+            if (this == DEFAULT) throw new IllegalStateException("Каталоги игры не удаляются");
+            SaveStore.release(saveDir);
+            ScoreAppender.release(scoresFile);
+            try (var files = Files.walk(saveDir.getParent())) {
+                for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+            }
+        }
+    }
 
-            // Текущая комната
-            sb.append("current_room;").append(state.getCurrent().getName()).append("\n");
+    static SaveStore store() {
+        return Storage.DEFAULT.store();
+    }
 
-            // Счет
-            sb.append("score;").append(state.getScore()).append("\n");
+    public static void saveGame(GameState state, String saveName) {
+        saveGame(Storage.DEFAULT, state, saveName, false);
+    }
 
-            writer.write(sb.toString());
-            System.out.println("Игра сохранена в: " + saveFile.toAbsolutePath());
+    public static void saveGame(GameState state, String saveName, boolean compress) {
+        saveGame(Storage.DEFAULT, state, saveName, compress);
+    }
 
+    // сохранение пишется потоком: комнаты уходят в сегмент хранилища по одной, без сборки в памяти.
+    // обрыв посреди записи оставляет прежнюю версию: новая становится видна только целиком
+    static void saveGame(Storage storage, GameState state, String saveName, boolean compress) {
+        // мир в отображаемом файле уже на диске: сохраняется только игрок и сбрасываются страницы
+        if (state.getWorld() instanceof MappedWorld mapped) {
+            mapped.save(state);
+            state.getOut().println("Мир хранится в файле, изменения сброшены на диск: " + mapped.file().toAbsolutePath());
+            return;
+        }
+        try {
+            SaveStore.Entry e = put(storage, state, saveName, compress);
+            state.getOut().println("Игра сохранена: " + saveName + " (" + e.length() / 1024 + " КБ, версия " + e.version() + ")");
         } catch (IOException e) {
             throw new UncheckedIOException("Ошибка при сохранении игры", e);
         }
     }
 
+    // без сообщений в вывод сессии: для операций JMX. размер записи в байтах
+    static long saveQuietly(GameState state, String saveName) throws IOException {
+        if (state.getWorld() instanceof MappedWorld mapped) {
+            mapped.save(state);
+            return 0;
+        }
+        return put(Storage.DEFAULT, state, saveName, true).length();
+    }
+
+    private static SaveStore.Entry put(Storage storage, GameState state, String saveName, boolean compress)
+            throws IOException {
+        long started = System.nanoTime();
+        SaveStore.Entry e = storage.store().put(saveName, out -> writeSave(state, out, compress));
+        GameMonitor.SAVES.record(System.nanoTime() - started);
+        return e;
+    }
+
+    // формат 2: те же строки ключ;значение, первой строкой версия, последней - CRC32 несжатого текста
+    static void writeSave(GameState state, OutputStream raw, boolean compress) throws IOException {
+        writeSave(state, raw, compress, state.getWorld().values());
+    }
+
+    // rooms - только часть мира: сессия поверх шаблона пишет лишь свои измененные комнаты
+    static void writeSave(GameState state, OutputStream raw, boolean compress, Collection<Room> rooms) throws IOException {
+        OutputStream sink = compress ? new GZIPOutputStream(raw, IO_BUFFER) : raw;
+        CRC32 crc = new CRC32();
+        Writer w = new BufferedWriter(new OutputStreamWriter(new CheckedOutputStream(sink, crc),
+                StandardCharsets.UTF_8), IO_BUFFER);
+
+        w.write("format;" + FORMAT_VERSION + "\n");
+
+        // данные игрока
+        Player player = state.getPlayer();
+        w.append("player;")
+                .append(player.getName()).append(";")
+                .append(String.valueOf(player.getHp())).append(";")
+                .append(String.valueOf(player.getAttack())).append("\n");
+
+        // инвентарь
+        w.write("inventory;");
+        writeItems(w, player.getInventory());
+        w.write("\n");
+
+        // сохраняем ВСЕ комнаты
+        w.write("world;");
+        boolean firstRoom = true;
+        for (Room room : rooms) {
+            if (!firstRoom) w.write("|");
+            writeRoom(w, room);
+            firstRoom = false;
+        }
+        w.write("\n");
+
+        // двери: lockId:комната:направление:комната:направление
+        w.append("doors;").append(formatDoors(state.getDoors())).append("\n");
+
+        // Текущая комната
+        w.append("current_room;").append(state.getCurrent().getName()).append("\n");
+
+        // Счет
+        w.append("score;").append(String.valueOf(state.getScore())).append("\n");
+
+        w.flush();
+        // контрольная сумма пишется мимо CRC
+        sink.write(("checksum;" + Long.toHexString(crc.getValue()) + "\n").getBytes(StandardCharsets.UTF_8));
+        if (sink instanceof GZIPOutputStream gz) gz.finish();
+        sink.flush();
+    }
+
     public static boolean loadGame(GameState state, String saveName) {
+        return loadGame(Storage.DEFAULT, state, saveName);
+    }
+
+    static boolean loadGame(Storage storage, GameState state, String saveName) {
         // + валидация данных
         if (saveName == null || saveName.trim().isEmpty()) {
             throw new InvalidCommandException("Имя сохранения не может быть пустым");
         }
 
-        Path saveFile = SAVE_DIR.resolve(saveName + ".save");
+        Path saveFile = storage.saveDir().resolve(saveName + ".save");
 
-        if (!Files.exists(saveFile)) {
-            System.out.println("Сохранение '" + saveName + "' не найдено.");
-            return false;
+        try (InputStream stored = storage.store().open(saveName)) {
+            InputStream in = stored;
+            if (in == null) {
+                if (!Files.exists(saveFile)) {
+                    state.getOut().println("Сохранение '" + saveName + "' не найдено.");
+                    return false;
+                }
+                in = Files.newInputStream(saveFile);
+            }
+            long started = System.nanoTime();
+            try (InputStream source = in) {
+                if (!readSave(state, source)) return false;
+            }
+            GameMonitor.LOADS.record(System.nanoTime() - started);
+            state.getOut().println("Игра загружена: " + saveName + (stored == null ? " (" + saveFile.toAbsolutePath() + ")" : ""));
+            return true;
+        } catch (EOFException | ZipException e) {
+            throw new InvalidCommandException("Файл сохранения поврежден: сжатые данные обрезаны");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось загрузить игру", e);
         }
+    }
 
-        try (BufferedReader reader = Files.newBufferedReader(saveFile);
-             Scanner scanner = new Scanner(reader)) {
+    static boolean readSave(GameState state, InputStream raw) throws IOException {
+        return readSave(state, raw, null);
+    }
 
-            Map<String, String> saveData = new HashMap<>();
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                String[] parts = line.split(";", 2);
-                if (parts.length == 2) {
-                    saveData.put(parts[0], parts[1]);
-                }
+    // base != null - в сохранении только измененные комнаты, они ложатся на этот мир поверх шаблона
+    static boolean readSave(GameState state, InputStream raw, OverlayWorld base) throws IOException {
+        // сжатое сохранение узнаем по сигнатуре gzip
+        BufferedInputStream in = new BufferedInputStream(raw, IO_BUFFER);
+        in.mark(2);
+        boolean gzip = in.read() == 0x1f && in.read() == 0x8b;
+        in.reset();
+        SaveReader reader = new SaveReader(gzip ? new GZIPInputStream(in, IO_BUFFER) : in);
+
+        // строка мира не собирается в одну огромную строку: она сразу режется на записи комнат
+        Map<String, String> saveData = new HashMap<>();
+        List<byte[]> worldRecords = null;
+        String key;
+        while ((key = reader.nextKey()) != null) {
+            if (reader.atLineEnd()) continue; // строка без ';'
+            if ("world".equals(key)) {
+                worldRecords = reader.records();
+            } else {
+                saveData.put(key, reader.restOfLine());
             }
+        }
+        verify(saveData, reader.checksum());
 
+        try {
             // восстановление всего мира перед восстановлением текущей комнаты
-            if (saveData.containsKey("world")) {
-                deserializeWorld(state, saveData.get("world"));
+            if (base != null) {
+                state.setWorld(base);
+                if (worldRecords != null) applyRooms(state, base, worldRecords);
+            } else if (worldRecords != null) {
+                deserializeWorld(state, worldRecords);
             }
+            state.setDoors(parseDoors(saveData.get("doors")).within(state.getWorld()));
 
             // восстановление игрока
             String[] playerData = saveData.get("player").split(";");
@@ -133,174 +251,491 @@ public class SaveLoad {
                 }
             }
 
-            // восст текущей комнаты
+            // восст счет
+            if (saveData.containsKey("score")) {
+                // Сбрасываем счет и устанавливаем загруженное значение
+                state.addScore(-state.getScore()); // обнуляем
+                state.addScore(Integer.parseInt(saveData.get("score")));
+            }
+
+            // восст текущей комнаты (последней: без нее все остальное уже на месте, см. repair)
             String currentRoomName = saveData.get("current_room");
             if (currentRoomName != null) {
                 Room currentRoom = findRoomByName(state, currentRoomName);
                 if (currentRoom != null) {
                     state.setCurrent(currentRoom);
-                    System.out.println("Текущая комната восстановлена: " + currentRoomName);
+                    state.getOut().println("Текущая комната восстановлена: " + currentRoomName);
                 } else {
-                    System.out.println("Ошибка: комната '" + currentRoomName + "' не найдена");
+                    state.getOut().println("Ошибка: комната '" + currentRoomName + "' не найдена");
                     return false;
                 }
             }
+            return true;
 
-            // восст счет
-            if (saveData.containsKey("score")) {
-                // Сбрасываем счет и устанавливаем загруженное значение
-                state.addScore(-state.getScore()); // обнуляем
-                state.addScore(Integer.parseInt(saveData.get("score")));
-            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new InvalidCommandException("Файл сохранения поврежден: неверный формат чисел");
+        }
+    }
 
-            System.out.println("Игра загружена из: " + saveFile.toAbsolutePath());
-            return true;
+    // итог проверки сохранения без загрузки в игру. repairable - данные целы, битые только ссылки
+    // (связи, двери, текущая комната, неизвестные предметы): их загрузка и так отбрасывает
+    record Check(List<String> problems, boolean repairable) {
+        boolean ok() {
+            return problems.isEmpty();
+        }
+    }
 
+    // полный разбор сохранения тем же чтением, что у loadGame, но без сборки мира:
+    // числа, поля записей, ссылки комнат и дверей на существующие комнаты
+    static Check check(byte[] data) {
+        Map<String, String> saveData = new HashMap<>();
+        List<byte[]> worldRecords = null;
+        try {
+            InputStream in = new ByteArrayInputStream(data);
+            boolean gzip = data.length >= 2 && (data[0] & 0xff) == 0x1f && (data[1] & 0xff) == 0x8b;
+            SaveReader reader = new SaveReader(gzip ? new GZIPInputStream(in, IO_BUFFER) : in);
+            String key;
+            while ((key = reader.nextKey()) != null) {
+                if (reader.atLineEnd()) continue;
+                if ("world".equals(key)) {
+                    worldRecords = reader.records();
+                } else {
+                    saveData.put(key, reader.restOfLine());
+                }
+            }
+            verify(saveData, reader.checksum());
+        } catch (EOFException | ZipException e) {
+            return new Check(List.of("сжатые данные обрезаны"), false);
         } catch (IOException e) {
-            throw new UncheckedIOException("Не удалось загрузить игру", e);
+            return new Check(List.of("не читается: " + e.getMessage()), false);
+        } catch (InvalidCommandException e) {
+            return new Check(List.of(e.getMessage().replace("Файл сохранения поврежден: ", "")), false);
+        }
+
+        List<String> broken = new ArrayList<>();
+        List<String> links = new ArrayList<>();
+        String[] player = saveData.get("player").split(";");
+        if (player.length < 3 || !isInt(player[1]) || !isInt(player[2])) broken.add("игрок: " + saveData.get("player"));
+        checkItems(saveData.get("inventory"), "инвентарь", broken, links);
+        if (saveData.containsKey("score") && !isInt(saveData.get("score"))) broken.add("счет: " + saveData.get("score"));
+
+        // формат 1 хранил только игрока: мир берется из текущей игры, ссылки проверять не по чему
+        if (worldRecords == null) {
+            if (saveData.containsKey("format")) broken.add("нет мира");
+            return new Check(List.copyOf(broken.isEmpty() ? links : broken), broken.isEmpty());
+        }
+        Set<String> names = new HashSet<>();
+        List<String[]> rooms = new ArrayList<>(worldRecords.size());
+        for (byte[] record : worldRecords) {
+            String[] parts = new String(record, StandardCharsets.UTF_8).split(";", -1);
+            if (parts.length < 5) {
+                broken.add("запись комнаты без полей: " + parts[0]);
+                continue;
+            }
+            if (!names.add(parts[0])) links.add("комната повторяется: " + parts[0]);
+            if (!"none".equals(parts[2])) checkItems(parts[2], "комната " + parts[0], broken, links);
+            if (!"none".equals(parts[3])) {
+                String[] m = parts[3].split(":");
+                if (m.length < 3 || !isInt(m[1]) || !isInt(m[2])) broken.add("монстр в " + parts[0] + ": " + parts[3]);
+            }
+            rooms.add(parts);
+        }
+        for (String[] parts : rooms) {
+            if (parts[4].isEmpty()) continue;
+            for (String pair : parts[4].split(",")) {
+                String[] link = pair.split(":");
+                if (link.length != 2 || !names.contains(link[1])) links.add("выход " + parts[0] + " -> " + pair);
+            }
+        }
+        for (Door d : parseDoors(saveData.get("doors")).all()) {
+            if (!names.contains(d.roomA()) || !names.contains(d.roomB())) links.add("дверь " + d.roomA() + " - " + d.roomB());
+        }
+        String current = saveData.get("current_room");
+        if (current == null || !names.contains(current)) {
+            (names.isEmpty() ? broken : links).add("текущая комната: " + current);
+        }
+        return new Check(List.copyOf(broken.isEmpty() ? links : broken), broken.isEmpty());
+    }
+
+    private static void checkItems(String line, String where, List<String> broken, List<String> links) {
+        if (line == null || line.isEmpty()) return;
+        for (String itemStr : line.split(",")) {
+            String[] parts = itemStr.split(":");
+            if (parts.length < 2) {
+                links.add(where + ": предмет без имени '" + itemStr + "'");
+                continue;
+            }
+            try {
+                if (createItemFromString(parts) == null) links.add(where + ": неизвестный предмет '" + itemStr + "'");
+            } catch (NumberFormatException e) {
+                broken.add(where + ": предмет '" + itemStr + "'");
+            }
+        }
+    }
+
+    private static boolean isInt(String s) {
+        try {
+            Integer.parseInt(s);
+            return true;
         } catch (NumberFormatException e) {
-            throw new InvalidCommandException("Файл сохранения поврежден: неверный формат чисел");
+            return false;
         }
     }
 
+    // пересобирает сохранение, у которого битые только ссылки: загрузка их отбрасывает,
+    // игрок без комнаты встает в стартовую (или в любую). сжатие сохраняется как было
+    static byte[] repair(byte[] data) throws IOException {
+        GameState state = new GameState();
+        state.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        if (!readSave(state, new ByteArrayInputStream(data)) || state.getCurrent() == null) {
+            Map<String, Room> world = state.getWorld();
+            // формат 1: мир берется из игры при загрузке, переписать такой файл не по чему
+            if (world.isEmpty()) throw new IOException("сохранение без мира");
+            Room start = world.get(Game.START_ROOM);
+            state.setCurrent(start != null ? start : world.values().iterator().next());
+        }
+        boolean gzip = data.length >= 2 && (data[0] & 0xff) == 0x1f && (data[1] & 0xff) == 0x8b;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + 256);
+        writeSave(state, out, gzip);
+        return out.toByteArray();
+    }
 
-    private static void deserializeWorld(GameState state, String worldData) {
-        Map<String, Room> world = new HashMap<>();
-        String[] roomDataArray = worldData.split("\\|");
+    // проверка целостности до того, как что-то из файла попадет в состояние игры
+    private static void verify(Map<String, String> saveData, long actualCrc) {
+        String format = saveData.get("format");
+        String expected = saveData.get("checksum");
+        if (format != null && expected == null) {
+            throw new InvalidCommandException("Файл сохранения поврежден: нет контрольной суммы (файл обрезан?)");
+        }
+        if (expected != null && !expected.equals(Long.toHexString(actualCrc))) {
+            throw new InvalidCommandException("Файл сохранения поврежден: контрольная сумма не совпадает");
+        }
+        if (!saveData.containsKey("player")) {
+            throw new InvalidCommandException("Файл сохранения поврежден: нет данных игрока");
+        }
+    }
 
-        // создаем все комнаты
-        for (String roomData : roomDataArray) {
-            String[] parts = roomData.split(";");
-            if (parts.length >= 5) {
-                String roomName = parts[0];
-                String description = parts[1].replace(",", ";"); // восстанавливаем оригинальное описание
-                Room room = new Room(roomName, description);
-                world.put(roomName, room);
-
-                // восст предметы в комнате
-                if (!"none".equals(parts[2])) {
-                    String[] itemStrings = parts[2].split(",");
-                    for (String itemStr : itemStrings) {
-                        String[] itemParts = itemStr.split(":");
-                        Item item = createItemFromString(itemParts);
-                        if (item != null) {
-                            room.getItems().add(item);
-                        }
-                    }
-                }
+    // чтение строк ключ;значение прямо из байтов с подсчетом CRC32 по всем строкам, кроме checksum
+    private static final class SaveReader {
+        private final InputStream in;
+        private final CRC32 crc = new CRC32();
+        private final byte[] chunk = new byte[IO_BUFFER];
+        private int pos;
+        private int limit;
+        private int last = '\n'; // последний прочитанный байт
+        private boolean checked;
+        private byte[] buf = new byte[256];
+        private int rawLen; // длина последнего чтения до отрезания '\r'
+
+        SaveReader(InputStream in) {
+            this.in = in;
+        }
 
-                // восст монстра
-                if (!"none".equals(parts[3])) {
-                    String[] monsterParts = parts[3].split(":");
-                    if (monsterParts.length >= 3) {
-                        Monster monster = new Monster(monsterParts[0],
-                                Integer.parseInt(monsterParts[1]),
-                                Integer.parseInt(monsterParts[2]));
-                        room.setMonster(monster);
-                    }
+        private int read() throws IOException {
+            if (pos == limit) {
+                limit = in.read(chunk, 0, chunk.length);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return last = -1;
                 }
             }
+            int b = chunk[pos++] & 0xff;
+            if (checked) crc.update(b);
+            return last = b;
+        }
+
+        // ключ следующей строки (до ';') или null в конце файла
+        String nextKey() throws IOException {
+            checked = false;
+            int len = readUntil(';', '\n');
+            if (last == -1 && len == 0) return null;
+            String key = decode(len);
+            // контрольная сумма не входит в саму себя, остальные строки считаются целиком
+            if (!"checksum".equals(key)) {
+                crc.update(buf, 0, rawLen);
+                if (last != -1) crc.update(last);
+                checked = true;
+            }
+            return key;
+        }
+
+        boolean atLineEnd() {
+            return last == '\n' || last == -1;
+        }
+
+        String restOfLine() throws IOException {
+            return decode(readUntil('\n', '\n'));
+        }
+
+        // записи комнат, разделенные '|', до конца строки
+        List<byte[]> records() throws IOException {
+            List<byte[]> records = new ArrayList<>();
+            do {
+                int len = readUntil('|', '\n');
+                if (len > 0) records.add(Arrays.copyOf(buf, len));
+            } while (last == '|');
+            return records;
+        }
+
+        private int readUntil(int stop, int eol) throws IOException {
+            int len = 0;
+            int b;
+            while ((b = read()) != -1 && b != stop && b != eol) {
+                if (len == buf.length) buf = Arrays.copyOf(buf, len * 2);
+                buf[len++] = (byte) b;
+            }
+            rawLen = len;
+            if (b == eol && len > 0 && buf[len - 1] == '\r') len--;
+            return len;
         }
 
-        // восст связи между комнатами
-        for (String roomData : roomDataArray) {
-            String[] parts = roomData.split(";");
+        private String decode(int len) {
+            return new String(buf, 0, len, StandardCharsets.UTF_8);
+        }
+
+        long checksum() {
+            return crc.getValue();
+        }
+    }
+
+    // загрузка мира в две параллельные фазы: сначала все комнаты разбираются в таблицу,
+    // затем по той же таблице восстанавливаются связи. строка каждой комнаты режется один раз
+    private static void deserializeWorld(GameState state, List<byte[]> records) {
+        int count = records.size();
+        Room[] rooms = new Room[count];
+        String[] links = new String[count];
+        Map<String, Room> world = new ConcurrentHashMap<>(count * 4 / 3 + 1);
+        LoadProgress progress = new LoadProgress(state.getOut(), count);
+
+        // фаза 1: комнаты, предметы, монстры
+        IntStream.range(0, count).parallel().forEach(i -> {
+            String[] parts = new String(records.get(i), StandardCharsets.UTF_8).split(";", -1);
             if (parts.length >= 5) {
-                String roomName = parts[0];
-                Room currentRoom = world.get(roomName);
-
-                // восст соседей
-                if (!parts[4].isEmpty()) {
-                    String[] neighborPairs = parts[4].split(",");
-                    for (String pair : neighborPairs) {
-                        String[] neighborParts = pair.split(":");
-                        if (neighborParts.length == 2) {
-                            String direction = neighborParts[0];
-                            String neighborName = neighborParts[1];
-                            Room neighborRoom = world.get(neighborName);
-                            if (neighborRoom != null) {
-                                currentRoom.getNeighbors().put(direction, neighborRoom);
-                            }
+                Room room = parseRoom(parts);
+                rooms[i] = room;
+                links[i] = parts[4];
+                world.put(room.getName(), room);
+            }
+            progress.step("комнаты");
+        });
+
+        // фаза 2: связи между комнатами; каждая задача пишет только в соседей своей комнаты
+        LongAdder dangling = new LongAdder();
+        IntStream.range(0, count).parallel().forEach(i -> {
+            if (rooms[i] != null && !links[i].isEmpty()) {
+                for (String pair : links[i].split(",")) {
+                    String[] neighborParts = pair.split(":");
+                    if (neighborParts.length == 2) {
+                        Room neighborRoom = world.get(neighborParts[1]);
+                        if (neighborRoom != null) {
+                            rooms[i].getNeighbors().put(neighborParts[0], neighborRoom);
+                        } else {
+                            dangling.increment();
                         }
                     }
                 }
             }
-        }
+            progress.step("связи");
+        });
 
+        if (dangling.sum() > 0) {
+            state.getOut().println("⚠ Пропущено связей с несуществующими комнатами: " + dangling.sum());
+        }
         state.setWorld(world);
     }
 
-    public static void saveScore(String playerName, int score) {
-        try {
-            try (FileWriter fw = new FileWriter(SCORES_FILE.toFile(), true);
-                 BufferedWriter writer = new BufferedWriter(fw);
-                 PrintWriter pw = new PrintWriter(writer)) {
+    // измененные комнаты сессии поверх шаблона; их мало, поэтому без параллельных фаз
+    private static void applyRooms(GameState state, OverlayWorld world, List<byte[]> records) {
+        int missing = 0;
+        for (byte[] record : records) {
+            String[] parts = new String(record, StandardCharsets.UTF_8).split(";", -1);
+            if (parts.length < 5) continue;
+            Room room = parseRoom(parts);
+            Map<String, String> exits = new LinkedHashMap<>();
+            if (!parts[4].isEmpty()) {
+                for (String pair : parts[4].split(",")) {
+                    String[] neighborParts = pair.split(":");
+                    if (neighborParts.length == 2) exits.put(neighborParts[0], neighborParts[1]);
+                }
+            }
+            if (!world.restoreRoom(room.getName(), room.getItems(), room.getMonster(), exits)) missing++;
+        }
+        if (missing > 0) {
+            state.getOut().println("⚠ Пропущено комнат, которых нет в шаблоне: " + missing);
+        }
+    }
+
+    static String formatDoors(DoorGraph doors) {
+        StringBuilder sb = new StringBuilder();
+        for (Door door : doors.all()) {
+            if (!sb.isEmpty()) sb.append(",");
+            sb.append(door.lockId()).append(":").append(door.roomA()).append(":").append(door.dirA())
+                    .append(":").append(door.roomB()).append(":").append(door.dirB());
+        }
+        return sb.toString();
+    }
+
+    // в старых сохранениях строки doors нет - двери как в стандартном мире
+    static DoorGraph parseDoors(String line) {
+        if (line == null) return Game.createDoors();
+        List<Door> doors = new ArrayList<>();
+        if (!line.isEmpty()) {
+            for (String doorStr : line.split(",")) {
+                String[] p = doorStr.split(":");
+                if (p.length == 5) doors.add(new Door(p[0], p[1], p[2], p[3], p[4]));
+            }
+        }
+        return new DoorGraph(doors);
+    }
+
+    private static Room parseRoom(String[] parts) {
+        String description = parts[1].replace(",", ";"); // восстанавливаем оригинальное описание
+        Room room = new Room(parts[0], description);
 
-                if (!SCORES_FILE.toFile().exists() || SCORES_FILE.toFile().length() == 0) {
-                    pw.println("timestamp,player_name,score");
+        // восст предметы в комнате
+        if (!"none".equals(parts[2])) {
+            for (String itemStr : parts[2].split(",")) {
+                Item item = createItemFromString(itemStr.split(":"));
+                if (item != null) {
+                    room.addItem(item);
                 }
+            }
+        }
 
-                pw.printf("%s,%s,%d%n", LocalDateTime.now(), playerName, score);
+        // восст монстра
+        if (!"none".equals(parts[3])) {
+            String[] monsterParts = parts[3].split(":");
+            if (monsterParts.length >= 3) {
+                room.setMonster(new Monster(monsterParts[0],
+                        Integer.parseInt(monsterParts[1]),
+                        Integer.parseInt(monsterParts[2])));
             }
-        } catch (IOException e) {
-            System.err.println("Не удалось сохранить счет: " + e.getMessage());
         }
+        return room;
     }
 
-    public static void displaySavedGames() {
-        try {
-            if (!Files.exists(SAVE_DIR)) {
-                Files.createDirectories(SAVE_DIR);
-                System.out.println("Директория сохранений создана: " + SAVE_DIR.toAbsolutePath());
-                System.out.println("Нет доступных сохранений.");
-                return;
+    // прогресс долгой загрузки: печатается каждые 10%, только для больших миров
+    private static final class LoadProgress {
+        private static final int THRESHOLD = 100_000;
+        private final PrintStream out;
+        private final int total;
+        private final AtomicInteger done = new AtomicInteger();
+        private final long started = System.nanoTime();
+
+        LoadProgress(PrintStream out, int total) {
+            this.out = out;
+            this.total = total;
+        }
+
+        void step(String phase) {
+            if (total < THRESHOLD) return;
+            int d = done.incrementAndGet() % total;
+            if (d % (total / 10) == 0) {
+                int percent = d == 0 ? 100 : d * 100 / total;
+                out.printf("Загрузка (%s): %d%% (%d мс)%n", phase, percent,
+                        (System.nanoTime() - started) / 1_000_000);
             }
+        }
+    }
 
-            try (DirectoryStream<Path> stream = Files.newDirectoryStream(SAVE_DIR, "*.save")) {
-                System.out.println("Доступные сохранения:");
-                List<Path> saves = new ArrayList<>();
+    // не ждет диска: запись идет фоновым потоком пачками, см. ScoreAppender
+    public static void saveScore(String playerName, int score) {
+        saveScore(Storage.DEFAULT, playerName, score);
+    }
 
-                for (Path path : stream) {
-                    saves.add(path);
-                }
+    static void saveScore(Storage storage, String playerName, int score) {
+        ScoreAppender.get(storage.scoresFile()).append(playerName, score);
+    }
 
-                if (saves.isEmpty()) {
-                    System.out.println("  (нет сохранений)");
-                    return;
-                }
+    // перед чтением таблицы: все уже отправленные результаты должны быть в файле
+    static void syncScores() {
+        ScoreAppender.syncIfStarted();
+    }
 
-                saves.sort((path1, path2) -> {
-                    try {
-                        FileTime time1 = Files.getLastModifiedTime(path1);
-                        FileTime time2 = Files.getLastModifiedTime(path2);
-                        return time2.compareTo(time1);
-                    } catch (IOException e) {
-                        return 0;
-                    }
-                });
-
-                for (Path save : saves) {
-                    String name = save.getFileName().toString().replace(".save", "");
-                    try {
-                        FileTime time = Files.getLastModifiedTime(save);
-                        System.out.printf("- %s (изменено: %s)%n", name, time);
-                    } catch (IOException e) {
-                        System.out.printf("- %s (ошибка чтения времени)%n", name);
-                    }
+    public static void displaySavedGames(PrintStream out) {
+        displaySavedGames(Storage.DEFAULT, out, "");
+    }
+
+    // prefix - пространство имен сессии: видны только ее сохранения, без префикса;
+    // старые файлы - только без пространства имен
+    static void displaySavedGames(Storage storage, PrintStream out, String prefix) {
+        List<SaveStore.Entry> stored = new ArrayList<>(storage.store().entries());
+        stored.removeIf(e -> !e.name().startsWith(prefix));
+        List<Path> legacy = prefix.isEmpty() ? legacySaves(storage.saveDir(), out) : List.of();
+
+        out.println("Доступные сохранения:");
+        if (stored.isEmpty() && legacy.isEmpty()) {
+            out.println("  (нет сохранений)");
+            return;
+        }
+        for (SaveStore.Entry e : stored) {
+            out.printf("- %s (изменено: %s)%n", e.name().substring(prefix.length()), FileTime.fromMillis(e.time()));
+        }
+        // старые файлы, еще не перенесенные в хранилище
+        for (Path save : legacy) {
+            String name = legacyName(save);
+            if (storage.store().contains(name)) continue;
+            try {
+                out.printf("- %s (изменено: %s, отдельный файл)%n", name, Files.getLastModifiedTime(save));
+            } catch (IOException e) {
+                out.printf("- %s (ошибка чтения времени)%n", name);
+            }
+        }
+    }
+
+    // переносит файлы <имя>.save в хранилище как есть и удаляет их; уже сохраненное в хранилище
+    // позже не перезаписывается старым файлом
+    static void importLegacySaves(PrintStream out) {
+        int moved = 0;
+        for (Path save : legacySaves(SAVE_DIR, out)) {
+            String name = legacyName(save);
+            try {
+                if (!store().contains(name)) {
+                    store().put(name, sink -> Files.copy(save, sink));
+                    moved++;
                 }
+                Files.delete(save);
+            } catch (IOException e) {
+                out.println("Не удалось перенести " + save + ": " + e.getMessage());
             }
+        }
+        out.println("Перенесено в хранилище: " + moved);
+    }
+
+    static Path saveDir() {
+        return SAVE_DIR;
+    }
+
+    private static List<Path> legacySaves(Path dir, PrintStream out) {
+        List<Path> saves = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return saves;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.save")) {
+            for (Path path : stream) saves.add(path);
         } catch (IOException e) {
-            System.out.println("Ошибка при чтении списка сохранений: " + e.getMessage());
+            out.println("Ошибка при чтении списка сохранений: " + e.getMessage());
         }
+        saves.sort(Comparator.comparing(Path::toString));
+        return saves;
     }
 
-    public static void printScores() {
-        if (!Files.exists(SCORES_FILE)) {
-            System.out.println("Пока нет результатов.");
+    private static String legacyName(Path save) {
+        String file = save.getFileName().toString();
+        return file.substring(0, file.length() - ".save".length());
+    }
+
+    public static void printScores(PrintStream out) {
+        printScores(Storage.DEFAULT, out);
+    }
+
+    static void printScores(Storage storage, PrintStream out) {
+        syncScores();
+        if (!Files.exists(storage.scoresFile())) {
+            out.println("Пока нет результатов.");
             return;
         }
-        try (BufferedReader r = Files.newBufferedReader(SCORES_FILE)) {
-            System.out.println("=== ТАБЛИЦА ЛИДЕРОВ (ТОП-10) ===");
+        try (BufferedReader r = Files.newBufferedReader(storage.scoresFile())) {
+            out.println("=== ТАБЛИЦА ЛИДЕРОВ (ТОП-10) ===");
 
             Map<String, Integer> bestScores = new HashMap<>();
             Map<String, String> playerFirstSeen = new HashMap<>();
@@ -327,68 +762,58 @@ public class SaveLoad {
                         String player = entry.getKey();
                         int score = entry.getValue();
                         String firstPlayed = playerFirstSeen.get(player);
-                        System.out.printf("- %s — %d очков (первая игра: %s)%n",
+                        out.printf("- %s — %d очков (первая игра: %s)%n",
                                 player, score, firstPlayed != null ? firstPlayed.substring(0, 10) : "неизвестно");
                     });
 
-            System.out.println("================================");
+            out.println("================================");
         } catch (IOException e) {
             System.err.println("Ошибка чтения результатов: " + e.getMessage());
         }
     }
 
 
-    private static String serializeWorld(GameState state) {
-        StringBuilder sb = new StringBuilder();
-        Map<String, Room> world = state.getWorld();
-
-        boolean firstRoom = true;
-        for (Room room : world.values()) {
-            if (!firstRoom) sb.append("|");
-            sb.append(room.getName()).append(";")
-                    .append(room.getDescription().replace(";", ",")).append(";")
-                    .append(serializeItems(room.getItems())).append(";")
-                    .append(serializeMonster(room.getMonster())).append(";")
-                    .append(serializeNeighbors(room, world));
-            firstRoom = false;
+    private static void writeRoom(Writer w, Room room) throws IOException {
+        w.append(room.getName()).append(";")
+                .append(room.getDescription().replace(";", ",")).append(";");
+        if (room.getItems().isEmpty()) {
+            w.write("none");
+        } else {
+            writeItems(w, room.getItems());
         }
-        return sb.toString();
-    }
-
-    private static String serializeItems(List<Item> items) {
-        if (items.isEmpty()) return "none";
-        StringBuilder sb = new StringBuilder();
+        w.write(";");
+        Monster monster = room.getMonster();
+        if (monster == null) {
+            w.write("none");
+        } else {
+            w.append(monster.getName()).append(":").append(String.valueOf(monster.getLevel()))
+                    .append(":").append(String.valueOf(monster.getHp()));
+        }
+        w.write(";");
         boolean first = true;
-        for (Item item : items) {
-            if (!first) sb.append(",");
-            if (item instanceof Potion) {
-                sb.append("potion:").append(item.getName());
-            } else if (item instanceof Weapon) {
-                sb.append("weapon:").append(item.getName());
-            } else if (item instanceof Key) {
-                sb.append("key:").append(item.getName());
-            } else {
-                sb.append("item:").append(item.getName());
-            }
+        for (Map.Entry<String, Room> entry : room.getNeighbors().entrySet()) {
+            if (!first) w.write(",");
+            w.append(entry.getKey()).append(":").append(entry.getValue().getName());
             first = false;
         }
-        return sb.toString();
-    }
-
-    private static String serializeMonster(Monster monster) {
-        if (monster == null) return "none";
-        return monster.getName() + ":" + monster.getLevel() + ":" + monster.getHp();
     }
 
-    private static String serializeNeighbors(Room room, Map<String, Room> world) {
-        StringBuilder sb = new StringBuilder();
+    private static void writeItems(Writer w, List<Item> items) throws IOException {
         boolean first = true;
-        for (Map.Entry<String, Room> entry : room.getNeighbors().entrySet()) {
-            if (!first) sb.append(",");
-            sb.append(entry.getKey()).append(":").append(entry.getValue().getName());
+        for (Item item : items) {
+            if (!first) w.write(",");
+            if (item instanceof Potion p) {
+                w.append("potion:").append(item.getName()).append(":").append(String.valueOf(p.getHeal()));
+            } else if (item instanceof Weapon wp) {
+                w.append("weapon:").append(item.getName()).append(":").append(String.valueOf(wp.getBonus()));
+            } else if (item instanceof Key k) {
+                w.append("key:").append(item.getName());
+                if (k.getLockId() != null) w.append(":").append(k.getLockId());
+            } else {
+                w.append("item:").append(item.getName());
+            }
             first = false;
         }
-        return sb.toString();
     }
 
 
@@ -422,7 +847,7 @@ public class SaveLoad {
         return switch (parts[0]) {
             case "potion" -> new Potion(parts[1], parts.length > 2 ? Integer.parseInt(parts[2]) : 5);
             case "weapon" -> new Weapon(parts[1], parts.length > 2 ? Integer.parseInt(parts[2]) : 3);
-            case "key" -> new Key(parts[1]);
+            case "key" -> new Key(parts[1], parts.length > 2 ? parts[2] : null);
             default -> null;
         };
     }
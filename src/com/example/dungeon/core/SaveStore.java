@@ -0,0 +1,559 @@
+package com.example.dungeon.core;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+// все сохранения в нескольких файлах-сегментах вместо файла на каждое имя.
+// сохранение сериализуется без общей блокировки в буфер (в памяти, большое - во временный
+// файл), под блокировкой только дописывается в конец активного сегмента одной записью и
+// одним fsync. в памяти - индекс имя -> место последней версии, у каждого сегмента один
+// открытый канал. старые версии убирает уплотнение: живые записи из закрытых сегментов
+// переписываются в активный, после fsync старый сегмент удаляется.
+// запись: заголовок, имя, данные. записи идут в сегменты по порядку, поэтому оборванной
+// может быть только последняя запись последнего сегмента: при открытии там проверяются CRC
+// и хвост отрезается. у каждой записи номер версии: после сбоя посреди уплотнения копии
+// с тем же номером одинаковы, побеждает любая
+final class SaveStore {
+    private static final int MAGIC = 0x53415645; // "SAVE"
+    // magic int, версия long, время long, длина имени int, длина данных int, crc int
+    private static final int RECORD_HEADER = 32;
+    private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final long COMPACT_MIN_GARBAGE = 16L * 1024 * 1024;
+    private static final int IO_BUFFER = 64 * 1024;
+    private static final int SPILL_BYTES = 1024 * 1024; // больше - буфер записи уходит во временный файл
+
+    // по одному на каталог: у нагрузочных прогонов и ботов свое временное хранилище
+    private static final Map<Path, SaveStore> instances = new HashMap<>();
+
+    // место последней версии сохранения
+    record Entry(String name, int segment, long offset, int keyLength, int length, long version, long time) {
+        long end() {
+            return offset + RECORD_HEADER + keyLength + length;
+        }
+    }
+
+    private final Path dir;
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    private final NavigableMap<Integer, FileChannel> segments = new TreeMap<>();
+    // все обращения к segments под этой блокировкой: чтения идут параллельно,
+    // добавление и удаление сегмента ждут их окончания
+    private final ReentrantReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+    // счетчики, индекс и активный сегмент. segmentsLock можно взять внутри нее, но не наоборот
+    private final Object appendLock = new Object();
+    // уплотнение идет одно: и по команде, и из фонового потока
+    private final Object compactLock = new Object();
+    private FileChannel active;
+    private int activeId;
+    private int nextSegment = 1;
+    private long version;
+    private long totalBytes;
+    private long liveBytes;
+    private final Thread compactor;
+
+    private SaveStore(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        recover();
+        this.compactor = Thread.ofPlatform().name("save-compactor").daemon().unstarted(this::compactLoop);
+        compactor.start();
+    }
+
+    static synchronized SaveStore get(Path dir) {
+        Path key = dir.toAbsolutePath();
+        SaveStore store = instances.get(key);
+        if (store == null) {
+            try {
+                store = new SaveStore(key);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось открыть хранилище сохранений", e);
+            }
+            instances.put(key, store);
+        }
+        return store;
+    }
+
+    // закрыть хранилище временного каталога; каталог после этого можно удалять
+    static void release(Path dir) throws IOException {
+        SaveStore store;
+        synchronized (SaveStore.class) {
+            store = instances.remove(dir.toAbsolutePath());
+        }
+        if (store == null) return;
+        store.compactor.interrupt();
+        synchronized (store.compactLock) {
+            synchronized (store.appendLock) {
+                store.segmentsLock.writeLock().lock();
+                try {
+                    for (FileChannel ch : store.segments.values()) ch.close();
+                    store.segments.clear();
+                } finally {
+                    store.segmentsLock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    // данные записи вместе с ее местом и версией
+    record Stored(Entry entry, byte[] data) {
+    }
+
+    interface ValueWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    // сериализация идет без блокировки; под appendLock - только запись готовых байтов,
+    // fsync и публикация. номер версии выдается там же, поэтому порядок версий - порядок в сегментах
+    Entry put(String name, ValueWriter writer) throws IOException {
+        return put(name, writer, -1);
+    }
+
+    // новая версия, только если актуальная все еще expected; иначе null и запись выбрасывается
+    Entry replace(String name, long expected, ValueWriter writer) throws IOException {
+        return put(name, writer, expected);
+    }
+
+    private Entry put(String name, ValueWriter writer, long expected) throws IOException {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(key);
+        try (SpillBuffer data = new SpillBuffer(dir, crc)) {
+            OutputStream buffered = new BufferedOutputStream(data, IO_BUFFER);
+            writer.write(buffered);
+            buffered.flush();
+            if (data.length() > Integer.MAX_VALUE) throw new IOException("Сохранение больше 2 ГБ");
+            synchronized (appendLock) {
+                if (expected >= 0 && !hasVersion(name, expected)) return null;
+                if (active.size() >= SEGMENT_BYTES) roll();
+                long offset = active.size();
+                Entry e = new Entry(name, activeId, offset, key.length, (int) data.length(), ++version,
+                        System.currentTimeMillis());
+                try {
+                    writeFully(active, header(e, crc.getValue()), offset);
+                    writeFully(active, ByteBuffer.wrap(key), offset + RECORD_HEADER);
+                    data.copyTo(active, offset + RECORD_HEADER + key.length);
+                    active.force(false);
+                } catch (IOException ex) {
+                    truncateQuietly(offset);
+                    throw ex;
+                }
+                publish(e);
+                return e;
+            }
+        }
+    }
+
+    // null - такого сохранения в хранилище нет
+    InputStream open(String name) throws IOException {
+        Stored stored = read(name);
+        return stored == null ? null : new ByteArrayInputStream(stored.data());
+    }
+
+    Stored read(String name) throws IOException {
+        // под блокировкой чтения сегмент записи не удалится, даже если ее как раз переносит уплотнение
+        segmentsLock.readLock().lock();
+        try {
+            Entry e = index.get(name);
+            if (e == null) return null;
+            byte[] data = new byte[e.length()];
+            readFully(segments.get(e.segment()), ByteBuffer.wrap(data), e.offset() + RECORD_HEADER + e.keyLength());
+            return new Stored(e, data);
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+    }
+
+    // запись без данных - удаление: при открытии она убирает из индекса более старые версии.
+    // сохранение не бывает пустым, так что с настоящей версией ее не спутать
+    boolean delete(String name) throws IOException {
+        return delete(name, -1);
+    }
+
+    // удаление, только если актуальная версия все еще expected (-1 - любая)
+    boolean delete(String name, long expected) throws IOException {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        synchronized (appendLock) {
+            Entry old = index.get(name);
+            if (old == null || expected >= 0 && old.version() != expected) return false;
+            if (active.size() >= SEGMENT_BYTES) roll();
+            long offset = active.size();
+            Entry e = new Entry(name, activeId, offset, key.length, 0, ++version, System.currentTimeMillis());
+            CRC32 crc = new CRC32();
+            crc.update(key);
+            try {
+                writeFully(active, header(e, crc.getValue()), offset);
+                writeFully(active, ByteBuffer.wrap(key), offset + RECORD_HEADER);
+                active.force(false);
+            } catch (IOException ex) {
+                truncateQuietly(offset);
+                throw ex;
+            }
+            index.remove(name);
+            totalBytes += e.end() - e.offset();
+            liveBytes -= old.end() - old.offset();
+            if (needsCompaction()) requestCompaction();
+            return true;
+        }
+    }
+
+    // перенос уплотнением сохраняет номер версии, так что сравнение по нему переживает и его
+    private boolean hasVersion(String name, long version) {
+        Entry e = index.get(name);
+        return e != null && e.version() == version;
+    }
+
+    boolean contains(String name) {
+        return index.containsKey(name);
+    }
+
+    List<Entry> entries() {
+        List<Entry> list = new ArrayList<>(index.values());
+        list.sort(Comparator.comparingLong(Entry::time).reversed());
+        return list;
+    }
+
+    void printStats(PrintStream out) {
+        int count = segmentCount();
+        synchronized (appendLock) {
+            out.println("Хранилище: " + dir.toAbsolutePath());
+            out.println("Сохранений: " + index.size() + ", сегментов: " + count);
+            out.println("На диске: " + kb(totalBytes) + " КБ, из них актуальные версии: " + kb(liveBytes) + " КБ");
+        }
+    }
+
+    // переписывает живые записи закрытых сегментов в активный и удаляет закрытые
+    int compact() throws IOException {
+        synchronized (compactLock) {
+            int current;
+            synchronized (appendLock) {
+                if (active.size() > 0) roll();
+                current = activeId;
+            }
+            List<Integer> sealed;
+            segmentsLock.readLock().lock();
+            try {
+                sealed = new ArrayList<>(segments.keySet());
+            } finally {
+                segmentsLock.readLock().unlock();
+            }
+            sealed.remove(Integer.valueOf(current));
+            int moved = 0;
+            for (int id : sealed) {
+                for (Entry e : index.values()) {
+                    if (e.segment() == id && move(e)) moved++;
+                }
+                synchronized (appendLock) {
+                    active.force(false);
+                }
+                dropSegment(id);
+            }
+            return moved;
+        }
+    }
+
+    private void requestCompaction() {
+        LockSupport.unpark(compactor);
+    }
+
+    // копия записи с тем же номером версии; индекс переключается, только если за это время
+    // не появилась новая версия
+    private boolean move(Entry e) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + e.keyLength() + e.length());
+        segmentsLock.readLock().lock();
+        try {
+            readFully(segments.get(e.segment()), record, e.offset());
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+        synchronized (appendLock) {
+            if (index.get(e.name()) != e) return false;
+            if (active.size() >= SEGMENT_BYTES) roll();
+            long offset = active.size();
+            writeFully(active, record.flip(), offset);
+            Entry copy = new Entry(e.name(), activeId, offset, e.keyLength(), e.length(), e.version(), e.time());
+            totalBytes += copy.end() - copy.offset();
+            liveBytes += copy.end() - copy.offset();
+            liveBytes -= e.end() - e.offset();
+            index.put(e.name(), copy);
+            return true;
+        }
+    }
+
+    private void dropSegment(int id) throws IOException {
+        FileChannel ch;
+        segmentsLock.writeLock().lock();
+        try {
+            ch = segments.remove(id);
+        } finally {
+            segmentsLock.writeLock().unlock();
+        }
+        if (ch == null) return;
+        synchronized (appendLock) {
+            totalBytes -= ch.size();
+        }
+        ch.close();
+        Files.deleteIfExists(segmentFile(id));
+    }
+
+    private void compactLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(30));
+            if (Thread.currentThread().isInterrupted()) return;
+            if (!needsCompaction()) continue;
+            try {
+                compact();
+            } catch (IOException e) {
+                System.err.println("Уплотнение сохранений не удалось: " + e.getMessage());
+            }
+        }
+    }
+
+    // недописанная запись не должна остаться перед следующими: восстановление остановилось бы на ней
+    private void truncateQuietly(long offset) {
+        try {
+            active.truncate(offset);
+        } catch (IOException e) {
+            System.err.println("Не удалось отрезать недописанную запись: " + e.getMessage());
+        }
+    }
+
+    private void addSegment(int id, FileChannel ch) {
+        segmentsLock.writeLock().lock();
+        try {
+            segments.put(id, ch);
+        } finally {
+            segmentsLock.writeLock().unlock();
+        }
+    }
+
+    private int segmentCount() {
+        segmentsLock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+    }
+
+    private void publish(Entry e) {
+        long size = e.end() - e.offset();
+        totalBytes += size;
+        liveBytes += size;
+        Entry old = index.put(e.name(), e);
+        if (old != null) liveBytes -= old.end() - old.offset();
+        if (needsCompaction()) requestCompaction();
+    }
+
+    // уплотняем, когда старые версии занимают больше, чем живые, и их заметно много
+    private boolean needsCompaction() {
+        synchronized (appendLock) {
+            long garbage = totalBytes - liveBytes;
+            return garbage >= COMPACT_MIN_GARBAGE && garbage >= liveBytes;
+        }
+    }
+
+    // индекс заново строится по всем сегментам; в последнем, куда шла запись, проверяются
+    // CRC и отрезается оборванный хвост. закрытые сегменты прошли fsync до закрытия
+    private void recover() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "seg-*.log")) {
+            for (Path p : stream) {
+                String n = p.getFileName().toString();
+                ids.add(Integer.parseInt(n.substring(4, n.length() - 4)));
+            }
+        }
+        // буферы записей, прерванных сбоем
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "spill-*.tmp")) {
+            for (Path p : stream) Files.deleteIfExists(p);
+        }
+        Collections.sort(ids);
+        // удаление помнит свою версию: копия, перенесенная уплотнением в сегмент с большим
+        // номером, старше удаления и не должна вернуть сохранение
+        Map<String, Long> deleted = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            int id = ids.get(i);
+            FileChannel ch = FileChannel.open(segmentFile(id), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segments.put(id, ch);
+            long end = scan(id, ch, i == ids.size() - 1, deleted);
+            if (end < ch.size()) {
+                System.err.println("Сегмент " + segmentFile(id) + ": отрезан поврежденный хвост "
+                        + (ch.size() - end) + " байт");
+                ch.truncate(end);
+                ch.force(false);
+            }
+            totalBytes += ch.size();
+        }
+        if (segments.isEmpty()) {
+            roll();
+        } else {
+            activeId = segments.lastKey();
+            active = segments.get(activeId);
+            nextSegment = activeId + 1;
+        }
+    }
+
+    private long scan(int id, FileChannel ch, boolean verify, Map<String, Long> deleted) throws IOException {
+        ByteBuffer h = ByteBuffer.allocate(RECORD_HEADER);
+        long pos = 0;
+        long size = ch.size();
+        while (pos + RECORD_HEADER <= size) {
+            h.clear();
+            readFully(ch, h, pos);
+            if (h.getInt(0) != MAGIC) break;
+            long ver = h.getLong(4);
+            long time = h.getLong(12);
+            int keyLength = h.getInt(20);
+            int length = h.getInt(24);
+            long crc = h.getInt(28) & 0xFFFFFFFFL;
+            if (keyLength <= 0 || length < 0 || pos + RECORD_HEADER + keyLength + length > size) break;
+            byte[] key = new byte[keyLength];
+            readFully(ch, ByteBuffer.wrap(key), pos + RECORD_HEADER);
+            if (verify && crc != checksum(ch, key, pos + RECORD_HEADER + keyLength, length)) break;
+            Entry e = new Entry(new String(key, StandardCharsets.UTF_8), id, pos, keyLength, length, ver, time);
+            Entry old = index.get(e.name());
+            if (length == 0) {
+                deleted.merge(e.name(), ver, Math::max);
+                if (old != null && old.version() <= ver) {
+                    liveBytes -= old.end() - old.offset();
+                    index.remove(e.name());
+                }
+            } else if (ver > deleted.getOrDefault(e.name(), 0L) && (old == null || old.version() <= ver)) {
+                liveBytes += e.end() - e.offset();
+                if (old != null) liveBytes -= old.end() - old.offset();
+                index.put(e.name(), e);
+            }
+            version = Math.max(version, ver);
+            pos = e.end();
+        }
+        return pos;
+    }
+
+    private static long checksum(FileChannel ch, byte[] key, long from, int length) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(key);
+        ByteBuffer buf = ByteBuffer.allocate(IO_BUFFER);
+        long pos = from;
+        long end = from + length;
+        while (pos < end) {
+            buf.clear().limit((int) Math.min(buf.capacity(), end - pos));
+            int n = ch.read(buf, pos);
+            if (n < 0) break;
+            crc.update(buf.flip());
+            pos += n;
+        }
+        return crc.getValue();
+    }
+
+    private void roll() throws IOException {
+        if (active != null) active.force(false);
+        int id = nextSegment++;
+        FileChannel ch = FileChannel.open(segmentFile(id), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        addSegment(id, ch);
+        active = ch;
+        activeId = id;
+    }
+
+    private Path segmentFile(int id) {
+        return dir.resolve(String.format("seg-%06d.log", id));
+    }
+
+    private static ByteBuffer header(Entry e, long crc) {
+        ByteBuffer h = ByteBuffer.allocate(RECORD_HEADER);
+        h.putInt(MAGIC).putLong(e.version()).putLong(e.time())
+                .putInt(e.keyLength()).putInt(e.length()).putInt((int) crc);
+        return h.flip();
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer data, long pos) throws IOException {
+        while (data.hasRemaining()) {
+            pos += ch.write(data, pos);
+        }
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer data, long pos) throws IOException {
+        while (data.hasRemaining()) {
+            int n = ch.read(data, pos);
+            if (n < 0) throw new EOFException("Запись сохранения обрезана");
+            pos += n;
+        }
+    }
+
+    private static long kb(long bytes) {
+        return bytes / 1024;
+    }
+
+    // данные записи до публикации, с подсчетом CRC: первые SPILL_BYTES в памяти,
+    // дальше все во временный файл рядом с сегментами. close удаляет файл
+    private static final class SpillBuffer extends OutputStream {
+        private final Path dir;
+        private final CRC32 crc;
+        private byte[] buf = new byte[IO_BUFFER];
+        private int count;
+        private Path spillFile;
+        private FileChannel spill;
+        private long length;
+
+        SpillBuffer(Path dir, CRC32 crc) {
+            this.dir = dir;
+            this.crc = crc;
+        }
+
+        long length() {
+            return length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            crc.update(b, off, len);
+            length += len;
+            if (spill == null && count + len > SPILL_BYTES) {
+                spillFile = Files.createTempFile(dir, "spill-", ".tmp");
+                spill = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                writeFully(spill, ByteBuffer.wrap(buf, 0, count), 0);
+                buf = null;
+            }
+            if (spill != null) {
+                writeFully(spill, ByteBuffer.wrap(b, off, len), spill.size());
+                return;
+            }
+            if (count + len > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + len));
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        void copyTo(FileChannel target, long pos) throws IOException {
+            if (spill == null) {
+                writeFully(target, ByteBuffer.wrap(buf, 0, count), pos);
+                return;
+            }
+            long done = 0;
+            while (done < length) {
+                long n = spill.transferTo(done, length - done, target.position(pos + done));
+                if (n <= 0) throw new EOFException("Буфер записи обрезан");
+                done += n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (spill != null) {
+                spill.close();
+                Files.deleteIfExists(spillFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.example.dungeon.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// дозапись результатов в scores.csv одним фоновым потоком. сессии только кладут строку
+// в очередь без блокировок и не ждут диска; поток забирает все накопленное, пишет пачкой
+// через один открытый канал и, по политике, делает fsync на пачку (group commit).
+// строки пишутся целиком и по порядку очереди, поэтому после сбоя в файле остается
+// префикс: все до последней записанной на диск пачки, оборванный хвост срезается при открытии.
+// очередь ограничена: когда диск отстает, сессия ждет места, как ждала бы записи сама.
+// если фоновый поток упал на ошибке ввода-вывода, остаток очереди и новые строки пишутся
+// синхронно из вызывающего потока; не удалось и так - append бросает исключение
+final class ScoreAppender {
+    static final String HEADER = "timestamp,player_name,score\n";
+    // -Ddungeon.scores.fsync=batch (по умолчанию) | none | <мс> - не чаще раза в столько мс
+    private static final String FSYNC_PROPERTY = "dungeon.scores.fsync";
+    private static final int BATCH_BYTES = 64 * 1024;
+    private static final int RECOVER_BLOCK = 8 * 1024; // хвост файла при восстановлении читается такими кусками
+    private static final int MAX_PENDING = 10_000; // строк; при гонке больше на число пишущих потоков
+
+    // по одному на файл: у нагрузочных прогонов и ботов своя временная таблица
+    private static final Map<Path, ScoreAppender> instances = new HashMap<>();
+
+    private final Path file;
+    private final long fsyncNanos; // 0 - на каждую пачку, -1 - никогда
+    private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong submitted = new AtomicLong();
+    private final Object commitLock = new Object();
+    private volatile long committed;
+    private volatile boolean closed;
+    private volatile IOException failure; // фоновая запись прервалась, дальше только синхронная
+    private final Object directLock = new Object();
+    private final Thread writer;
+    private final Thread shutdownHook = new Thread(this::close);
+
+    private ScoreAppender(Path file, long fsyncNanos) {
+        this.file = file;
+        this.fsyncNanos = fsyncNanos;
+        this.writer = Thread.ofPlatform().name("score-appender").daemon().unstarted(this::loop);
+    }
+
+    static synchronized ScoreAppender get(Path file) {
+        return instances.computeIfAbsent(file.toAbsolutePath(), f -> {
+            ScoreAppender a = new ScoreAppender(f, parsePolicy(System.getProperty(FSYNC_PROPERTY, "batch")));
+            a.writer.start();
+            // при обычном завершении процесса очередь дописывается до конца
+            Runtime.getRuntime().addShutdownHook(a.shutdownHook);
+            return a;
+        });
+    }
+
+    // дописать и закрыть таблицу, которая больше не нужна (временный каталог прогона)
+    static void release(Path file) {
+        ScoreAppender a;
+        synchronized (ScoreAppender.class) {
+            a = instances.remove(file.toAbsolutePath());
+        }
+        if (a == null) return;
+        try {
+            Runtime.getRuntime().removeShutdownHook(a.shutdownHook);
+        } catch (IllegalStateException e) {
+            // процесс уже завершается, хук закроет сам
+        }
+        a.close();
+    }
+
+    private static synchronized List<ScoreAppender> started() {
+        return List.copyOf(instances.values());
+    }
+
+    // строк в очереди, еще не записанных в файл; 0, если запись не начиналась
+    static long pendingIfStarted() {
+        long pending = 0;
+        for (ScoreAppender a : started()) pending += a.submitted.get() - a.committed;
+        return pending;
+    }
+
+    // читатели ждут записи, только если кто-то уже писал в этом процессе
+    static void syncIfStarted() {
+        for (ScoreAppender a : started()) a.sync();
+    }
+
+    private static long parsePolicy(String policy) {
+        return switch (policy) {
+            case "batch" -> 0;
+            case "none" -> -1;
+            default -> TimeUnit.MILLISECONDS.toNanos(Long.parseLong(policy));
+        };
+    }
+
+    // обычно не блокируется: строка уходит в очередь, запись - забота фонового потока
+    void append(String playerName, int score) {
+        if (closed) throw new IllegalStateException("Запись результатов остановлена");
+        String line = LocalDateTime.now() + "," + playerName + "," + score + "\n";
+        if (failure == null && awaitRoom()) {
+            queue.offer(line);
+            submitted.incrementAndGet();
+            LockSupport.unpark(writer);
+            if (failure == null) return;
+            line = null; // поток упал, пока строка вставала в очередь: допишется вместе с остатком
+        }
+        writeDirect(line);
+    }
+
+    // для читателей таблицы: дождаться, пока все уже отправленное окажется в файле
+    void sync() {
+        long target = submitted.get();
+        synchronized (commitLock) {
+            while (committed < target && failure == null && writer.isAlive()) {
+                LockSupport.unpark(writer);
+                try {
+                    commitLock.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        if (failure != null) writeDirect(null);
+    }
+
+    // false - ждать места бесполезно: фоновый поток больше не пишет
+    private boolean awaitRoom() {
+        if (submitted.get() - committed < MAX_PENDING) return true;
+        synchronized (commitLock) {
+            while (submitted.get() - committed >= MAX_PENDING) {
+                if (failure != null || !writer.isAlive()) return false;
+                LockSupport.unpark(writer);
+                try {
+                    commitLock.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return true; // прерванного не держим, строка встает в очередь сверх предела
+                }
+            }
+        }
+        return true;
+    }
+
+    // синхронная запись мимо фонового потока: остаток очереди, затем line (null - только остаток).
+    // файл открывается заново на каждый вызов - ошибка могла быть временной
+    private void writeDirect(String line) {
+        synchronized (directLock) {
+            if (line != null) {
+                queue.offer(line);
+                submitted.incrementAndGet();
+            }
+            if (queue.isEmpty()) return;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                recover(ch);
+                long lines = drain(ch, ByteBuffer.allocate(BATCH_BYTES));
+                if (fsyncNanos >= 0) ch.force(false);
+                commit(lines);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось записать результаты: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            try {
+                writeDirect(null);
+            } catch (UncheckedIOException e) {
+                System.err.println(e.getMessage() + ", потеряно строк: " + queue.size());
+            }
+        }
+    }
+
+    private void loop() {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            recover(ch);
+            ByteBuffer batch = ByteBuffer.allocate(BATCH_BYTES);
+            long lastSync = System.nanoTime();
+            boolean dirty = false;
+            while (true) {
+                boolean stopping = closed;
+                long lines = drain(ch, batch);
+                if (lines > 0) dirty = true;
+                if (dirty && (fsyncNanos == 0 || stopping
+                        || fsyncNanos > 0 && System.nanoTime() - lastSync >= fsyncNanos)) {
+                    ch.force(false);
+                    lastSync = System.nanoTime();
+                    dirty = false;
+                }
+                if (lines > 0) commit(lines);
+                if (stopping && queue.isEmpty()) break;
+                if (queue.isEmpty()) {
+                    LockSupport.parkNanos(this, fsyncNanos > 0 && dirty ? fsyncNanos : TimeUnit.SECONDS.toNanos(1));
+                }
+            }
+            if (dirty) ch.force(false);
+        } catch (IOException e) {
+            failure = e;
+            System.err.println("Не удалось записать результаты: " + e.getMessage() + ", дальше запись синхронная");
+        } finally {
+            synchronized (commitLock) {
+                commitLock.notifyAll();
+            }
+        }
+    }
+
+    // все, что сейчас в очереди, одной или несколькими записями в конец файла; строки не режутся
+    private long drain(FileChannel ch, ByteBuffer batch) throws IOException {
+        long lines = 0;
+        String line;
+        while ((line = queue.poll()) != null) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > batch.remaining()) {
+                writeAll(ch, batch.flip());
+                batch.clear();
+                if (bytes.length > batch.capacity()) {
+                    writeAll(ch, ByteBuffer.wrap(bytes));
+                    lines++;
+                    continue;
+                }
+            }
+            batch.put(bytes);
+            lines++;
+        }
+        writeAll(ch, batch.flip());
+        batch.clear();
+        return lines;
+    }
+
+    private static void writeAll(FileChannel ch, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            ch.write(data, ch.size());
+        }
+    }
+
+    private void commit(long lines) {
+        synchronized (commitLock) {
+            committed += lines;
+            commitLock.notifyAll();
+        }
+    }
+
+    // пустой файл получает заголовок; строка, оборванная сбоем посреди записи, срезается.
+    // хвост читается блоками с конца до последнего перевода строки. если перевода нет совсем,
+    // файл не режется в ноль: строку закрываем переводом, дальше пишем с новой
+    private static void recover(FileChannel ch) throws IOException {
+        long size = ch.size();
+        if (size == 0) {
+            writeAll(ch, ByteBuffer.wrap(HEADER.getBytes(StandardCharsets.US_ASCII)));
+            ch.force(false);
+            return;
+        }
+        ByteBuffer block = ByteBuffer.allocate(RECOVER_BLOCK);
+        long end = -1; // конец последней целой строки
+        for (long to = size; to > 0 && end < 0; ) {
+            long from = Math.max(0, to - RECOVER_BLOCK);
+            block.clear().limit((int) (to - from));
+            while (block.hasRemaining()) {
+                if (ch.read(block, from + block.position()) < 0) throw new EOFException("файл укоротился");
+            }
+            for (int i = block.position() - 1; i >= 0; i--) {
+                if (block.get(i) == '\n') {
+                    end = from + i + 1;
+                    break;
+                }
+            }
+            to = from;
+        }
+        if (end < 0) {
+            writeAll(ch, ByteBuffer.wrap(new byte[]{'\n'}));
+            ch.force(false);
+        } else if (end < size) {
+            ch.truncate(end);
+            ch.force(false);
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package com.example.dungeon.core;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.IntStream;
+
+// аналитика по scores.csv: файл отображается в память, режется на куски по границам строк,
+// куски разбираются параллельно прямо из байтов - без String на каждую строку
+final class ScoreReport {
+    private static final long MAX_CHUNK = 256L * 1024 * 1024;
+    private static final long MIN_CHUNK = 1024 * 1024;
+
+    // итог по всему файлу
+    final Map<String, PlayerStats> players = new HashMap<>();
+    final IntLongMap days = new IntLongMap();
+    final IntLongMap scores = new IntLongMap();
+    long rows;
+    long badRows;
+    long minStamp = Long.MAX_VALUE;
+    long maxStamp = Long.MIN_VALUE;
+
+    static final class PlayerStats {
+        long games;
+        long total;
+        int best = Integer.MIN_VALUE;
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+
+        void merge(long games, long total, int best, long first, long last) {
+            this.games += games;
+            this.total += total;
+            this.best = Math.max(this.best, best);
+            this.first = Math.min(this.first, first);
+            this.last = Math.max(this.last, last);
+        }
+    }
+
+    private ScoreReport() {
+    }
+
+    static ScoreReport build(Path file) throws IOException {
+        ScoreReport report = new ScoreReport();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] bounds = split(ch);
+            List<Chunk> parsed = IntStream.range(0, bounds.length - 1).parallel()
+                    .mapToObj(i -> parse(ch, bounds[i], bounds[i + 1]))
+                    .toList();
+            for (Chunk c : parsed) {
+                report.merge(c);
+            }
+        }
+        return report;
+    }
+
+    // границы кусков, выровненные на начало строки
+    private static long[] split(FileChannel ch) throws IOException {
+        long size = ch.size();
+        int cores = Runtime.getRuntime().availableProcessors();
+        long chunk = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, size / (cores * 4L) + 1));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long pos = chunk;
+        while (pos < size) {
+            long eol = -1;
+            for (long p = pos; p < size && eol < 0; p += probe.capacity()) {
+                probe.clear();
+                int n = ch.read(probe, p);
+                for (int i = 0; i < n; i++) {
+                    if (probe.get(i) == '\n') {
+                        eol = p + i;
+                        break;
+                    }
+                }
+            }
+            if (eol < 0) break;
+            bounds.add(eol + 1);
+            pos = eol + 1 + chunk;
+        }
+        if (bounds.get(bounds.size() - 1) < size) bounds.add(size);
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static Chunk parse(FileChannel ch, long from, long to) {
+        MappedByteBuffer buf;
+        try {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        } catch (IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+        Chunk c = new Chunk();
+        int limit = buf.limit();
+        int pos = 0;
+        while (pos < limit) {
+            int eol = pos;
+            while (eol < limit && buf.get(eol) != '\n') eol++;
+            int end = eol > pos && buf.get(eol - 1) == '\r' ? eol - 1 : eol;
+            if (end > pos) c.line(buf, pos, end);
+            pos = eol + 1;
+        }
+        return c;
+    }
+
+    private void merge(Chunk c) {
+        rows += c.rows;
+        badRows += c.badRows;
+        minStamp = Math.min(minStamp, c.minStamp);
+        maxStamp = Math.max(maxStamp, c.maxStamp);
+        days.addAll(c.days);
+        scores.addAll(c.scores);
+        for (int i = 0; i < c.players.size; i++) {
+            // строка имени создается один раз на игрока в куске
+            String name = new String(c.players.names[i], StandardCharsets.UTF_8);
+            players.computeIfAbsent(name, k -> new PlayerStats())
+                    .merge(c.players.games[i], c.players.total[i], c.players.best[i],
+                            c.players.first[i], c.players.last[i]);
+        }
+    }
+
+    // перцентиль по гистограмме очков
+    int percentile(double p) {
+        int[] keys = scores.keys();
+        Arrays.sort(keys);
+        long rank = (long) Math.ceil(p / 100.0 * rows);
+        long seen = 0;
+        for (int k : keys) {
+            seen += scores.get(k);
+            if (seen >= rank) return k;
+        }
+        return keys.length == 0 ? 0 : keys[keys.length - 1];
+    }
+
+    static String formatDay(long stamp) {
+        long d = stamp / 1_000_000;
+        return String.format("%04d-%02d-%02d", d / 10000, d / 100 % 100, d % 100);
+    }
+
+    static String formatStamp(long stamp) {
+        long t = stamp % 1_000_000;
+        return formatDay(stamp) + String.format(" %02d:%02d:%02d", t / 10000, t / 100 % 100, t % 100);
+    }
+
+    static void print(PrintStream out, Path file, String player) {
+        if (!Files.exists(file)) {
+            out.println("Пока нет результатов.");
+            return;
+        }
+        try {
+            long started = System.nanoTime();
+            ScoreReport r = build(file);
+            double secs = (System.nanoTime() - started) / 1e9;
+
+            out.println("=== ОТЧЕТ ПО РЕЗУЛЬТАТАМ ===");
+            out.printf("Строк: %d (пропущено битых: %d), игроков: %d%n", r.rows, r.badRows, r.players.size());
+            if (r.rows == 0) {
+                out.println("============================");
+                return;
+            }
+            out.println("Период: " + formatStamp(r.minStamp) + " — " + formatStamp(r.maxStamp));
+            out.printf("Очки: p50=%d p90=%d p99=%d max=%d%n",
+                    r.percentile(50), r.percentile(90), r.percentile(99), r.percentile(100));
+
+            out.println("Игр по дням (последние 7):");
+            int[] dayKeys = r.days.keys();
+            Arrays.sort(dayKeys);
+            for (int i = Math.max(0, dayKeys.length - 7); i < dayKeys.length; i++) {
+                out.printf("  %s: %d%n", formatDay(dayKeys[i] * 1_000_000L), r.days.get(dayKeys[i]));
+            }
+
+            if (player != null) {
+                PlayerStats s = r.players.get(player);
+                if (s == null) {
+                    out.println("Нет данных об игроке: " + player);
+                } else {
+                    printPlayer(out, player, s);
+                }
+            } else {
+                out.println("Топ-10 по лучшему счету:");
+                r.players.entrySet().stream()
+                        .sorted((e1, e2) -> Integer.compare(e2.getValue().best, e1.getValue().best))
+                        .limit(10)
+                        .forEach(e -> printPlayer(out, e.getKey(), e.getValue()));
+            }
+            out.printf("Разобрано за %.3f с (%.0f строк/с)%n", secs, r.rows / Math.max(secs, 1e-9));
+            out.println("============================");
+        } catch (IOException e) {
+            System.err.println("Ошибка чтения результатов: " + e.getMessage());
+        }
+    }
+
+    private static void printPlayer(PrintStream out, String name, PlayerStats s) {
+        out.printf("- %s: лучший %d, игр %d, средний %.1f, с %s по %s%n",
+                name, s.best, s.games, (double) s.total / s.games, formatDay(s.first), formatDay(s.last));
+    }
+
+    // результат разбора одного куска
+    private static final class Chunk {
+        final PlayerTable players = new PlayerTable();
+        final IntLongMap days = new IntLongMap();
+        final IntLongMap scores = new IntLongMap();
+        final byte[] scratch = new byte[256];
+        long rows;
+        long badRows;
+        long minStamp = Long.MAX_VALUE;
+        long maxStamp = Long.MIN_VALUE;
+
+        // строка вида 2025-09-29T07:03:23.215239600,Герой,17; в ровную минуту
+        // LocalDateTime пишет время без секунд: 2025-09-29T07:03,Герой,17
+        void line(ByteBuffer buf, int from, int to) {
+            int c1 = indexOf(buf, from, to, (byte) ',');
+            int c2 = c1 < 0 ? -1 : indexOf(buf, c1 + 1, to, (byte) ',');
+            int stampLen = c1 - from;
+            if (stampLen < 16 || stampLen == 17 || stampLen == 18 || c2 < 0 || !isDigit(buf.get(from))) {
+                // заголовок timestamp,player_name,score тоже попадает сюда
+                if (buf.get(from) != 't') badRows++;
+                return;
+            }
+            // каждое поле отдельно: -1 от digits, сложенный с соседними полями, дал бы правдоподобную дату
+            int year = digits(buf, from, 4);
+            int month = digits(buf, from + 5, 2);
+            int day = digits(buf, from + 8, 2);
+            int hour = digits(buf, from + 11, 2);
+            int minute = digits(buf, from + 14, 2);
+            int seconds = stampLen == 16 ? 0 : digits(buf, from + 17, 2);
+            long score = parseLong(buf, c2 + 1, to);
+            int nameLen = c2 - c1 - 1;
+            if (!separators(buf, from, stampLen) || year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+                    || hour < 0 || hour > 23 || minute < 0 || minute > 59 || seconds < 0 || seconds > 59
+                    || score < Integer.MIN_VALUE || score > Integer.MAX_VALUE || nameLen <= 0 || nameLen > scratch.length) {
+                badRows++;
+                return;
+            }
+            long date = year * 10000L + month * 100L + day;
+            long time = hour * 10000L + minute * 100L + seconds;
+            long stamp = date * 1_000_000L + time;
+            buf.get(c1 + 1, scratch, 0, nameLen);
+            players.add(scratch, nameLen, (int) score, stamp);
+            days.add((int) date, 1);
+            scores.add((int) score, 1);
+            minStamp = Math.min(minStamp, stamp);
+            maxStamp = Math.max(maxStamp, stamp);
+            rows++;
+        }
+
+        // yyyy-MM-ddTHH:mm[:ss[.дробь]]
+        private static boolean separators(ByteBuffer buf, int from, int stampLen) {
+            return buf.get(from + 4) == '-' && buf.get(from + 7) == '-' && buf.get(from + 10) == 'T'
+                    && buf.get(from + 13) == ':' && (stampLen == 16 || buf.get(from + 16) == ':')
+                    && (stampLen <= 19 || buf.get(from + 19) == '.');
+        }
+
+        private static int indexOf(ByteBuffer buf, int from, int to, byte b) {
+            for (int i = from; i < to; i++) {
+                if (buf.get(i) == b) return i;
+            }
+            return -1;
+        }
+
+        private static boolean isDigit(byte b) {
+            return b >= '0' && b <= '9';
+        }
+
+        private static int digits(ByteBuffer buf, int from, int count) {
+            int v = 0;
+            for (int i = from; i < from + count; i++) {
+                byte b = buf.get(i);
+                if (!isDigit(b)) return -1;
+                v = v * 10 + (b - '0');
+            }
+            return v;
+        }
+
+        // Long.MIN_VALUE - не число; до 18 цифр, чтобы счет вне int можно было отличить
+        private static long parseLong(ByteBuffer buf, int from, int to) {
+            boolean neg = from < to && buf.get(from) == '-';
+            int i = neg ? from + 1 : from;
+            if (i >= to || to - i > 18) return Long.MIN_VALUE;
+            long v = 0;
+            for (; i < to; i++) {
+                byte b = buf.get(i);
+                if (!isDigit(b)) return Long.MIN_VALUE;
+                v = v * 10 + (b - '0');
+            }
+            return neg ? -v : v;
+        }
+    }
+
+    // игроки куска: открытая адресация по байтам имени
+    private static final class PlayerTable {
+        int[] slots = new int[64]; // индекс+1, 0 - пусто
+        byte[][] names = new byte[32][];
+        int[] hashes = new int[32];
+        long[] games = new long[32];
+        long[] total = new long[32];
+        int[] best = new int[32];
+        long[] first = new long[32];
+        long[] last = new long[32];
+        int size;
+
+        void add(byte[] name, int len, int score, long stamp) {
+            int h = 0x811c9dc5;
+            for (int i = 0; i < len; i++) {
+                h = (h ^ name[i]) * 0x01000193;
+            }
+            int mask = slots.length - 1;
+            int slot = h & mask;
+            while (slots[slot] != 0) {
+                int idx = slots[slot] - 1;
+                if (hashes[idx] == h && Arrays.equals(names[idx], 0, names[idx].length, name, 0, len)) {
+                    games[idx]++;
+                    total[idx] += score;
+                    best[idx] = Math.max(best[idx], score);
+                    first[idx] = Math.min(first[idx], stamp);
+                    last[idx] = Math.max(last[idx], stamp);
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (size == names.length) grow();
+            names[size] = Arrays.copyOf(name, len);
+            hashes[size] = h;
+            games[size] = 1;
+            total[size] = score;
+            best[size] = score;
+            first[size] = stamp;
+            last[size] = stamp;
+            slots[slot] = ++size;
+            if (size * 2 > slots.length) rehash();
+        }
+
+        private void grow() {
+            int n = names.length * 2;
+            names = Arrays.copyOf(names, n);
+            hashes = Arrays.copyOf(hashes, n);
+            games = Arrays.copyOf(games, n);
+            total = Arrays.copyOf(total, n);
+            best = Arrays.copyOf(best, n);
+            first = Arrays.copyOf(first, n);
+            last = Arrays.copyOf(last, n);
+        }
+
+        private void rehash() {
+            slots = new int[slots.length * 2];
+            int mask = slots.length - 1;
+            for (int i = 0; i < size; i++) {
+                int slot = hashes[i] & mask;
+                while (slots[slot] != 0) slot = (slot + 1) & mask;
+                slots[slot] = i + 1;
+            }
+        }
+    }
+
+    // счетчики int -> long без упаковки. EMPTY помечает пустую ячейку, поэтому сам ключ
+    // Integer.MIN_VALUE хранится отдельно от таблицы
+    static final class IntLongMap {
+        private static final int EMPTY = Integer.MIN_VALUE;
+        private int[] keys = filled(16);
+        private long[] values = new long[16];
+        private int size;
+        private boolean hasEmptyKey;
+        private long emptyKeyValue;
+
+        private static int[] filled(int n) {
+            int[] a = new int[n];
+            Arrays.fill(a, EMPTY);
+            return a;
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        void add(int key, long delta) {
+            if (key == EMPTY) {
+                hasEmptyKey = true;
+                emptyKeyValue += delta;
+                return;
+            }
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (keys[slot] != EMPTY) {
+                if (keys[slot] == key) {
+                    values[slot] += delta;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = delta;
+            if (++size * 2 > keys.length) rehash();
+        }
+
+        long get(int key) {
+            if (key == EMPTY) return emptyKeyValue;
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (keys[slot] != EMPTY) {
+                if (keys[slot] == key) return values[slot];
+                slot = (slot + 1) & mask;
+            }
+            return 0;
+        }
+
+        int[] keys() {
+            int[] out = new int[hasEmptyKey ? size + 1 : size];
+            int n = 0;
+            if (hasEmptyKey) out[n++] = EMPTY;
+            for (int k : keys) {
+                if (k != EMPTY) out[n++] = k;
+            }
+            return out;
+        }
+
+        void addAll(IntLongMap other) {
+            if (other.hasEmptyKey) add(EMPTY, other.emptyKeyValue);
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.keys[i] != EMPTY) add(other.keys[i], other.values[i]);
+            }
+        }
+
+        private void rehash() {
+            int[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = filled(oldKeys.length * 2);
+            values = new long[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) add(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.dungeon.core;
+
+import com.example.dungeon.model.OverlayWorld;
+import com.example.dungeon.model.WorldHistory;
+import com.example.dungeon.model.WorldTemplate;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// сессии сервера с отдельными мирами. молчащая дольше порога сессия "засыпает": ее мир и игрок
+// пишутся в сжатое сохранение sessions/<id>.session, а сама игра отпускается сборщику.
+// мир поверх шаблона пишется только измененными комнатами и просыпается снова поверх того же
+// шаблона. следующая команда будит сессию из файла; история undo и быстрые сохранения сна
+// не переживают, об этом клиенту сообщается. кроме порога простоя
+// есть давление памяти: если после сборки мусора старое поколение заполнено больше
+// заданной доли, усыпляются все, кто молчит дольше нескольких секунд.
+// -Ddungeon.idle.seconds=300 - порог простоя, -Ddungeon.idle.pressure=0.75 - доля кучи
+final class SessionRegistry implements NotificationListener {
+    private static final String IDLE_PROPERTY = "dungeon.idle.seconds";
+    private static final String PRESSURE_PROPERTY = "dungeon.idle.pressure";
+    private static final long PRESSURE_IDLE_MILLIS = 5_000;
+    private static final Path DIR = Paths.get("sessions");
+
+    private static volatile SessionRegistry active; // для команды sessions
+
+    final class Session {
+        private final long id = GameMonitor.nextSessionId(); // номера общие с прочими сессиями процесса
+        private final ReentrantLock lock = new ReentrantLock();
+        private final PrintStream out;
+        private volatile Game game; // null - спит
+        private Map<String, String> macros = Map.of();
+        private QuestProgress quests;
+        private WorldTemplate template; // шаблон мира спящей сессии; null - мир целиком в файле
+        private boolean historyLost;
+        private boolean operator;
+        private String savePrefix = "";
+        private volatile long lastActive = System.currentTimeMillis();
+
+        private Session(Game game, PrintStream out) {
+            this.game = game;
+            this.out = out;
+        }
+    }
+
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final long idleMillis;
+    private final double pressure;
+    private final Thread sweeper;
+    private volatile boolean underPressure;
+
+    private final LongAdder hibernated = new LongAdder();
+    private final LongAdder woken = new LongAdder();
+    private final LongAdder hibernateNanos = new LongAdder();
+    private final LongAdder wakeNanos = new LongAdder();
+    private final LongAccumulator maxWakeNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder bytesWritten = new LongAdder();
+
+    SessionRegistry() {
+        this.idleMillis = TimeUnit.SECONDS.toMillis(Long.getLong(IDLE_PROPERTY, 300));
+        this.pressure = Double.parseDouble(System.getProperty(PRESSURE_PROPERTY, "0.75"));
+        this.sweeper = Thread.ofPlatform().name("session-sweeper").daemon().unstarted(this::sweepLoop);
+    }
+
+    void start() throws IOException {
+        Files.createDirectories(DIR);
+        // файлы прошлого запуска: их клиенты давно отключились
+        try (DirectoryStream<Path> old = Files.newDirectoryStream(DIR, "*.session")) {
+            for (Path p : old) Files.deleteIfExists(p);
+        }
+        watchMemory();
+        sweeper.start();
+        active = this;
+    }
+
+    Session open(Supplier<Game> factory, PrintStream out) {
+        Game game = factory.get();
+        game.getState().setOut(out);
+        Session s = new Session(game, out);
+        sessions.put(s.id, s);
+        return s;
+    }
+
+    // команда всегда выполняется в бодрствующей сессии; спящая сначала читается с диска
+    void execute(Session s, String line) throws IOException {
+        s.lock.lock();
+        try {
+            if (s.game == null) wake(s);
+            s.game.execute(line);
+            s.lastActive = System.currentTimeMillis();
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    boolean isFinished(Session s) {
+        s.lock.lock();
+        try {
+            return s.game != null && s.game.getState().isFinished();
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    void close(Session s) {
+        sessions.remove(s.id);
+        try {
+            Files.deleteIfExists(file(s));
+        } catch (IOException ignored) {
+            // файл удалится при следующем запуске
+        }
+    }
+
+    static SessionRegistry active() {
+        return active;
+    }
+
+    // бодрствующие игры по номерам сессий; спящие сюда не попадают
+    Map<Long, Game> awake() {
+        Map<Long, Game> games = new HashMap<>();
+        for (Session s : sessions.values()) {
+            Game g = s.game;
+            if (g != null) games.put(s.id, g);
+        }
+        return games;
+    }
+
+    boolean isAsleep(long id) {
+        Session s = sessions.get(id);
+        return s != null && s.game == null;
+    }
+
+    int asleepCount() {
+        int n = 0;
+        for (Session s : sessions.values()) {
+            if (s.game == null) n++;
+        }
+        return n;
+    }
+
+    // усыпить всех, кто молчит дольше idleMillis, не дожидаясь обхода; сколько усыплено
+    int evictIdle(long idleMillis) {
+        return sweep(idleMillis);
+    }
+
+    static void printActive(PrintStream out) {
+        SessionRegistry r = active;
+        if (r == null) {
+            out.println("Усыпление сессий работает только на сервере с отдельными мирами (server --private)");
+            return;
+        }
+        r.print(out);
+    }
+
+    void print(PrintStream out) {
+        long asleep = sessions.values().stream().filter(s -> s.game == null).count();
+        long h = hibernated.sum();
+        long w = woken.sum();
+        out.println("=== Сессии ===");
+        out.printf("Подключено: %d, в памяти: %d, спят на диске: %d%n", sessions.size(), sessions.size() - asleep, asleep);
+        out.printf("Порог простоя: %d с, давление памяти: %.0f%% старого поколения%s%n",
+                idleMillis / 1000, pressure * 100, underPressure ? " (сейчас превышено)" : "");
+        out.printf("Усыплено: %d, в среднем %.1f мс, %d КБ на сессию%n",
+                h, h == 0 ? 0.0 : hibernateNanos.sum() / 1e6 / h, h == 0 ? 0 : bytesWritten.sum() / h / 1024);
+        out.printf("Разбужено: %d, в среднем %.1f мс, максимум %.1f мс%n",
+                w, w == 0 ? 0.0 : wakeNanos.sum() / 1e6 / w, maxWakeNanos.get() / 1e6);
+    }
+
+    private void sweepLoop() {
+        long period = Math.max(200, Math.min(idleMillis / 4, 5_000));
+        while (true) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(period));
+            boolean pressed = underPressure;
+            underPressure = false;
+            sweep(pressed ? Math.min(idleMillis, PRESSURE_IDLE_MILLIS) : idleMillis);
+        }
+    }
+
+    // долго молчавшие первыми; занятую сейчас сессию не ждем
+    private int sweep(long idle) {
+        long now = System.currentTimeMillis();
+        List<Session> candidates = new ArrayList<>();
+        for (Session s : sessions.values()) {
+            if (s.game != null && now - s.lastActive >= idle) candidates.add(s);
+        }
+        candidates.sort(Comparator.comparingLong(s -> s.lastActive));
+        int slept = 0;
+        for (Session s : candidates) {
+            if (!s.lock.tryLock()) continue;
+            try {
+                if (s.game != null && now - s.lastActive >= idle && hibernate(s)) slept++;
+            } catch (IOException e) {
+                System.err.println("Не удалось усыпить сессию " + s.id + ": " + e.getMessage());
+            } finally {
+                s.lock.unlock();
+            }
+        }
+        return slept;
+    }
+
+    // бой и завершенная игра не усыпляются: первый не переживает сохранение, вторую незачем
+    private boolean hibernate(Session s) throws IOException {
+        var state = s.game.getState();
+        if (state.getCombat() != null || state.isFinished()) return false;
+        long started = System.nanoTime();
+        Path file = file(s);
+        OverlayWorld overlay = state.getWorld() instanceof OverlayWorld o ? o : null;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024)) {
+            if (overlay != null) {
+                SaveLoad.writeSave(state, out, true, overlay.changedViews());
+            } else {
+                SaveLoad.writeSave(state, out, true);
+            }
+        }
+        WorldHistory history = state.getHistory();
+        s.historyLost = history != null && (history.turns() > 0 || !history.slotNames().isEmpty());
+        s.template = overlay != null ? overlay.template() : null;
+        s.macros = new LinkedHashMap<>(s.game.getMacros());
+        s.quests = s.game.getQuests();
+        s.operator = s.game.isOperator();
+        s.savePrefix = s.game.getSavePrefix();
+        s.game = null;
+        hibernated.increment();
+        hibernateNanos.add(System.nanoTime() - started);
+        bytesWritten.add(Files.size(file));
+        return true;
+    }
+
+    private void wake(Session s) throws IOException {
+        long started = System.nanoTime();
+        Game game = new Game();
+        var state = game.getState();
+        state.setOut(new PrintStream(OutputStream.nullOutputStream())); // сообщения загрузки клиенту не нужны
+        Path file = file(s);
+        OverlayWorld base = s.template != null ? new OverlayWorld(s.template) : null;
+        try (InputStream in = Files.newInputStream(file)) {
+            if (!SaveLoad.readSave(state, in, base)) throw new IOException("сохранение сессии не читается");
+        }
+        game.getMacros().putAll(s.macros);
+        game.setQuests(s.quests);
+        game.setOperator(s.operator);
+        game.setSavePrefix(s.savePrefix);
+        state.setOut(s.out);
+        if (s.historyLost) {
+            s.out.println("(сессия проснулась после простоя: история ходов для undo и быстрые сохранения сброшены)");
+        }
+        s.game = game;
+        s.macros = Map.of();
+        s.quests = null;
+        s.template = null;
+        s.historyLost = false;
+        Files.deleteIfExists(file);
+        long nanos = System.nanoTime() - started;
+        woken.increment();
+        wakeNanos.add(nanos);
+        maxWakeNanos.accumulate(nanos);
+    }
+
+    private static Path file(Session s) {
+        return DIR.resolve(s.id + ".session");
+    }
+
+    // порог на заполнение после сборки: срабатывает, только когда живых данных действительно много
+    private void watchMemory() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()
+                    && pool.getUsage().getMax() > 0
+                    && (pool.getName().contains("Old") || pool.getName().contains("Tenured"))) {
+                pool.setCollectionUsageThreshold((long) (pool.getUsage().getMax() * pressure));
+            }
+        }
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+    }
+
+    @Override
+    public void handleNotification(Notification n, Object handback) {
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(n.getType())) {
+            underPressure = true;
+            LockSupport.unpark(sweeper);
+        }
+    }
+}
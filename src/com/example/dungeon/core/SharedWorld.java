@@ -0,0 +1,61 @@
+package com.example.dungeon.core;
+
+import com.example.dungeon.model.DoorGraph;
+import com.example.dungeon.model.Room;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// общий мир: много сессий в одних и тех же комнатах.
+// синхронизация на уровне комнаты (см. Room), глобальной блокировки нет
+public final class SharedWorld {
+    private final Map<String, Room> world;
+    private final DoorGraph doors;
+    private final Room start;
+    private final LongAdder sessions = new LongAdder();
+    private final RoomChannels channels = new RoomChannels(); // кто что делает в комнате
+
+    public SharedWorld(Map<String, Room> world, String startRoom) {
+        this(world, DoorGraph.EMPTY, startRoom);
+    }
+
+    public SharedWorld(Map<String, Room> world, DoorGraph doors, String startRoom) {
+        // набор комнат после создания не меняется, меняется только их содержимое
+        this.world = Collections.unmodifiableMap(world);
+        this.doors = doors;
+        this.start = world.get(startRoom);
+        if (start == null) {
+            throw new IllegalArgumentException("Нет стартовой комнаты: " + startRoom);
+        }
+    }
+
+    public static SharedWorld standard() {
+        return new SharedWorld(Game.createWorld(), Game.createDoors(), Game.START_ROOM);
+    }
+
+    public Game join(String playerName) {
+        sessions.increment();
+        return new Game(this, playerName);
+    }
+
+    public Map<String, Room> getWorld() {
+        return world;
+    }
+
+    public DoorGraph getDoors() {
+        return doors;
+    }
+
+    public Room getStart() {
+        return start;
+    }
+
+    RoomChannels channels() {
+        return channels;
+    }
+
+    public int getSessionCount() {
+        return sessions.intValue();
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.dungeon.core;
+
+import com.example.dungeon.model.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// нагрузочный тест общего мира: сессии SharedWorld.join в одних комнатах одновременно
+// берут предметы, бьются с монстром и открывают ключом запертую дверь - обычными командами
+// через Game.execute. Пропускная способность меряется по мере роста числа игроков на комнату,
+// в конце проверяются инварианты сохранения
+final class SharedWorldStress {
+    private static final long LEVEL_MILLIS = 500;
+    private static final String[] ITEM_NAMES = {"Малое зелье", "Ржавый меч", "Ключ"};
+    private static final String[] COMMANDS = {"take ", "fight", "attack", "use Ключ", "move up", "move down", "look"};
+    private static final int MONSTER_HP = 200;
+
+    private SharedWorldStress() {
+    }
+
+    static void run(PrintStream out, int maxPlayersPerRoom, int roomCount) {
+        out.println("=== Стресс-тест общего мира: " + roomCount + " комн., "
+                + Runtime.getRuntime().availableProcessors() + " ядер ===");
+        out.printf("%-10s %-8s %-14s %-14s %s%n", "на комн.", "потоков", "команд/с", "команд/с на игрока", "инварианты");
+
+        for (int perRoom = 1; perRoom <= maxPlayersPerRoom; perRoom *= 2) {
+            runLevel(out, perRoom, roomCount);
+        }
+    }
+
+    // сессия игрока и то, что она о себе сообщила
+    private static final class Session {
+        final Game game;
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long kills;
+        long opened;
+
+        Session(Game game) {
+            this.game = game;
+        }
+
+        // вывод команды разбирается сразу и сбрасывается
+        void execute(String command) {
+            game.execute(command);
+            String text = output.toString(StandardCharsets.UTF_8);
+            output.reset();
+            if (text.contains("Монстр побежден!")) kills++;
+            if (text.contains("открыли дверь")) opened++;
+        }
+    }
+
+    // арена i с ключом от двери d<i> наверх, в хранилище i; в арене предметы и один монстр
+    private static void runLevel(PrintStream out, int perRoom, int roomCount) {
+        Map<String, Room> world = new HashMap<>();
+        List<Door> doors = new ArrayList<>();
+        List<Room> arenas = new ArrayList<>();
+        for (int i = 0; i < roomCount; i++) {
+            Room arena = new Room("Арена " + i, "Тестовая комната");
+            Room vault = new Room("Хранилище " + i, "Комната за дверью");
+            arena.addItem(new Potion(ITEM_NAMES[0], 1));
+            arena.addItem(new Weapon(ITEM_NAMES[1], 1));
+            arena.addItem(new Key(ITEM_NAMES[2], "d" + i));
+            vault.addItem(new Potion(ITEM_NAMES[0], 1));
+            arena.setMonster(new Monster("Манекен", 1, MONSTER_HP));
+            doors.add(new Door("d" + i, arena.getName(), "up", vault.getName(), "down"));
+            world.put(arena.getName(), arena);
+            world.put(vault.getName(), vault);
+            arenas.add(arena);
+        }
+        int initialItems = countItems(world.values(), List.of());
+        SharedWorld shared = new SharedWorld(world, new DoorGraph(doors), arenas.get(0).getName());
+
+        List<Session> players = new ArrayList<>();
+        for (Room arena : arenas) {
+            for (int p = 0; p < perRoom; p++) {
+                Session player = new Session(shared.join("Игрок " + players.size()));
+                GameState state = player.game.getState();
+                state.setOut(new PrintStream(player.output, false, StandardCharsets.UTF_8));
+                state.setCurrent(arena);
+                state.getPlayer().setHp(Integer.MAX_VALUE / 2); // бой не должен заканчиваться смертью игрока
+                players.add(player);
+            }
+        }
+
+        LongAdder ops = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LEVEL_MILLIS);
+        List<Thread> threads = new ArrayList<>();
+        for (Session player : players) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                long local = 0;
+                while (System.nanoTime() < deadline) {
+                    String command = COMMANDS[rnd.nextInt(COMMANDS.length)];
+                    if (command.equals("take ")) command += ITEM_NAMES[rnd.nextInt(ITEM_NAMES.length)];
+                    player.execute(command);
+                    local++;
+                }
+                ops.add(local);
+            }));
+        }
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        List<String> broken = check(world, arenas, players, initialItems);
+        double perSec = ops.sum() * 1000.0 / LEVEL_MILLIS;
+        long kills = players.stream().mapToLong(p -> p.kills).sum();
+        long opened = players.stream().mapToLong(p -> p.opened).sum();
+        out.printf("%-10d %-8d %-14.0f %-14.0f %s%n", perRoom, threads.size(), perSec, perSec / threads.size(),
+                broken.isEmpty() ? "OK (убито " + kills + ", открыто дверей " + opened + ")"
+                        : "НАРУШЕНЫ: " + String.join("; ", broken));
+    }
+
+    // предметы в комнатах и инвентарях плюс израсходованные ключи - столько же, сколько было,
+    // и ни один предмет не оказался в двух местах; каждая дверь открыта не больше одного раза
+    // и только своим ключом; каждый монстр убит не больше одного раза
+    private static List<String> check(Map<String, Room> world, List<Room> arenas, List<Session> players, int initial) {
+        List<String> broken = new ArrayList<>();
+        List<List<Item>> inventories = players.stream().map(p -> p.game.getState().getPlayer().getInventory()).toList();
+        Set<Item> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        int keysLeft = 0;
+        for (Room room : world.values()) {
+            distinct.addAll(room.getItems());
+            for (Item item : room.getItems()) if (item instanceof Key) keysLeft++;
+        }
+        for (List<Item> inventory : inventories) {
+            distinct.addAll(inventory);
+            for (Item item : inventory) if (item instanceof Key) keysLeft++;
+        }
+        int present = countItems(world.values(), inventories);
+        if (distinct.size() != present) broken.add("предмет в двух местах");
+
+        int openDoors = 0;
+        for (Room arena : arenas) {
+            Room up = arena.getNeighbors().get("up");
+            Room vault = world.get("Хранилище" + arena.getName().substring("Арена".length()));
+            boolean back = vault.getNeighbors().get("down") == arena;
+            if ((up != null) != back) broken.add("дверь открыта с одной стороны: " + arena.getName());
+            if (up != null) openDoors++;
+        }
+        long reportedOpens = players.stream().mapToLong(p -> p.opened).sum();
+        int keysUsed = arenas.size() - keysLeft;
+        if (reportedOpens != openDoors) broken.add("открытий " + reportedOpens + ", открытых дверей " + openDoors);
+        if (keysUsed != openDoors) broken.add("ключей израсходовано " + keysUsed + ", открытых дверей " + openDoors);
+        if (present + keysUsed != initial) broken.add("предметов " + (present + keysUsed) + " из " + initial);
+
+        long dead = arenas.stream().filter(r -> r.getMonster() == null).count();
+        long kills = players.stream().mapToLong(p -> p.kills).sum();
+        if (kills != dead) broken.add("побед " + kills + ", убитых монстров " + dead);
+        return broken;
+    }
+
+    private static int countItems(Collection<Room> rooms, List<List<Item>> inventories) {
+        int n = 0;
+        for (Room room : rooms) n += room.getItems().size();
+        for (List<Item> inventory : inventories) n += inventory.size();
+        return n;
+    }
+}
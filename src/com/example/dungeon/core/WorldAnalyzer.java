@@ -0,0 +1,264 @@
+package com.example.dungeon.core;
+
+import com.example.dungeon.model.*;
+
+import java.io.PrintStream;
+import java.util.*;
+
+// проверка связности мира от текущей комнаты игрока. комнаты нумеруются один раз, дальше все на массивах:
+// компоненты - система непересекающихся множеств по открытым выходам (и отдельно с дверями),
+// достижимость от стартовой комнаты - обход по открытым выходам в BitSet,
+// "откроется ключами" - тот же обход, который проходит дверь, как только найден ключ к ней.
+// все за O(комнаты + выходы). при открытии двери достижимость дополняется обходом только
+// новых комнат, так что за всю игру каждая комната обходится один раз
+final class WorldAnalyzer {
+    private static final int SAMPLE = 5;
+    private static final String ANY_LOCK = "\0"; // старый ключ без замка
+
+    private final Map<String, Room> world;
+    private final DoorGraph doors;
+    private final Map<String, Integer> ids;
+    private final String[] names;
+    // выходы комнат одним массивом: выходы комнаты r - exits[firstExit[r] .. firstExit[r + 1])
+    private final int[] firstExit;
+    private final int[] exits;
+    private final Map<Integer, List<Integer>> openedExits = new HashMap<>(); // проходы открытых после анализа дверей
+    private final int[] parent;      // компоненты по открытым выходам
+    private final int[] doorParent;  // компоненты, если открыть все двери
+    private final BitSet reachable = new BitSet();
+    private final BitSet unlockable = new BitSet(); // достижимы, если собрать ключи по дороге
+    private int components;
+    private int doorComponents;
+    private int deadEnds;
+    private int noExits;
+    private int dangling;
+    private final long millis;
+
+    private WorldAnalyzer(GameState state) {
+        long started = System.nanoTime();
+        this.world = state.getWorld();
+        this.doors = state.getDoors();
+        int n = world.size();
+        ids = new HashMap<>(n * 4 / 3 + 1);
+        // комнаты мира-надстройки при обходе - временные виды, поэтому после анализа держим только имена
+        Room[] rooms = new Room[n];
+        names = new String[n];
+        int i = 0;
+        for (Room r : world.values()) {
+            ids.put(r.getName(), i);
+            names[i] = r.getName();
+            rooms[i++] = r;
+        }
+        parent = new int[n];
+        doorParent = new int[n];
+        for (int r = 0; r < n; r++) {
+            parent[r] = r;
+            doorParent[r] = r;
+        }
+        components = n;
+        doorComponents = n;
+        long total = 0;
+        for (Room r : rooms) total += r.getNeighbors().size();
+        firstExit = new int[n + 1];
+        int[] targets = new int[(int) total];
+        int pos = 0;
+        for (int r = 0; r < n; r++) {
+            firstExit[r] = pos;
+            Collection<Room> out = rooms[r].getNeighbors().values();
+            if (out.isEmpty()) noExits++;
+            if (out.size() == 1) deadEnds++;
+            for (Room next : out) {
+                Integer to = ids.get(next.getName());
+                if (to == null || pos == targets.length) {
+                    dangling++;
+                    continue;
+                }
+                targets[pos++] = to;
+                union(r, to);
+            }
+        }
+        firstExit[n] = pos;
+        exits = targets;
+        for (Door d : doors.all()) {
+            Integer a = ids.get(d.roomA());
+            Integer b = ids.get(d.roomB());
+            if (a != null && b != null) unionDoors(a, b);
+        }
+        Integer start = state.getCurrent() == null ? null : ids.get(state.getCurrent().getName());
+        if (start != null) {
+            spread(start);
+            unlock(rooms, state.getPlayer());
+        }
+        millis = (System.nanoTime() - started) / 1_000_000;
+    }
+
+    static WorldAnalyzer analyze(GameState state) {
+        return new WorldAnalyzer(state);
+    }
+
+    boolean isFor(Map<String, Room> world) {
+        return this.world == world;
+    }
+
+    // O(1): поиск номера по имени и бит
+    boolean isReachable(String room) {
+        Integer id = ids.get(room);
+        return id != null && reachable.get(id);
+    }
+
+    boolean isUnlockable(String room) {
+        Integer id = ids.get(room);
+        return id != null && unlockable.get(id);
+    }
+
+    // дверь открыта: объединить компоненты и дообойти то, что стало достижимо
+    void opened(Door door) {
+        Integer a = ids.get(door.roomA());
+        Integer b = ids.get(door.roomB());
+        if (a == null || b == null) return;
+        union(a, b);
+        openedExits.computeIfAbsent(a, k -> new ArrayList<>(1)).add(b);
+        openedExits.computeIfAbsent(b, k -> new ArrayList<>(1)).add(a);
+        if (reachable.get(a) && !reachable.get(b)) spread(b);
+        if (reachable.get(b) && !reachable.get(a)) spread(a);
+    }
+
+    void printSummary(PrintStream out) {
+        int n = names.length;
+        int reach = reachable.cardinality();
+        out.printf("Анализ мира: достижимо %d из %d комнат, еще %d за дверями, недостижимо %d (%d мс)%n",
+                reach, n, unlockable.cardinality() - reach, n - unlockable.cardinality(), millis);
+    }
+
+    void print(PrintStream out) {
+        printSummary(out);
+        out.println("Компонент связности: " + components + " по открытым выходам, "
+                + doorComponents + " если открыть все двери");
+        out.println("Тупиков (один выход): " + deadEnds + ", комнат без выходов: " + noExits);
+        if (dangling > 0) out.println("⚠ Выходов в комнаты, которых нет в мире: " + dangling);
+
+        BitSet behindDoors = (BitSet) unlockable.clone();
+        behindDoors.andNot(reachable);
+        sample(out, "За дверями", behindDoors);
+        BitSet lost = new BitSet(names.length);
+        lost.set(0, names.length);
+        lost.andNot(unlockable);
+        sample(out, "Недостижимы даже с ключами", lost);
+    }
+
+    private void sample(PrintStream out, String title, BitSet set) {
+        if (set.isEmpty()) return;
+        List<String> names = new ArrayList<>();
+        for (int i = set.nextSetBit(0); i >= 0 && names.size() < SAMPLE; i = set.nextSetBit(i + 1)) {
+            names.add(this.names[i]);
+        }
+        out.println(title + ": " + String.join(", ", names) + (set.cardinality() > SAMPLE ? ", ..." : ""));
+    }
+
+    // обход по открытым выходам от from; уже достижимые комнаты не повторяются
+    private void spread(int from) {
+        int[] queue = new int[names.length];
+        int head = 0;
+        int tail = 0;
+        reachable.set(from);
+        unlockable.set(from);
+        queue[tail++] = from;
+        while (head < tail) {
+            int r = queue[head++];
+            for (int e = firstExit[r]; e < firstExit[r + 1]; e++) {
+                int to = exits[e];
+                if (reachable.get(to)) continue;
+                reachable.set(to);
+                unlockable.set(to);
+                queue[tail++] = to;
+            }
+            for (int to : openedExits.getOrDefault(r, List.of())) {
+                if (reachable.get(to)) continue;
+                reachable.set(to);
+                unlockable.set(to);
+                queue[tail++] = to;
+            }
+        }
+    }
+
+    // обход с ключами: ключи из инвентаря и из достижимых комнат открывают подходящие двери.
+    // дверь проходится, когда известны и ключ, и одна ее сторона - в каком порядке, неважно.
+    // каждая комната попадает в очередь один раз
+    private void unlock(Room[] rooms, Player player) {
+        Set<String> locks = new HashSet<>();
+        ArrayDeque<String> newLocks = new ArrayDeque<>();
+        int[] queue = new int[rooms.length];
+        int[] tail = {0};
+        int head = 0;
+        for (int i = unlockable.nextSetBit(0); i >= 0; i = unlockable.nextSetBit(i + 1)) queue[tail[0]++] = i;
+        if (player != null) {
+            for (Item item : player.getInventory()) takeKey(item, locks, newLocks);
+        }
+        while (head < tail[0] || !newLocks.isEmpty()) {
+            if (!newLocks.isEmpty()) {
+                // новый ключ: двери с этим замком, у которых одна сторона уже известна
+                String lock = newLocks.poll();
+                for (Door d : lock.equals(ANY_LOCK) ? doors.all() : doors.doorsFor(lock)) visitDoor(d, queue, tail);
+                continue;
+            }
+            int r = queue[head++];
+            for (Item item : rooms[r].getItems()) takeKey(item, locks, newLocks);
+            for (int e = firstExit[r]; e < firstExit[r + 1]; e++) {
+                int to = exits[e];
+                if (!unlockable.get(to)) {
+                    unlockable.set(to);
+                    queue[tail[0]++] = to;
+                }
+            }
+            for (Door d : doors.doorsAt(names[r])) {
+                if (locks.contains(ANY_LOCK) || locks.contains(d.lockId())) visitDoor(d, queue, tail);
+            }
+        }
+    }
+
+    private static void takeKey(Item item, Set<String> locks, ArrayDeque<String> newLocks) {
+        if (!(item instanceof Key key)) return;
+        String lock = key.getLockId() == null ? ANY_LOCK : key.getLockId();
+        if (locks.add(lock)) newLocks.add(lock);
+    }
+
+    private void visitDoor(Door d, int[] queue, int[] tail) {
+        Integer a = ids.get(d.roomA());
+        Integer b = ids.get(d.roomB());
+        if (a == null || b == null) return;
+        if (unlockable.get(a) && !unlockable.get(b)) {
+            unlockable.set(b);
+            queue[tail[0]++] = b;
+        } else if (unlockable.get(b) && !unlockable.get(a)) {
+            unlockable.set(a);
+            queue[tail[0]++] = a;
+        }
+    }
+
+    private int find(int[] p, int x) {
+        while (p[x] != x) {
+            p[x] = p[p[x]];
+            x = p[x];
+        }
+        return x;
+    }
+
+    private void union(int a, int b) {
+        int ra = find(parent, a);
+        int rb = find(parent, b);
+        if (ra != rb) {
+            parent[ra] = rb;
+            components--;
+        }
+        unionDoors(a, b);
+    }
+
+    private void unionDoors(int a, int b) {
+        int ra = find(doorParent, a);
+        int rb = find(doorParent, b);
+        if (ra != rb) {
+            doorParent[ra] = rb;
+            doorComponents--;
+        }
+    }
+}
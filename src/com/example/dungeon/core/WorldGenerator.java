@@ -0,0 +1,139 @@
+package com.example.dungeon.core;
+
+import com.example.dungeon.model.*;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+// генератор больших миров для проверки сохранения/загрузки и анализа.
+// комнаты лежат сеткой, часть проходов случайно убрана, часть закрыта дверями с ключами
+final class WorldGenerator {
+    private static final String[] MONSTERS = {"Волк", "Гоблин", "Скелет", "Паук", "Тролль"};
+    private static final int DOOR_ONE_IN = 16; // доля проходов за дверью
+    // шаблоны по "комнаты:seed"; живут, пока их держит хоть одна сессия
+    private static final Map<String, WeakReference<WorldTemplate>> TEMPLATES = new ConcurrentHashMap<>();
+
+    record Generated(Map<String, Room> rooms, DoorGraph doors) {
+    }
+
+    private WorldGenerator() {
+    }
+
+    static String roomName(int i) {
+        return "Зал-" + i;
+    }
+
+    static String description(int i, int width) {
+        return "Комната " + (i % width) + ":" + (i / width) + " подземелья.";
+    }
+
+    static Generated generate(int count, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        int width = Math.max(1, (int) Math.sqrt(count));
+        Room[] rooms = new Room[count];
+        Map<String, Room> world = new HashMap<>(count * 4 / 3 + 1);
+
+        for (int i = 0; i < count; i++) {
+            Room room = new Room(roomName(i), description(i, width));
+            int roll = rnd.nextInt(10);
+            if (roll == 0) {
+                room.addItem(new Potion("Зелье " + rnd.nextInt(1000), 1 + rnd.nextInt(9)));
+            } else if (roll == 1) {
+                room.addItem(new Weapon("Клинок " + rnd.nextInt(1000), 1 + rnd.nextInt(4)));
+            }
+            if (rnd.nextInt(5) == 0) {
+                int level = 1 + rnd.nextInt(5);
+                room.setMonster(new Monster(MONSTERS[rnd.nextInt(MONSTERS.length)], level, level * 6));
+            }
+            rooms[i] = room;
+            world.put(room.getName(), room);
+        }
+
+        List<Door> doors = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int east = i + 1;
+            if (east < count && east % width != 0 && rnd.nextInt(8) != 0) {
+                link(rooms, i, "east", east, "west", rnd, doors);
+            }
+            int south = i + width;
+            if (south < count && rnd.nextInt(8) != 0) {
+                link(rooms, i, "south", south, "north", rnd, doors);
+            }
+        }
+        return new Generated(world, new DoorGraph(doors));
+    }
+
+    // один и тот же мир (то же число комнат и seed) строится один раз на все сессии
+    static WorldTemplate template(int count, long seed) {
+        WorldTemplate[] found = new WorldTemplate[1];
+        TEMPLATES.compute(count + ":" + seed, (k, ref) -> {
+            found[0] = ref == null ? null : ref.get();
+            if (found[0] != null) return ref;
+            Generated g = generate(count, seed);
+            found[0] = new WorldTemplate(g.rooms(), g.doors());
+            return new WeakReference<>(found[0]);
+        });
+        TEMPLATES.values().removeIf(ref -> ref.get() == null);
+        return found[0];
+    }
+
+    // проход либо открыт, либо заперт дверью; ключ от нее лежит в случайной комнате
+    private static void link(Room[] rooms, int a, String dirA, int b, String dirB,
+                             SplittableRandom rnd, List<Door> doors) {
+        if (rnd.nextInt(DOOR_ONE_IN) == 0) {
+            String lockId = "d" + doors.size();
+            doors.add(new Door(lockId, rooms[a].getName(), dirA, rooms[b].getName(), dirB));
+            rooms[rnd.nextInt(rooms.length)].addItem(new Key("Ключ " + lockId, lockId));
+            return;
+        }
+        rooms[a].getNeighbors().put(dirA, rooms[b]);
+        rooms[b].getNeighbors().put(dirB, rooms[a]);
+    }
+
+    // тот же сеточный мир без дверей, но сразу в отображаемый файл: комнат в куче не остается
+    static MappedWorld generateMapped(Path file, int count, long seed) throws IOException {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        int width = Math.max(1, (int) Math.sqrt(count));
+        // имя и описание в UTF-8 с длинами, с запасом
+        MappedWorld world = MappedWorld.create(file, count, (long) count * 96);
+
+        for (int i = 0; i < count; i++) {
+            world.addRoom(roomName(i), description(i, width));
+            int roll = rnd.nextInt(10);
+            if (roll == 0) {
+                world.addItem(i, new Potion("Зелье " + rnd.nextInt(1000), 1 + rnd.nextInt(9)));
+            } else if (roll == 1) {
+                world.addItem(i, new Weapon("Клинок " + rnd.nextInt(1000), 1 + rnd.nextInt(4)));
+            }
+            if (rnd.nextInt(5) == 0) {
+                int level = 1 + rnd.nextInt(5);
+                world.setMonster(i, new Monster(MONSTERS[rnd.nextInt(MONSTERS.length)], level, level * 6));
+            }
+        }
+
+        int north = MappedWorld.direction("north");
+        int south = MappedWorld.direction("south");
+        int east = MappedWorld.direction("east");
+        int west = MappedWorld.direction("west");
+        for (int i = 0; i < count; i++) {
+            int e = i + 1;
+            if (e < count && e % width != 0 && rnd.nextInt(8) != 0) {
+                world.setExit(i, east, e);
+                world.setExit(e, west, i);
+            }
+            int s = i + width;
+            if (s < count && rnd.nextInt(8) != 0) {
+                world.setExit(i, south, s);
+                world.setExit(s, north, i);
+            }
+        }
+        return world;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.dungeon.model;
+
+// идущий бой сессии. между ходами бой - только этот объект: ни потока, ни чтения ввода,
+// attack и run приходят обычными командами
+public final class Combat {
+    private final Room room;
+    private final Monster monster;
+    private int round;
+
+    public Combat(Room room, Monster monster) {
+        this.room = room;
+        this.monster = monster;
+    }
+
+    public Room getRoom() {
+        return room;
+    }
+
+    public Monster getMonster() {
+        return monster;
+    }
+
+    public int nextRound() {
+        return ++round;
+    }
+}
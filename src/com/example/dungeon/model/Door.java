@@ -0,0 +1,36 @@
+package com.example.dungeon.model;
+
+import java.util.Map;
+
+// запираемая дверь между двумя комнатами. сама дверь не хранит "открыта/закрыта":
+// сторона заперта, пока в комнате нет выхода в ее направлении. поэтому undo,
+// сохранения и общий мир видят состояние двери через обычные выходы комнат
+public record Door(String lockId, String roomA, String dirA, String roomB, String dirB) {
+
+    public boolean touches(String roomName) {
+        return roomA.equals(roomName) || roomB.equals(roomName);
+    }
+
+    // направление двери из комнаты roomName
+    public String directionFrom(String roomName) {
+        return roomA.equals(roomName) ? dirA : dirB;
+    }
+
+    // комната по ту сторону двери
+    public String otherSide(String roomName) {
+        return roomA.equals(roomName) ? roomB : roomA;
+    }
+
+    public boolean isLockedFrom(Room room) {
+        return !room.getNeighbors().containsKey(directionFrom(room.getName()));
+    }
+
+    // открывает проход в обе стороны; true, если хоть одна сторона была заперта
+    public boolean open(Map<String, Room> world) {
+        Room a = world.get(roomA);
+        Room b = world.get(roomB);
+        if (a == null || b == null) return false;
+        boolean opened = a.openExit(dirA, b);
+        return b.openExit(dirB, a) || opened;
+    }
+}
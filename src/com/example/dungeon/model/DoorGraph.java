@@ -0,0 +1,60 @@
+package com.example.dungeon.model;
+
+import java.util.*;
+
+// все двери мира с индексами по комнате и по замку.
+// набор дверей неизменяемый, поэтому граф можно делить между сессиями общего мира
+public final class DoorGraph {
+    public static final DoorGraph EMPTY = new DoorGraph(List.of());
+
+    private final List<Door> doors;
+    private final Map<String, List<Door>> byRoom = new HashMap<>();
+    private final Map<String, List<Door>> byLock = new HashMap<>();
+
+    public DoorGraph(Collection<Door> doors) {
+        this.doors = List.copyOf(doors);
+        for (Door d : this.doors) {
+            byRoom.computeIfAbsent(d.roomA(), k -> new ArrayList<>(1)).add(d);
+            if (!d.roomB().equals(d.roomA())) {
+                byRoom.computeIfAbsent(d.roomB(), k -> new ArrayList<>(1)).add(d);
+            }
+            byLock.computeIfAbsent(d.lockId(), k -> new ArrayList<>(1)).add(d);
+        }
+    }
+
+    public List<Door> all() {
+        return doors;
+    }
+
+    public int size() {
+        return doors.size();
+    }
+
+    public List<Door> doorsAt(String roomName) {
+        return byRoom.getOrDefault(roomName, List.of());
+    }
+
+    public List<Door> doorsFor(String lockId) {
+        return byLock.getOrDefault(lockId, List.of());
+    }
+
+    // двери комнаты, запертые с ее стороны
+    public List<Door> lockedExits(Room room) {
+        List<Door> here = doorsAt(room.getName());
+        if (here.isEmpty()) return List.of();
+        List<Door> locked = new ArrayList<>(here.size());
+        for (Door d : here) {
+            if (d.isLockedFrom(room)) locked.add(d);
+        }
+        return locked;
+    }
+
+    // только двери, обе комнаты которых есть в мире
+    public DoorGraph within(Map<String, Room> world) {
+        List<Door> kept = new ArrayList<>(doors.size());
+        for (Door d : doors) {
+            if (world.containsKey(d.roomA()) && world.containsKey(d.roomB())) kept.add(d);
+        }
+        return kept.size() == doors.size() ? this : new DoorGraph(kept);
+    }
+}
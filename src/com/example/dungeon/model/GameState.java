@@ -1,16 +1,81 @@
 package com.example.dungeon.model;
 
+import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 public class GameState {
     private Player player;
     private Room current;
-    private int score;
+    private final LongAdder score = new LongAdder(); // счетчик без конкуренции
+    // часть счета от наград квестов: прогресс квестов не откатывается, поэтому и награды undo не снимает
+    private final LongAdder rewards = new LongAdder();
     private Map<String, Room> world = new HashMap<>(); // NEW
+    private DoorGraph doors = DoorGraph.EMPTY;
+
+    private WorldHistory history; // null - история выключена (общий мир)
+    // вывод сессии: консоль, сокет или заглушка для ботов
+    private PrintStream out = System.out;
+    private Combat combat; // null - не в бою
+    private volatile boolean finished;
 
     public Map<String, Room> getWorld() { return world; } // NEW
-    public void setWorld(Map<String, Room> world) { this.world = world; }
+    public void setWorld(Map<String, Room> world) {
+        this.world = world;
+        if (history != null) history.track(world);
+    }
+
+    public DoorGraph getDoors() {
+        return doors;
+    }
+
+    public void setDoors(DoorGraph doors) {
+        this.doors = doors;
+    }
+
+    public void enableHistory(int maxTurns) {
+        this.history = new WorldHistory(maxTurns);
+        history.track(world);
+    }
+
+    public void disableHistory() {
+        this.history = null;
+    }
+
+    public WorldHistory getHistory() {
+        return history;
+    }
+
+    // снимок перед очередным ходом
+    public void checkpoint() {
+        if (history != null) history.checkpoint(this);
+    }
+
+    public PrintStream getOut() {
+        return out;
+    }
+
+    public void setOut(PrintStream out) {
+        this.out = out;
+    }
+
+    public Combat getCombat() {
+        return combat;
+    }
+
+    public void setCombat(Combat combat) {
+        this.combat = combat;
+    }
+
+    // сессия окончена (exit или смерть героя)
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public void finish() {
+        this.finished = true;
+    }
 
     public Player getPlayer() {
         return player;
@@ -29,10 +94,19 @@ public class GameState {
     }
 
     public int getScore() {
-        return score;
+        return score.intValue();
     }
 
     public void addScore(int d) {
-        this.score += d;
+        score.add(d);
+    }
+
+    public int getRewards() {
+        return rewards.intValue();
+    }
+
+    public void addReward(int d) {
+        score.add(d);
+        rewards.add(d);
     }
 }
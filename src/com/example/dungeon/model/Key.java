@@ -1,46 +1,59 @@
 package com.example.dungeon.model;
 
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Key extends Item {
+    private final String lockId; // null - старый ключ без замка, подходит к любой двери
+
     public Key(String name) {
+        this(name, null);
+    }
+
+    public Key(String name, String lockId) {
         super(name);
+        this.lockId = lockId;
+    }
+
+    public String getLockId() {
+        return lockId;
+    }
+
+    public boolean opens(Door door) {
+        return lockId == null || lockId.equals(door.lockId());
     }
 
     @Override
     public void apply(GameState ctx) {
         Room current = ctx.getCurrent();
-        Player player = ctx.getPlayer();
-        Map<String, Room> world = ctx.getWorld();
-
-        // Проверяем все возможные запертые двери
-        boolean doorOpened = false;
+        DoorGraph doors = ctx.getDoors();
 
-        // Пещера -> Сокровищница
-        if (current.getName().equals("Пещера")) {
-            Room treasure = world.get("Сокровищница");
-            if (treasure != null && !current.getNeighbors().containsValue(treasure)) {
-                current.getNeighbors().put("north", treasure);
-                System.out.println("🔑 Вы использовали " + getName() + " и открыли дверь в сокровищницу!");
-                doorOpened = true;
+        // запертые здесь двери, к которым подходит ключ
+        List<Door> fitting = new ArrayList<>();
+        if (lockId == null) {
+            fitting.addAll(doors.lockedExits(current));
+        } else {
+            for (Door d : doors.doorsFor(lockId)) {
+                if (d.touches(current.getName()) && d.isLockedFrom(current)) fitting.add(d);
             }
         }
 
-        // Сокровищница -> Пещера
-        else if (current.getName().equals("Сокровищница")) {
-            Room cave = world.get("Пещера");
-            if (cave != null && !current.getNeighbors().containsValue(cave)) {
-                current.getNeighbors().put("south", cave);
-                System.out.println("🔑 Вы использовали " + getName() + " и открыли дверь обратно в пещеру!");
+        boolean doorOpened = false;
+        for (Door d : fitting) {
+            if (d.open(ctx.getWorld())) {
+                ctx.getOut().println("🔑 Вы использовали " + getName() + " и открыли дверь на "
+                        + d.directionFrom(current.getName()) + " (" + d.otherSide(current.getName()) + ")!");
                 doorOpened = true;
             }
         }
 
         if (doorOpened) {
-            player.getInventory().remove(this);
+            ctx.getPlayer().getInventory().remove(this);
             ctx.addScore(20);
+        } else if (!doors.lockedExits(current).isEmpty()) {
+            ctx.getOut().println("Ключ не подходит к этой двери.");
         } else {
-            System.out.println("Ключ звенит. Возможно, где-то есть дверь...");
+            ctx.getOut().println("Ключ звенит. Возможно, где-то есть дверь...");
         }
     }
 }
@@ -0,0 +1,227 @@
+package com.example.dungeon.model;
+
+import java.util.*;
+
+// комната сессии поверх комнаты шаблона. пока сессия ее не меняла, предметы, монстр и выходы
+// читаются из шаблона; первое изменение заводит свою копию только измененной части.
+// монстр шаблона на чтение отдается как есть, а бой (engageMonster) и удар сначала заводят
+// копию: HP шаблонного монстра не меняется никогда.
+// коллекции только для чтения - менять комнату можно лишь ее методами
+public final class OverlayRoom extends Room {
+    private final OverlayWorld world;
+    private final Room base;
+    private final boolean cached; // false - временный вид для обхода мира
+    private List<Item> items;            // null - как в шаблоне
+    private Map<String, Room> exits;     // null - как в шаблоне
+    private Monster monster;
+    private boolean monsterCopied;
+
+    OverlayRoom(OverlayWorld world, Room base, boolean cached) {
+        super(base.getName(), base.getDescription(), false);
+        this.world = world;
+        this.base = base;
+        this.cached = cached;
+    }
+
+    public boolean ownsItems() {
+        return items != null;
+    }
+
+    public boolean ownsExits() {
+        return exits != null;
+    }
+
+    public boolean ownsMonster() {
+        return monsterCopied;
+    }
+
+    @Override
+    public Map<String, Room> getNeighbors() {
+        return exits != null ? Collections.unmodifiableMap(exits) : new TemplateExits();
+    }
+
+    @Override
+    public List<Item> getItems() {
+        return Collections.unmodifiableList(items != null ? items : base.getItems());
+    }
+
+    @Override
+    public synchronized Monster getMonster() {
+        return monsterCopied ? monster : base.getMonster();
+    }
+
+    @Override
+    public synchronized Monster engageMonster() {
+        if (monsterCopied || base.getMonster() == null) return getMonster();
+        requireCached();
+        beforeChange();
+        monster = copy(base.getMonster());
+        monsterCopied = true;
+        return monster;
+    }
+
+    @Override
+    public synchronized void setMonster(Monster m) {
+        requireCached();
+        beforeChange();
+        monster = m;
+        monsterCopied = true;
+        changed();
+    }
+
+    @Override
+    public void addItem(Item item) {
+        requireCached();
+        beforeChange();
+        ownItems().add(item);
+        changed();
+    }
+
+    @Override
+    public Item takeItem(String itemName) {
+        for (Item item : getItems()) {
+            if (item.getName().equalsIgnoreCase(itemName)) {
+                requireCached();
+                beforeChange();
+                ownItems().remove(item);
+                changed();
+                return item;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized int strikeMonster(Monster target, int damage) {
+        // удар по монстру шаблона без боя приходится по своей копии
+        if (target != null && !monsterCopied && target == base.getMonster()) target = engageMonster();
+        if (getMonster() != target) return -1;
+        requireCached();
+        beforeChange();
+        int hp = Math.max(0, target.getHp() - damage);
+        target.setHp(hp);
+        if (hp == 0) {
+            monster = null;
+            changed();
+        }
+        return hp;
+    }
+
+    @Override
+    public boolean openExit(String direction, Room target) {
+        if (getNeighbors().containsKey(direction)) return false;
+        requireCached();
+        beforeChange();
+        ownExits().put(direction, target);
+        changed();
+        return true;
+    }
+
+    @Override
+    public boolean closeExit(String direction, Room target) {
+        if (getNeighbors().get(direction) != target) return false;
+        requireCached();
+        beforeChange();
+        ownExits().remove(direction);
+        changed();
+        return true;
+    }
+
+    // нетронутые части в снимок не копируются
+    @Override
+    State saveState() {
+        Monster m = getMonster();
+        return new State(items == null ? null : List.copyOf(items), m, m == null ? 0 : m.getHp(),
+                exits == null ? null : Map.copyOf(exits));
+    }
+
+    // монстр шаблона в снимке - монстр "как в шаблоне", его HP не трогаем
+    @Override
+    void restoreState(State s) {
+        items = s.items() == null ? null : new ArrayList<>(s.items());
+        exits = s.neighbors() == null ? null : new HashMap<>(s.neighbors());
+        boolean template = s.monster() != null && s.monster() == base.getMonster();
+        monster = template ? null : s.monster();
+        monsterCopied = !template;
+        if (!template && s.monster() != null) s.monster().setHp(s.monsterHp());
+        changed();
+    }
+
+    Monster templateMonster() {
+        return base.getMonster();
+    }
+
+    private List<Item> ownItems() {
+        if (items == null) items = new ArrayList<>(base.getItems());
+        return items;
+    }
+
+    private Map<String, Room> ownExits() {
+        if (exits == null) {
+            exits = new HashMap<>();
+            for (Map.Entry<String, Room> e : base.getNeighbors().entrySet()) {
+                exits.put(e.getKey(), resolve(e.getValue()));
+            }
+        }
+        return exits;
+    }
+
+    // сосед шаблона -> вид той же сессии
+    private Room resolve(Room target) {
+        return cached ? world.get(target.getName()) : world.peek(target);
+    }
+
+    private void requireCached() {
+        if (!cached) throw new IllegalStateException("Временный вид комнаты " + getName() + " только для чтения");
+    }
+
+    private static Monster copy(Monster m) {
+        return m == null ? null : new Monster(m.getName(), m.getLevel(), m.getHp());
+    }
+
+    // выходы шаблона, переведенные в виды сессии
+    private final class TemplateExits extends AbstractMap<String, Room> {
+        @Override
+        public Room get(Object direction) {
+            Room target = base.getNeighbors().get(direction);
+            return target == null ? null : resolve(target);
+        }
+
+        @Override
+        public boolean containsKey(Object direction) {
+            return base.getNeighbors().containsKey(direction);
+        }
+
+        @Override
+        public int size() {
+            return base.getNeighbors().size();
+        }
+
+        @Override
+        public Set<Entry<String, Room>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Room>> iterator() {
+                    Iterator<Entry<String, Room>> it = base.getNeighbors().entrySet().iterator();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, Room> next() {
+                            Entry<String, Room> e = it.next();
+                            return new SimpleImmutableEntry<>(e.getKey(), resolve(e.getValue()));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return base.getNeighbors().size();
+                }
+            };
+        }
+    }
+}
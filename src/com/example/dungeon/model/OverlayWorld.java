@@ -0,0 +1,126 @@
+package com.example.dungeon.model;
+
+import java.util.*;
+
+// мир сессии поверх общего шаблона (copy-on-write). комната-вид создается при первом
+// обращении по имени и дальше одна на сессию; своя копия предметов, монстра или выходов
+// появляется у вида только при изменении. память сессии растет с ее продвижением, а не с миром.
+// обход всего мира (анализ, сохранение) получает временные виды для нетронутых комнат -
+// они только для чтения и не остаются в сессии, поэтому сравнивать их надо по имени.
+// рассчитан на одну сессию, как и обычный мир с историей
+public final class OverlayWorld extends AbstractMap<String, Room> {
+    private final WorldTemplate template;
+    private final Map<String, OverlayRoom> views = new HashMap<>();
+    private WorldHistory history;
+
+    public OverlayWorld(WorldTemplate template) {
+        this.template = template;
+    }
+
+    public WorldTemplate template() {
+        return template;
+    }
+
+    @Override
+    public Room get(Object name) {
+        OverlayRoom view = views.get(name);
+        if (view != null) return view;
+        Room base = template.rooms().get(name);
+        if (base == null) return null;
+        view = new OverlayRoom(this, base, true);
+        view.attachHistory(history);
+        views.put(base.getName(), view);
+        return view;
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return template.rooms().containsKey(name);
+    }
+
+    @Override
+    public int size() {
+        return template.size();
+    }
+
+    @Override
+    public Set<Entry<String, Room>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Room>> iterator() {
+                Iterator<Entry<String, Room>> it = template.rooms().entrySet().iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Room> next() {
+                        Entry<String, Room> e = it.next();
+                        return new SimpleImmutableEntry<>(e.getKey(), peek(e.getValue()));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return template.size();
+            }
+        };
+    }
+
+    // вид сессии, если он уже есть, иначе временный вид без кэширования
+    Room peek(Room base) {
+        OverlayRoom view = views.get(base.getName());
+        return view != null ? view : new OverlayRoom(this, base, false);
+    }
+
+    void attachHistory(WorldHistory history) {
+        this.history = history;
+        for (OverlayRoom view : views.values()) view.attachHistory(history);
+    }
+
+    // состояние комнаты из сохранения сессии (пробуждение): предметы, монстр и выходы
+    // становятся копиями вида, выходы по именам ведут в виды этой же сессии.
+    // false - в шаблоне нет такой комнаты
+    public boolean restoreRoom(String name, List<Item> items, Monster monster, Map<String, String> exits) {
+        OverlayRoom view = (OverlayRoom) get(name);
+        if (view == null) return false;
+        Monster base = view.templateMonster();
+        if (monster != null && base != null && monster.getName().equals(base.getName())
+                && monster.getLevel() == base.getLevel() && monster.getHp() == base.getHp()) {
+            monster = base; // нетронутый монстр остается шаблонным
+        }
+        Map<String, Room> neighbors = new HashMap<>();
+        for (Map.Entry<String, String> e : exits.entrySet()) {
+            Room target = get(e.getValue());
+            if (target != null) neighbors.put(e.getKey(), target);
+        }
+        view.restoreState(new Room.State(items, monster, monster == null ? 0 : monster.getHp(), neighbors));
+        return true;
+    }
+
+    // виды со своей копией хоть чего-то - все, чем сессия отличается от шаблона
+    public List<Room> changedViews() {
+        List<Room> changed = new ArrayList<>();
+        for (OverlayRoom view : views.values()) {
+            if (view.ownsItems() || view.ownsMonster() || view.ownsExits()) changed.add(view);
+        }
+        return changed;
+    }
+
+    // виды, созданные сессией; по ним считается ее доля памяти
+    public Collection<Room> views() {
+        return Collections.unmodifiableCollection(views.values());
+    }
+
+    // комнат со своей копией хоть чего-то
+    public int changedRooms() {
+        int n = 0;
+        for (OverlayRoom view : views.values()) {
+            if (view.ownsItems() || view.ownsMonster() || view.ownsExits()) n++;
+        }
+        return n;
+    }
+}
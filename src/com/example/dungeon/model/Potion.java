@@ -16,7 +16,7 @@ public class Potion extends Item {
     public void apply(GameState ctx) {
         Player p = ctx.getPlayer();
         p.setHp(p.getHp() + heal);
-        System.out.println("Выпито зелье: +" + heal + " HP. Текущее HP: " + p.getHp());
+        ctx.getOut().println("Выпито зелье: +" + heal + " HP. Текущее HP: " + p.getHp());
         p.getInventory().remove(this);
     }
 }
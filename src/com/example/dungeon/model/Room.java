@@ -1,17 +1,46 @@
 package com.example.dungeon.model;
 
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 public class Room {
     private final String name;
     private final String description;
-    private final Map<String, Room> neighbors = new HashMap<>();
-    private final List<Item> items = new ArrayList<>();
-    private Monster monster;
+    // комнату могут делить несколько сессий, поэтому коллекции потокобезопасные
+    private final Map<String, Room> neighbors;
+    private final List<Item> items;
+    private volatile Monster monster;
+    // история для quicksave/undo; в общем мире не подключается
+    private WorldHistory history;
+    private long capturedEpoch = -1;
+    // готовое описание живет до изменения предметов, монстра или выходов. stamp растет после
+    // каждого изменения, поэтому описание, собранное посреди изменения, сразу устаревает
+    private static final AtomicLongFieldUpdater<Room> STAMP = AtomicLongFieldUpdater.newUpdater(Room.class, "stamp");
+    private volatile long stamp;
+    private volatile Rendered rendered;
+
+    // текст описания и он же в UTF-8 вместе с переводом строки, как его печатает println
+    private record Rendered(long stamp, String text, byte[] line) {
+    }
+
+    // состояние комнаты на момент снимка
+    record State(List<Item> items, Monster monster, int monsterHp, Map<String, Room> neighbors) {
+    }
 
     public Room(String name, String description) {
+        this(name, description, true);
+    }
+
+    // вид над шаблоном (OverlayRoom) хранит состояние сам, свои коллекции ему не нужны
+    Room(String name, String description, boolean ownState) {
         this.name = name;
         this.description = description;
+        this.neighbors = ownState ? new ConcurrentHashMap<>() : null;
+        this.items = ownState ? new CopyOnWriteArrayList<>() : null;
     }
 
     public String getName() {
@@ -30,22 +59,145 @@ public class Room {
         return monster;
     }
 
-    public void setMonster(Monster m) {
+    // монстр, с которым начинается бой: бой держит ссылку и бьет по ней через strikeMonster
+    public Monster engageMonster() {
+        return getMonster();
+    }
+
+    // монитор комнаты - ее собственный замок: бой идет под ним, глобальной блокировки нет
+    public synchronized void setMonster(Monster m) {
+        beforeChange();
         this.monster = m;
+        changed();
+    }
+
+    public void addItem(Item item) {
+        beforeChange();
+        items.add(item);
+        changed();
+    }
+
+    // атомарно забирает предмет: при гонке предмет достанется только одному игроку
+    public Item takeItem(String itemName) {
+        for (Item item : items) {
+            if (item.getName().equalsIgnoreCase(itemName)) {
+                beforeChange();
+                if (items.remove(item)) {
+                    changed();
+                    return item;
+                }
+            }
+        }
+        return null;
+    }
+
+    // удар по монстру; возвращает оставшееся HP или -1, если этого монстра уже нет
+    public synchronized int strikeMonster(Monster target, int damage) {
+        if (monster != target) return -1;
+        beforeChange();
+        int hp = Math.max(0, target.getHp() - damage);
+        target.setHp(hp);
+        if (hp == 0) {
+            monster = null;
+            changed(); // HP в описании нет, меняется оно только со смертью монстра
+        }
+        return hp;
+    }
+
+    // открывает выход, если он еще не открыт; true только для того, кто открыл
+    public boolean openExit(String direction, Room target) {
+        if (neighbors.containsKey(direction)) return false;
+        beforeChange();
+        if (neighbors.putIfAbsent(direction, target) != null) return false;
+        changed();
+        return true;
+    }
+
+    // закрывает выход, если он ведет в target; true только для того, кто закрыл
+    public boolean closeExit(String direction, Room target) {
+        if (neighbors.get(direction) != target) return false;
+        beforeChange();
+        if (!neighbors.remove(direction, target)) return false;
+        changed();
+        return true;
     }
+
+    void attachHistory(WorldHistory history) {
+        this.history = history;
+        this.capturedEpoch = -1;
+    }
+
+    // первое изменение в эпохе сохраняет прежнее состояние комнаты в снимок
+    void beforeChange() {
+        WorldHistory h = history;
+        if (h != null && capturedEpoch != h.epoch()) {
+            capturedEpoch = h.epoch();
+            h.capture(this);
+        }
+    }
+
+    State saveState() {
+        Monster m = monster;
+        return new State(List.copyOf(items), m, m == null ? 0 : m.getHp(), Map.copyOf(neighbors));
+    }
+
+    void restoreState(State s) {
+        items.clear();
+        items.addAll(s.items());
+        neighbors.clear();
+        neighbors.putAll(s.neighbors());
+        monster = s.monster();
+        if (s.monster() != null) s.monster().setHp(s.monsterHp());
+        changed();
+    }
+
+    // после изменения того, что видно в описании. изменения через getItems()/getNeighbors()
+    // мимо методов комнаты допустимы только при сборке мира, до первого описания
+    protected void changed() {
+        STAMP.incrementAndGet(this);
+    }
+
     public String getDescription() {
         return description;
     }
     public String describe() {
-        StringBuilder sb = new StringBuilder(name + ": " + description);
-        if (!items.isEmpty()) {
-            sb.append("\nПредметы: ").append(String.join(", ", items.stream().map(Item::getName).toList()));
+        return rendered().text();
+    }
+
+    // готовые байты пишутся в поток как есть, если он в UTF-8; иначе обычный println
+    public void printDescription(PrintStream out) {
+        Rendered r = rendered();
+        if (StandardCharsets.UTF_8.equals(out.charset())) {
+            out.write(r.line(), 0, r.line().length);
+        } else {
+            out.println(r.text());
+        }
+    }
+
+    private Rendered rendered() {
+        long s = stamp; // до чтения состояния
+        Rendered r = rendered;
+        if (r != null && r.stamp() == s) return r;
+        String text = render();
+        r = new Rendered(s, text, (text + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        rendered = r;
+        return r;
+    }
+
+    // через методы доступа, чтобы так же описывались комнаты-виды (см. MappedRoom)
+    protected String render() {
+        StringBuilder sb = new StringBuilder(getName() + ": " + getDescription());
+        List<Item> roomItems = getItems();
+        if (!roomItems.isEmpty()) {
+            sb.append("\nПредметы: ").append(String.join(", ", roomItems.stream().map(Item::getName).toList()));
         }
-        if (monster != null) {
-            sb.append("\nВ комнате монстр: ").append(monster.getName()).append(" (ур. ").append(monster.getLevel()).append(")");
+        Monster m = getMonster();
+        if (m != null) {
+            sb.append("\nВ комнате монстр: ").append(m.getName()).append(" (ур. ").append(m.getLevel()).append(")");
         }
-        if (!neighbors.isEmpty()) {
-            sb.append("\nВыходы: ").append(String.join(", ", neighbors.keySet()));
+        Map<String, Room> exits = getNeighbors();
+        if (!exits.isEmpty()) {
+            sb.append("\nВыходы: ").append(String.join(", ", exits.keySet()));
         }
         return sb.toString();
     }
@@ -16,7 +16,7 @@ public class Weapon extends Item {
     public void apply(GameState ctx) {
         var p = ctx.getPlayer();
         p.setAttack(p.getAttack() + bonus);
-        System.out.println("Оружие экипировано. Атака теперь: " + p.getAttack());
+        ctx.getOut().println("Оружие экипировано. Атака теперь: " + p.getAttack());
         p.getInventory().remove(this);
     }
 }
@@ -0,0 +1,214 @@
+package com.example.dungeon.model;
+
+import java.util.*;
+
+// история состояний мира для quicksave/quickload/undo.
+// снимок стоит O(1): он только открывает новую эпоху. комната, которую впервые меняют
+// в новой эпохе, сначала кладет копию своего прежнего состояния в последний снимок,
+// поэтому копируется только то, что реально изменилось, остальное общее (copy-on-write).
+// откат возвращает на место лишь измененные комнаты - карта мира не перестраивается.
+// история линейная: откат к слоту или ходу отбрасывает все более новые снимки вместе с их
+// слотами (их состояния хранятся лишь как разница к откатываемым). какие слоты пропали
+// последним откатом - droppedSlots(), игра сообщает о них игроку
+public final class WorldHistory {
+    private final int maxTurns;
+    private final ArrayDeque<Snapshot> chain = new ArrayDeque<>(); // от старых к новым
+    private final Map<String, Snapshot> slots = new HashMap<>();
+    private final List<String> dropped = new ArrayList<>(); // слоты, потерянные последним откатом
+    private long epoch;
+
+    private static final class Snapshot {
+        final long epoch;
+        final Map<Room, Room.State> rooms = new IdentityHashMap<>();
+        final String playerName;
+        final int playerHp;
+        final int playerAttack;
+        final List<Item> inventory;
+        final Room current;
+        final int score; // без наград квестов: их откат не трогает
+        final Set<String> slotNames = new HashSet<>();
+
+        Snapshot(long epoch, GameState ctx) {
+            this.epoch = epoch;
+            Player p = ctx.getPlayer();
+            this.playerName = p.getName();
+            this.playerHp = p.getHp();
+            this.playerAttack = p.getAttack();
+            this.inventory = List.copyOf(p.getInventory()); // предметы неизменяемые, копируется только список
+            this.current = ctx.getCurrent();
+            this.score = ctx.getScore() - ctx.getRewards();
+        }
+
+        boolean pinned() {
+            return !slotNames.isEmpty();
+        }
+
+        // с момента снимка ничего, кроме счета, не изменилось
+        boolean sameAs(GameState ctx) {
+            Player p = ctx.getPlayer();
+            return rooms.isEmpty() && current == ctx.getCurrent() && playerHp == p.getHp()
+                    && playerAttack == p.getAttack() && playerName.equals(p.getName())
+                    && inventory.equals(p.getInventory());
+        }
+    }
+
+    public WorldHistory(int maxTurns) {
+        this.maxTurns = maxTurns;
+    }
+
+    // новый мир: старые снимки к нему не относятся
+    void track(Map<String, Room> world) {
+        chain.clear();
+        slots.clear();
+        dropped.clear();
+        epoch++;
+        if (world instanceof OverlayWorld overlay) {
+            overlay.attachHistory(this); // виды получат историю при создании
+            return;
+        }
+        for (Room room : world.values()) {
+            room.attachHistory(this);
+        }
+    }
+
+    long epoch() {
+        return epoch;
+    }
+
+    // вызывается комнатой перед первым изменением в текущей эпохе
+    void capture(Room room) {
+        Snapshot last = chain.peekLast();
+        if (last != null) {
+            last.rooms.putIfAbsent(room, room.saveState());
+        }
+    }
+
+    // снимок перед ходом, для undo
+    public void checkpoint(GameState ctx) {
+        dropIdleTail(ctx);
+        push(ctx);
+        trim();
+    }
+
+    public void quicksave(GameState ctx, String slot) {
+        Snapshot old = slots.remove(slot);
+        if (old != null) old.slotNames.remove(slot);
+        Snapshot s = push(ctx);
+        s.slotNames.add(slot);
+        slots.put(slot, s);
+        trim();
+    }
+
+    public boolean quickload(GameState ctx, String slot) {
+        Snapshot s = slots.get(slot);
+        if (s == null) return false;
+        restore(ctx, s);
+        return true;
+    }
+
+    // откат на n ходов; слоты quicksave ходами не считаются. возвращает, сколько откатили
+    public int undo(GameState ctx, int n) {
+        dropIdleTail(ctx);
+        int seen = 0;
+        Snapshot target = null;
+        Iterator<Snapshot> it = chain.descendingIterator();
+        while (it.hasNext() && seen < n) {
+            Snapshot s = it.next();
+            if (!s.pinned()) {
+                seen++;
+                target = s;
+            }
+        }
+        if (target != null) restore(ctx, target);
+        return seen;
+    }
+
+    // слоты новее точки последнего quickload/undo: они отброшены вместе с ходами после нее
+    public List<String> droppedSlots() {
+        return Collections.unmodifiableList(dropped);
+    }
+
+    public Set<String> slotNames() {
+        return Collections.unmodifiableSet(slots.keySet());
+    }
+
+    public int turns() {
+        int n = 0;
+        for (Snapshot s : chain) {
+            if (!s.pinned()) n++;
+        }
+        return n;
+    }
+
+    // ходы вроде look ничего не меняют - такие снимки не занимают место в истории
+    private void dropIdleTail(GameState ctx) {
+        Snapshot last = chain.peekLast();
+        if (last != null && !last.pinned() && last.sameAs(ctx)) {
+            chain.pollLast();
+        }
+    }
+
+    private Snapshot push(GameState ctx) {
+        Snapshot s = new Snapshot(++epoch, ctx);
+        chain.addLast(s);
+        return s;
+    }
+
+    private void restore(GameState ctx, Snapshot target) {
+        dropped.clear();
+        // от новых к старым: более старая копия комнаты перекрывает более новую
+        while (true) {
+            Snapshot s = chain.pollLast();
+            for (Map.Entry<Room, Room.State> e : s.rooms.entrySet()) {
+                e.getKey().restoreState(e.getValue());
+            }
+            if (s == target) break;
+            for (String slot : s.slotNames) {
+                slots.remove(slot);
+                dropped.add(slot);
+            }
+        }
+
+        Player p = ctx.getPlayer();
+        p.setName(target.playerName);
+        p.setHp(target.playerHp);
+        p.setAttack(target.playerAttack);
+        p.getInventory().clear();
+        p.getInventory().addAll(target.inventory);
+        ctx.setCurrent(target.current);
+        ctx.addScore(target.score + ctx.getRewards() - ctx.getScore());
+
+        if (target.pinned()) {
+            // мир снова в состоянии слота: слот переезжает в новый снимок с новой эпохой
+            Snapshot fresh = push(ctx);
+            fresh.slotNames.addAll(target.slotNames);
+            for (String slot : fresh.slotNames) {
+                slots.put(slot, fresh);
+            }
+        } else {
+            // комнаты заново сохранят себя при первом изменении
+            epoch++;
+        }
+    }
+
+    // лишние ходы сливаются в предыдущий снимок, чтобы слоты старше них остались верными
+    private void trim() {
+        int excess = turns() - maxTurns;
+        Iterator<Snapshot> it = chain.iterator();
+        Snapshot prev = null;
+        while (excess > 0 && it.hasNext()) {
+            Snapshot s = it.next();
+            if (s.pinned()) {
+                prev = s;
+                continue;
+            }
+            if (prev != null) {
+                for (Map.Entry<Room, Room.State> e : s.rooms.entrySet()) {
+                    prev.rooms.putIfAbsent(e.getKey(), e.getValue());
+                }
+            }
+            it.remove();
+            excess--;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.dungeon.model;
+
+import java.util.Collections;
+import java.util.Map;
+
+// неизменяемый мир, общий для многих сессий. сессия видит его через OverlayWorld
+// и хранит у себя только то, что изменила. комнаты шаблона после создания не меняются:
+// их монстров сессии получают копиями, предметы неизменяемы сами по себе
+public final class WorldTemplate {
+    private final Map<String, Room> rooms;
+    private final DoorGraph doors;
+
+    public WorldTemplate(Map<String, Room> rooms, DoorGraph doors) {
+        this.rooms = Collections.unmodifiableMap(rooms);
+        this.doors = doors;
+    }
+
+    public Map<String, Room> rooms() {
+        return rooms;
+    }
+
+    public DoorGraph doors() {
+        return doors;
+    }
+
+    public int size() {
+        return rooms.size();
+    }
+}